@@ -0,0 +1,31 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jesterj.ingest.model.impl;
+
+import org.jesterj.ingest.model.Document;
+
+import static org.jesterj.ingest.model.impl.ScannerImpl.SCAN_ORIGIN;
+
+/**
+ * Creates documents for benchmarks outside this package without needing a plan or scanner.
+ */
+public class BenchmarkDocuments {
+
+  public static DocumentImpl newDocument(String id, byte[] rawData) {
+    return new DocumentImpl(rawData, id, "id", Document.Operation.NEW, "bench_scanner", null, id, SCAN_ORIGIN);
+  }
+}
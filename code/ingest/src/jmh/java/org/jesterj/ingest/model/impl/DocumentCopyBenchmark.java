@@ -0,0 +1,68 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jesterj.ingest.model.impl;
+
+import org.jesterj.ingest.model.Document;
+import org.jesterj.ingest.utils.Cloner;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.jesterj.ingest.model.impl.ScannerImpl.SCAN_ORIGIN;
+
+/**
+ * Compares the structural copy used when routers fan a document out to several steps against the
+ * serialization based {@link Cloner} that was previously used.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DocumentCopyBenchmark {
+
+  @Param({"1024", "4194304"})
+  public int rawBytes;
+
+  @Param({"10", "1000"})
+  public int fields;
+
+  private final Cloner<Document> cloner = new Cloner<>();
+  private DocumentImpl doc;
+
+  @Setup
+  public void setUp() {
+    byte[] raw = new byte[rawBytes];
+    new Random(42).nextBytes(raw);
+    doc = new DocumentImpl(raw, "doc_1", "id", Document.Operation.NEW, "bench_scanner", null, "doc_1", SCAN_ORIGIN);
+    for (int i = 0; i < fields; i++) {
+      doc.put("field_" + (i % 50), "value number " + i + " for a moderately sized field");
+    }
+    doc.initDestinations(Set.of("solr_a", "solr_b", "opensearch"), "bench_scanner");
+  }
+
+  @Benchmark
+  public Document structuralCopy() {
+    return doc.copy();
+  }
+
+  @Benchmark
+  public Document serializationClone() throws IOException, ClassNotFoundException {
+    return cloner.cloneObj(doc);
+  }
+}
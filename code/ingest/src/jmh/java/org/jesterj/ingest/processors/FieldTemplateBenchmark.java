@@ -0,0 +1,115 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jesterj.ingest.processors;
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.jesterj.ingest.model.Document;
+import org.jesterj.ingest.model.impl.BenchmarkDocuments;
+import org.jesterj.ingest.model.impl.DocumentImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Templated fields over a million documents, comparing {@link FieldTemplateProcessor} (parsed template cache and
+ * a context backed by the document) with the previous approach of evaluating the template text against a copy
+ * of the document's fields. Documents are drawn from a pool and their template field restored before each use,
+ * so the cost of creating documents is excluded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class FieldTemplateBenchmark {
+
+  private static final int DOCS = 1_000_000;
+  private static final int POOL = 1024;
+  private static final String TEMPLATE_FIELD = "title";
+
+  // distinct template texts, 1 is the common case of a template set statically for the whole feed
+  @Param({"1", "64"})
+  public int templates;
+
+  @Param({"10", "100"})
+  public int fields;
+
+  private final VelocityEngine engine = new VelocityEngine();
+  private FieldTemplateProcessor processor;
+  private DocumentImpl[] docs;
+  private String[] templateText;
+
+  @Setup
+  public void setUp() {
+    processor = new FieldTemplateProcessor.Builder().named("bench").withTemplatesIn(TEMPLATE_FIELD).build();
+    templateText = new String[templates];
+    for (int i = 0; i < templates; i++) {
+      templateText[i] = "$author[0] - $category[0] (" + i + ") #if($tags)$tags[0]#end";
+    }
+    docs = new DocumentImpl[POOL];
+    for (int i = 0; i < POOL; i++) {
+      DocumentImpl doc = BenchmarkDocuments.newDocument("doc_" + i, null);
+      doc.put("author", "author " + i);
+      doc.put("category", "category " + (i % 10));
+      doc.put("tags", "tag" + i);
+      for (int f = 0; f < fields; f++) {
+        doc.put("field_" + f, "value " + f + " of document " + i);
+      }
+      docs[i] = doc;
+    }
+  }
+
+  private Document next(int i) {
+    DocumentImpl doc = docs[i % POOL];
+    doc.removeAll(TEMPLATE_FIELD);
+    doc.put(TEMPLATE_FIELD, templateText[i % templates]);
+    return doc;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(DOCS)
+  public int cachedTemplates() {
+    int total = 0;
+    for (int i = 0; i < DOCS; i++) {
+      Document doc = processor.processDocument(next(i))[0];
+      total += doc.getFirstValue(TEMPLATE_FIELD).length();
+    }
+    return total;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(DOCS)
+  public int evaluatePerDocument() {
+    int total = 0;
+    for (int i = 0; i < DOCS; i++) {
+      Document doc = next(i);
+      VelocityContext velocityContext = new VelocityContext(new HashMap<>(doc.asMap()));
+      List<String> values = doc.removeAll(TEMPLATE_FIELD);
+      for (String value : values) {
+        StringWriter writer = new StringWriter();
+        engine.evaluate(velocityContext, writer, doc.getId(), value);
+        doc.put(TEMPLATE_FIELD, writer.toString());
+      }
+      total += doc.getFirstValue(TEMPLATE_FIELD).length();
+    }
+    return total;
+  }
+}
@@ -24,6 +24,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.docopt.Docopt;
 import org.jesterj.ingest.forkjoin.JesterJForkJoinThreadFactory;
+import org.jesterj.ingest.logging.JesterJAppender;
 import org.jesterj.ingest.model.Plan;
 import org.jesterj.ingest.persistence.Cassandra;
 import org.jesterj.ingest.persistence.JJCassandraDaemon;
@@ -171,6 +172,11 @@ public class Main {
                   // graceful shutdown... also keeps IDE from complaining stop() isn't used.
 
                   e.printStackTrace();
+                  try {
+                    JesterJAppender.getStatusWriter().shutdown();
+                  } catch (InterruptedException e1) {
+                    e1.printStackTrace();
+                  }
                   Cassandra.stop();
                   System.exit(0);
                 }
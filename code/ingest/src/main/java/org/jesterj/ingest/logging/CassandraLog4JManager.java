@@ -116,6 +116,7 @@ public class CassandraLog4JManager extends AbstractManager {
       executor.execute(() -> {
         try {
           LogManager.getRootLogger().error("!!!!\n!!!!\nShutting down in 5 seconds due to persistence failure: " + e.getMessage() + "\n!!!!\n!!!!");
+          JesterJAppender.getStatusWriter().shutdown();
           Cassandra.stop();
           Thread.sleep(5000);
         } catch (InterruptedException e1) {
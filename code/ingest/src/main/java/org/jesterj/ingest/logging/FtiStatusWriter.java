@@ -0,0 +1,431 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jesterj.ingest.logging;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.NoNodeAvailableException;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchableStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.jesterj.ingest.model.exception.PersistenceException;
+import org.jesterj.ingest.persistence.Cassandra;
+import org.jesterj.ingest.persistence.CassandraSupport;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes FTI status events to cassandra. By default, each event is written synchronously on the thread that
+ * reported the status. When <code>-Dorg.jesterj.fti.async_status_writes=true</code> is set, events are instead
+ * placed in a bounded queue and written by a background thread. The background thread groups the events
+ * it drains by partition (keyspace and document id), writes each group as an unlogged batch via
+ * executeAsync, and limits the number of concurrent requests. A full queue blocks the reporting thread, which
+ * provides back-pressure when cassandra falls behind. Ordering of events is unaffected because the clustering
+ * columns (created time, nanos and anti-collision value) are captured when the event is reported, not when
+ * it is written.
+ * <p>
+ * Code that must not proceed until previously reported statuses are durable (for example before a potent step
+ * performs its external action) should call {@link #awaitDurable(Collection)}. Failed writes are retried with
+ * a doubling delay. Writes that still fail are counted and the documents they were for are remembered, so that
+ * the next wait for those documents fails rather than reporting statuses that never reached cassandra as durable.
+ * <p>
+ * Tuning properties (all optional):
+ * <ul>
+ *   <li>org.jesterj.fti.status_queue_size - the maximum number of queued events (default 8192)</li>
+ *   <li>org.jesterj.fti.status_batch_size - the maximum number of events drained per flush (default 256)</li>
+ *   <li>org.jesterj.fti.status_max_in_flight - the maximum number of concurrent write requests (default 32)</li>
+ *   <li>org.jesterj.fti.status_write_retries - retries for a failed write before it is given up (default 3)</li>
+ *   <li>org.jesterj.fti.status_retry_delay_ms - delay before the first retry (default 100)</li>
+ * </ul>
+ */
+public class FtiStatusWriter implements FtiStatusWriterMBean {
+  // Never log via LogManager here, we are part of the logging infrastructure.
+  private static final Logger LOGGER = StatusLogger.getLogger();
+
+  public static final boolean ASYNC_DEFAULT = Boolean.getBoolean("org.jesterj.fti.async_status_writes");
+  public static final int QUEUE_SIZE = Integer.getInteger("org.jesterj.fti.status_queue_size", 8192);
+  public static final int BATCH_SIZE = Integer.getInteger("org.jesterj.fti.status_batch_size", 256);
+  public static final int MAX_IN_FLIGHT = Integer.getInteger("org.jesterj.fti.status_max_in_flight", 32);
+  public static final int WRITE_RETRIES = Integer.getInteger("org.jesterj.fti.status_write_retries", 3);
+  public static final int RETRY_DELAY_MS = Integer.getInteger("org.jesterj.fti.status_retry_delay_ms", 100);
+  public static final String MBEAN_NAME = "org.jesterj:type=FtiStatusWriter";
+
+  private final CassandraSupport cassandra;
+  private final boolean async;
+  private final BlockingQueue<PendingWrite> queue;
+  private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+
+  private final Object enqueueLock = new Object();
+  private long lastEnqueued; // guarded by enqueueLock
+  private final Object durableLock = new Object();
+  // every event up to here has either been written or given up (and its document added to lostDocs)
+  private long flushedThrough; // guarded by durableLock
+  private final Set<String> lostDocs = ConcurrentHashMap.newKeySet();
+
+  private final Object startLock = new Object();
+  private volatile Thread flusher;
+  private boolean registered; // guarded by startLock
+  private volatile boolean shutDown; // set while holding startLock
+
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong flushes = new AtomicLong();
+  private final AtomicLong totalFlushNanos = new AtomicLong();
+  private volatile long lastFlushNanos;
+  private volatile long maxFlushNanos;
+
+  public FtiStatusWriter(CassandraSupport cassandra) {
+    this(cassandra, ASYNC_DEFAULT);
+  }
+
+  FtiStatusWriter(CassandraSupport cassandra, boolean async) {
+    this.cassandra = cassandra;
+    this.async = async;
+    this.queue = new ArrayBlockingQueue<>(Math.max(1, QUEUE_SIZE));
+  }
+
+  /**
+   * Write a status event. In asynchronous mode this returns as soon as the event is queued, blocking only
+   * if the queue is full. After {@link #shutdown()} events are written synchronously.
+   *
+   * @param keySpace  the keyspace the statement writes to
+   * @param docId     the id of the document (the partition key of jj_output_step_status)
+   * @param statement the bound insert statement
+   * @throws InterruptedException if interrupted while waiting for room in the queue
+   */
+  public void write(String keySpace, String docId, BoundStatement statement) throws InterruptedException {
+    if (!async || shutDown) {
+      cassandra.getSession().execute(statement);
+      return;
+    }
+    ensureStarted();
+    synchronized (enqueueLock) {
+      // sequence assignment and enqueue must be atomic so that the queue is always in sequence order
+      queue.put(new PendingWrite(++lastEnqueued, keySpace, docId, statement));
+    }
+  }
+
+  /**
+   * Block until every status event written before this call has been sent to cassandra, and check that the
+   * events for the given documents were all written. Returns immediately when not in asynchronous mode, since
+   * synchronous writes fail on the thread reporting the status.
+   *
+   * @param docIds the documents whose statuses must be durable
+   * @throws InterruptedException if interrupted while waiting, or if the system or this writer shuts down first
+   * @throws PersistenceException if any status for one of the documents could not be written. Each lost write
+   *                              is reported only once.
+   */
+  public void awaitDurable(Collection<String> docIds) throws InterruptedException, PersistenceException {
+    if (!async) {
+      return;
+    }
+    long target;
+    synchronized (enqueueLock) {
+      target = lastEnqueued;
+    }
+    synchronized (durableLock) {
+      while (flushedThrough < target) {
+        if (shutDown || Cassandra.isStopping()) {
+          throw new InterruptedException("Shutting down before FTI statuses were written");
+        }
+        durableLock.wait(1000);
+      }
+    }
+    if (lostDocs.isEmpty()) {
+      return;
+    }
+    List<String> lost = new ArrayList<>();
+    for (String docId : docIds) {
+      if (lostDocs.remove(docId)) {
+        lost.add(docId);
+      }
+    }
+    if (!lost.isEmpty()) {
+      throw new PersistenceException("FTI statuses for " + lost + " could not be written to cassandra");
+    }
+  }
+
+  /**
+   * Stop the background thread, abandoning any events still queued, and unregister the MBean. Threads waiting
+   * in {@link #awaitDurable(Collection)} for events that were not written are released with an
+   * InterruptedException, as are any that wait for them later. Events written after this are written
+   * synchronously.
+   *
+   * @throws InterruptedException if interrupted while waiting for the thread to stop
+   */
+  public void shutdown() throws InterruptedException {
+    synchronized (startLock) {
+      shutDown = true;
+    }
+    synchronized (durableLock) {
+      durableLock.notifyAll();
+    }
+    Thread t = flusher;
+    if (t != null) {
+      t.interrupt();
+      t.join(5000);
+    }
+    synchronized (startLock) {
+      unregisterMBean();
+    }
+  }
+
+  private void ensureStarted() {
+    if (flusher == null) {
+      synchronized (startLock) {
+        if (flusher == null && !shutDown) {
+          startFlusher();
+        }
+      }
+    }
+  }
+
+  private void startFlusher() {
+    Thread t = new Thread(this::flushLoop, "jj-fti-status-writer");
+    t.setDaemon(true);
+    flusher = t;
+    t.start();
+    registerMBean();
+  }
+
+  private void registerMBean() {
+    if (registered) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(MBEAN_NAME));
+      registered = true;
+    } catch (Exception e) {
+      LOGGER.warn("Could not register {} MBean", MBEAN_NAME, e);
+    }
+  }
+
+  private void unregisterMBean() {
+    if (!registered) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(MBEAN_NAME));
+    } catch (Exception e) {
+      LOGGER.warn("Could not unregister {} MBean", MBEAN_NAME, e);
+    }
+    registered = false;
+  }
+
+  private void flushLoop() {
+    boolean interrupted = false;
+    List<PendingWrite> chunk = new ArrayList<>(BATCH_SIZE);
+    try {
+      while (true) {
+        try {
+          PendingWrite first = queue.poll(1, TimeUnit.SECONDS);
+          if (first == null) {
+            if (Cassandra.isStopping()) {
+              return;
+            }
+            continue;
+          }
+          chunk.add(first);
+          queue.drainTo(chunk, BATCH_SIZE - 1);
+          flush(chunk);
+        } catch (InterruptedException e) {
+          interrupted = true;
+          return;
+        } catch (Throwable t) {
+          LOGGER.error("Unexpected failure writing FTI statuses", t);
+          lost(chunk);
+          markFlushed(chunk.get(chunk.size() - 1).seq);
+        } finally {
+          chunk.clear();
+        }
+      }
+    } finally {
+      synchronized (startLock) {
+        flusher = null;
+        if (!interrupted && !shutDown && !queue.isEmpty()) {
+          // a write raced with our exit
+          startFlusher();
+        } else {
+          unregisterMBean();
+        }
+      }
+    }
+  }
+
+  /**
+   * Write a chunk of events, grouped into one request per partition. Requests that fail are retried, and the
+   * events of any request that still fails are given up.
+   *
+   * @param chunk the events to write, in sequence order
+   * @throws InterruptedException if interrupted while waiting for a request permit or to retry
+   */
+  void flush(List<PendingWrite> chunk) throws InterruptedException {
+    long start = System.nanoTime();
+    Map<String, List<PendingWrite>> byPartition = new LinkedHashMap<>();
+    for (PendingWrite write : chunk) {
+      byPartition.computeIfAbsent(write.partition, (k) -> new ArrayList<>()).add(write);
+    }
+    Collection<List<PendingWrite>> toWrite = byPartition.values();
+    for (int attempt = 0; !toWrite.isEmpty(); attempt++) {
+      if (attempt > 0) {
+        if (attempt > WRITE_RETRIES || Cassandra.isStopping()) {
+          for (List<PendingWrite> group : toWrite) {
+            lost(group);
+          }
+          break;
+        }
+        Thread.sleep((long) RETRY_DELAY_MS << (attempt - 1));
+      }
+      toWrite = writeGroups(toWrite);
+    }
+    long elapsed = System.nanoTime() - start;
+    flushes.incrementAndGet();
+    totalFlushNanos.addAndGet(elapsed);
+    lastFlushNanos = elapsed;
+    if (elapsed > maxFlushNanos) {
+      maxFlushNanos = elapsed;
+    }
+    markFlushed(chunk.get(chunk.size() - 1).seq);
+  }
+
+  /**
+   * Send one request per group and wait for all of them.
+   *
+   * @return the groups whose requests failed
+   */
+  private List<List<PendingWrite>> writeGroups(Collection<List<PendingWrite>> groups) throws InterruptedException {
+    CqlSession session = cassandra.getSession();
+    List<List<PendingWrite>> failed = Collections.synchronizedList(new ArrayList<>());
+    List<CompletableFuture<?>> pending = new ArrayList<>(groups.size());
+    for (List<PendingWrite> group : groups) {
+      Statement<?> statement = group.size() == 1 ? group.get(0).statement :
+          BatchStatement.newInstance(DefaultBatchType.UNLOGGED,
+              group.stream().map((w) -> w.statement).toArray(BatchableStatement<?>[]::new));
+      inFlight.acquire();
+      pending.add(session.executeAsync(statement).toCompletableFuture().whenComplete((rs, t) -> {
+        inFlight.release();
+        if (t == null) {
+          written.addAndGet(group.size());
+        } else {
+          if (!(t instanceof NoNodeAvailableException && Cassandra.isStopping())) {
+            LOGGER.warn("Failed to write {} FTI status events, will retry", group.size(), t);
+          }
+          failed.add(group);
+        }
+      }));
+    }
+    // wait for all requests, failures have already been collected above.
+    CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).handle((v, t) -> null).join();
+    return failed;
+  }
+
+  private void lost(List<PendingWrite> writes) {
+    if (Cassandra.isStopping()) {
+      return; // expected during shutdown
+    }
+    failures.addAndGet(writes.size());
+    for (PendingWrite write : writes) {
+      lostDocs.add(write.docId);
+    }
+    LOGGER.error("Gave up writing {} FTI status events for {}", writes.size(), writes.get(0).partition);
+  }
+
+  private void markFlushed(long seq) {
+    synchronized (durableLock) {
+      flushedThrough = seq;
+      durableLock.notifyAll();
+    }
+  }
+
+  @Override
+  public boolean isAsync() {
+    return async;
+  }
+
+  @Override
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  @Override
+  public int getQueueCapacity() {
+    return queue.size() + queue.remainingCapacity();
+  }
+
+  @Override
+  public long getStatusesWritten() {
+    return written.get();
+  }
+
+  @Override
+  public long getWriteFailures() {
+    return failures.get();
+  }
+
+  @Override
+  public long getFlushCount() {
+    return flushes.get();
+  }
+
+  @Override
+  public double getLastFlushMillis() {
+    return lastFlushNanos / 1_000_000.0;
+  }
+
+  @Override
+  public double getMaxFlushMillis() {
+    return maxFlushNanos / 1_000_000.0;
+  }
+
+  @Override
+  public double getAverageFlushMillis() {
+    long count = flushes.get();
+    return count == 0 ? 0 : totalFlushNanos.get() / 1_000_000.0 / count;
+  }
+
+  static class PendingWrite {
+    final long seq;
+    final String docId;
+    final String partition;
+    final BoundStatement statement;
+
+    PendingWrite(long seq, String keySpace, String docId, BoundStatement statement) {
+      this.seq = seq;
+      this.docId = docId;
+      this.partition = keySpace + "/" + docId;
+      this.statement = statement;
+    }
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jesterj.ingest.logging;
+
+/**
+ * JMX view of the FTI status write pipeline.
+ */
+public interface FtiStatusWriterMBean {
+
+  boolean isAsync();
+
+  int getQueueDepth();
+
+  int getQueueCapacity();
+
+  long getStatusesWritten();
+
+  long getWriteFailures();
+
+  long getFlushCount();
+
+  double getLastFlushMillis();
+
+  double getMaxFlushMillis();
+
+  double getAverageFlushMillis();
+}
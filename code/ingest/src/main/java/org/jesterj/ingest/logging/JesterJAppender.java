@@ -80,6 +80,7 @@ public class JesterJAppender extends AbstractAppender {
   public static final String FTI_INSERT_U = "FTI_INSERT_U";
 
   private static final CassandraSupport cassandra = new CassandraSupport();
+  private static final FtiStatusWriter statusWriter = new FtiStatusWriter(cassandra);
   public static final String DELIM = "#,#";
   public static final Pattern MESSAGE_DELIMITER = Pattern.compile(DELIM);
 
@@ -130,6 +131,16 @@ public class JesterJAppender extends AbstractAppender {
     return new JesterJAppender(name, layout, filter, manager, ignoreExceptions);
   }
 
+  /**
+   * The writer through which FTI status events are persisted. Potent processors may use this to wait for
+   * previously reported statuses to become durable.
+   *
+   * @return the status writer shared by all plans in this JVM
+   */
+  public static FtiStatusWriter getStatusWriter() {
+    return statusWriter;
+  }
+
   private static CassandraLog4JManager createManager() {
     return new CassandraLog4JManagerFactory().createManager("jjCassandraManager", null);
   }
@@ -217,8 +228,6 @@ public class JesterJAppender extends AbstractAppender {
     }
 
     if (m.isInstanceOf(Markers.FTI_MARKER)) {
-      CqlSession s = cassandra.getSession();
-
       // everything wrapped in String.valueOf to avoid any issues with null.
       Map<String, String> contextData = e.getContextData().toMap();
       String outputStepNames = contextData.get(String.valueOf(JJ_OUTPUT_STEP_CHANGES));
@@ -229,6 +238,7 @@ public class JesterJAppender extends AbstractAppender {
       String[] changeMessages = MESSAGE_DELIMITER.split(messages);
       String planName = contextData.get(Step.JJ_PLAN_NAME);
       String scannerName = contextData.get(String.valueOf(JJ_SCANNER_NAME));
+      String docId = contextData.get(String.valueOf(JJ_DOC_ID));
 
       int numberOfChanges = changedSteps.length;
       if (changedStatuses.length != numberOfChanges || changeMessages.length != numberOfChanges) {
@@ -297,7 +307,10 @@ public class JesterJAppender extends AbstractAppender {
 //            .collect(Collectors.joining("\n"));
 //        System.err.println("WRITE_EVENT:" + Instant.now() + "("+statuses+") thread: " + Thread.currentThread().getName() + " Params:" + params + "\n" +stack);
         try {
-          s.execute(update.bind(params.toArray()));
+          statusWriter.write(keySpace, docId, update.bind(params.toArray()));
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException("Interrupted while queueing status update for " + docId, ex);
         } catch (NoNodeAvailableException ex) {
           if (!Cassandra.isStopping()) {
             throw ex;
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jesterj.ingest.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+
+/**
+ * A source for the raw content of a document that can be read on demand rather than held on the heap. Sources
+ * are shared by copies of a document, so implementations must be immutable and must provide a fresh stream
+ * from each call to {@link #open()}.
+ */
+public interface ContentSource extends Serializable {
+
+  /**
+   * Open a new stream over the content. The caller is responsible for closing it.
+   *
+   * @return a stream positioned at the start of the content
+   * @throws IOException if the content can no longer be read
+   */
+  InputStream open() throws IOException;
+
+  /**
+   * The number of bytes that {@link #open()} will supply.
+   *
+   * @return the length of the content in bytes
+   */
+  long length();
+}
@@ -18,8 +18,14 @@ package org.jesterj.ingest.model;
 
 import com.google.common.collect.ListMultimap;
 
+import org.jesterj.ingest.model.impl.ByteArrayContentSource;
+import org.jesterj.ingest.utils.Cloner;
+
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -85,6 +91,37 @@ public interface Document extends  Serializable {
    */
   void setRawData(byte[] rawData);
 
+  /**
+   * Get the raw content of the document as a source that can be streamed. Processors that can consume a
+   * stream should prefer this to {@link #getRawData()}, since content supplied lazily by a scanner (see
+   * {@link #setRawContent(ContentSource)}) is only loaded onto the heap if {@link #getRawData()} is called.
+   * The default implementation wraps {@link #getRawData()}.
+   *
+   * @return the raw content of the document, or null if there is none
+   */
+  default ContentSource getRawContent() {
+    byte[] rawData = getRawData();
+    return rawData == null ? null : new ByteArrayContentSource(rawData);
+  }
+
+  /**
+   * Supply the raw content as a source to be read on demand, replacing any raw bytes. The default implementation
+   * reads the content immediately and passes it to {@link #setRawData(byte[])}.
+   *
+   * @param content the source of the raw content
+   */
+  default void setRawContent(ContentSource content) {
+    if (content == null) {
+      setRawData(null);
+      return;
+    }
+    try (InputStream in = content.open()) {
+      setRawData(in.readAllBytes());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read content for " + getId() + " from " + content, e);
+    }
+  }
+
 
   /**
    * The current processing status of the document relative to a given destinagion.
@@ -233,6 +270,20 @@ public interface Document extends  Serializable {
    */
   String addNonce(String fieldName);
 
+  /**
+   * Create an independent copy of this document suitable for sending down a separate path in the plan. The copy
+   * has its own fields and destination statuses, but has no status reporter until it is started by a step. The
+   * default implementation round trips the document through java serialization. Implementations are encouraged
+   * to override this with something faster.
+   *
+   * @return a copy of this document
+   * @throws IOException            if serialization fails
+   * @throws ClassNotFoundException if deserialization fails
+   */
+  default Document copy() throws IOException, ClassNotFoundException {
+    return new Cloner<Document>().cloneObj(this);
+  }
+
   enum Operation implements Serializable {
     NEW,
     UPDATE, // Note: most cases want NEW not update since search indexes usually overwrite rather than update
@@ -81,4 +81,16 @@ public interface DocumentProcessor extends Configurable {
     return false;
   }
 
+  /**
+   * Indicates if a single instance of this processor may be handed more than one document at the same time from
+   * different threads. Steps configured via {@link StepImpl.Builder#withWorkers(int)} will only start more than one
+   * worker if this returns true, so processors that keep mutable state between invocations (or that rely on
+   * seeing documents one at a time, such as per-host throttling) should leave this as the default.
+   *
+   * @return true if concurrent invocations of {@link #processDocument(Document)} are safe.
+   */
+  default boolean isThreadSafe() {
+    return false;
+  }
+
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jesterj.ingest.model;
+
+/**
+ * Determines the type of threads used to run the steps and scan operations of a plan.
+ */
+public enum ExecutionMode {
+
+  /**
+   * Each step worker and scan operation runs on a dedicated platform thread. Step workers poll their queue so
+   * that they notice deactivation promptly. This is the default.
+   */
+  PLATFORM_THREADS,
+
+  /**
+   * Step workers and scan operations run on virtual threads, and step workers block on their queue until a
+   * document arrives. Idle steps cost very little, which makes this mode attractive for plans with many steps
+   * or with I/O bound steps. Requires a JVM that supports virtual threads (Java 21+). On older JVMs a warning
+   * is logged and platform threads are used instead.
+   */
+  VIRTUAL_THREADS
+}
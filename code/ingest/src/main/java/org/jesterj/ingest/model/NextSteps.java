@@ -1,7 +1,5 @@
 package org.jesterj.ingest.model;
 
-import org.jesterj.ingest.utils.Cloner;
-
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -16,7 +14,6 @@ import static org.jesterj.ingest.model.NextSteps.StepStatus.*;
  * Encapsulate and manage status of steps to which a document should be sent
  */
 public class NextSteps {
-  public static final Cloner<Document> CLONER = new Cloner<>();
   Map<Step, StepStatusHolder> steps = new HashMap<>();
 
   public NextSteps(Document doc, Step... next) {
@@ -34,7 +31,7 @@ public class NextSteps {
     // Drop Status updates and the clones will have their destinations adjusted to match their designated path.
     for (Step step : next) {
       try {
-        Document tmp = CLONER.cloneObj(doc);
+        Document tmp = doc.copy();
         tmp.removeAllOtherDestinationsQuietly(step.getOutputDestinationNames());
         if (tmp.getIncompleteOutputDestinations().length > 0) {
           // ONLY keep things that have a destination.
@@ -72,4 +72,13 @@ public interface Plan extends Active, Configurable {
    */
   int getVersion();
 
+  /**
+   * The type of threads on which the steps and scanners of this plan execute.
+   *
+   * @return the execution mode for this plan, {@link ExecutionMode#PLATFORM_THREADS} unless otherwise configured.
+   */
+  default ExecutionMode getExecutionMode() {
+    return ExecutionMode.PLATFORM_THREADS;
+  }
+
 }
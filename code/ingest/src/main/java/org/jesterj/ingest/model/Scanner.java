@@ -23,6 +23,9 @@ package org.jesterj.ingest.model;
  */
 
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -113,6 +116,23 @@ public interface Scanner extends Step {
      */
     Optional<Document> fetchById(String id, String origination);
 
+    /**
+     * Load several documents based on their ids. Scanners that can fetch documents more efficiently in bulk
+     * than one at a time should override this method. The default implementation calls
+     * {@link #fetchById(String, String)} for each id.
+     *
+     * @param ids the ids of the documents, see also {@link Document#getId()}
+     * @param origination A constant indicating the source (scanner or fti) for debugging
+     * @return the documents that could be retrieved, keyed by the id they were requested with
+     */
+    default Map<String, Document> fetchByIds(Collection<String> ids, String origination) {
+        Map<String, Document> found = new LinkedHashMap<>();
+        for (String id : ids) {
+            fetchById(id, origination).ifPresent(doc -> found.put(id, doc));
+        }
+        return found;
+    }
+
   /**
    * Indicates if this scanner will re-feed documents it has already seen. This behavior can
    * be modified by the value for {@link Scanner#isHashing()}.
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jesterj.ingest.model.impl;
+
+import org.jesterj.ingest.model.ContentSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * A content source for raw data that is already on the heap.
+ */
+public class ByteArrayContentSource implements ContentSource {
+  private final byte[] bytes;
+
+  public ByteArrayContentSource(byte[] bytes) {
+    this.bytes = bytes;
+  }
+
+  @Override
+  public InputStream open() {
+    return new ByteArrayInputStream(bytes);
+  }
+
+  @Override
+  public long length() {
+    return bytes.length;
+  }
+
+  /**
+   * Direct access to the underlying array for consumers that can work on bytes in place. The array must not
+   * be modified.
+   *
+   * @return the bytes backing this source
+   */
+  public byte[] getBytes() {
+    return bytes;
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jesterj.ingest.model.impl;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded, least recently used, local record of the last hash a scanner stored for each document id. This lets
+ * a scanner recognize unchanged documents without a round trip to the jj_scanner_doc_hash table. The cache is only
+ * ever consulted for a positive match: a document whose current hash equals the cached hash is known to be
+ * unchanged, and anything else (a miss, or a different hash) falls through to the table, which remains the source
+ * of truth.
+ * <p>
+ * The cache may optionally be saved to and loaded from a snapshot file (accessed via memory mapping) so that it
+ * survives restarts. Entries older than the time to live of the hash table are dropped when loading, so the cache
+ * never remembers a document that the table would have forgotten.
+ */
+class DocHashCache {
+  private static final Logger log = LogManager.getLogger();
+
+  private static final int MAGIC = 0x4A4A4843; // "JJHC"
+  private static final int VERSION = 1;
+  // rough per-entry cost of the map entry, the key and value objects and the timestamp
+  private static final int ENTRY_OVERHEAD = 96;
+
+  private final int maxEntries;
+  private final long maxBytes;
+  private final long ttlMillis;
+  private final Path snapshot;
+  private long bytes;
+
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private static class Entry {
+    final String hash;
+    final long stored;
+
+    Entry(String hash, long stored) {
+      this.hash = hash;
+      this.stored = stored;
+    }
+  }
+
+  /**
+   * Create a cache.
+   *
+   * @param maxEntries the maximum number of ids to remember
+   * @param maxBytes   the maximum estimated heap usage in bytes
+   * @param ttlMillis  how long an entry may be trusted after it was stored
+   * @param snapshot   a file to save and load the cache from, or null for no persistence
+   */
+  DocHashCache(int maxEntries, long maxBytes, long ttlMillis, Path snapshot) {
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    this.ttlMillis = ttlMillis;
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * Check if the supplied hash is the hash last stored for the id.
+   *
+   * @param id   the document id
+   * @param hash the current hash of the document
+   * @return true only if the cache knows the document to be unchanged.
+   */
+  synchronized boolean isUnchanged(String id, String hash) {
+    Entry entry = entries.get(id);
+    if (entry == null) {
+      return false;
+    }
+    if (System.currentTimeMillis() - entry.stored > ttlMillis) {
+      remove(id);
+      return false;
+    }
+    return entry.hash.equals(hash);
+  }
+
+  /**
+   * Record the hash now known to be stored for a document.
+   *
+   * @param id   the document id
+   * @param hash the hash in the hash table
+   */
+  void put(String id, String hash) {
+    put(id, hash, System.currentTimeMillis());
+  }
+
+  /**
+   * Record the hash stored for a document at a known time, such as the write time of an existing row. The entry
+   * expires relative to that time, not to when it was cached.
+   *
+   * @param id     the document id
+   * @param hash   the hash in the hash table
+   * @param stored when the hash was stored, in milliseconds since the epoch
+   */
+  synchronized void put(String id, String hash, long stored) {
+    if (System.currentTimeMillis() - stored > ttlMillis) {
+      return;
+    }
+    Entry old = entries.put(id, new Entry(hash, stored));
+    if (old != null) {
+      bytes -= sizeOf(id, old.hash);
+    }
+    bytes += sizeOf(id, hash);
+    Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+    while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+      Map.Entry<String, Entry> e = eldest.next();
+      bytes -= sizeOf(e.getKey(), e.getValue().hash);
+      eldest.remove();
+    }
+  }
+
+  private void remove(String id) {
+    Entry old = entries.remove(id);
+    if (old != null) {
+      bytes -= sizeOf(id, old.hash);
+    }
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  private static long sizeOf(String id, String hash) {
+    return ENTRY_OVERHEAD + 2L * (id.length() + hash.length());
+  }
+
+  /**
+   * Load the snapshot file if one is configured and exists. Problems reading the snapshot are logged and
+   * result in an empty cache, since the hash table can always answer instead.
+   */
+  void load() {
+    if (snapshot == null || !Files.isRegularFile(snapshot)) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    int loaded = 0;
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+        log.warn("Ignoring hash cache snapshot {} with unrecognized format", snapshot);
+        return;
+      }
+      int count = buf.getInt();
+      for (int i = 0; i < count; i++) {
+        long stored = buf.getLong();
+        String id = readString(buf);
+        String hash = readString(buf);
+        if (now - stored <= ttlMillis) {
+          put(id, hash, stored);
+          loaded++;
+        }
+      }
+      log.info("Loaded {} document hashes from {}", loaded, snapshot);
+    } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+      log.warn("Could not read hash cache snapshot {}, starting with an empty cache", snapshot, e);
+      synchronized (this) {
+        entries.clear();
+        bytes = 0;
+      }
+    }
+  }
+
+  /**
+   * Write the snapshot file if one is configured. The file is written beside the target and moved into place
+   * so that a crash mid-write cannot leave a truncated snapshot.
+   */
+  void save() {
+    if (snapshot == null) {
+      return;
+    }
+    List<byte[]> ids = new ArrayList<>();
+    List<byte[]> hashes = new ArrayList<>();
+    List<Long> stored = new ArrayList<>();
+    synchronized (this) {
+      for (Map.Entry<String, Entry> e : entries.entrySet()) {
+        ids.add(e.getKey().getBytes(StandardCharsets.UTF_8));
+        hashes.add(e.getValue().hash.getBytes(StandardCharsets.UTF_8));
+        stored.add(e.getValue().stored);
+      }
+    }
+    long size = 12;
+    for (int i = 0; i < ids.size(); i++) {
+      size += 8 + 4 + ids.get(i).length + 4 + hashes.get(i).length;
+    }
+    Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+          buf.putLong(stored.get(i));
+          buf.putInt(ids.get(i).length).put(ids.get(i));
+          buf.putInt(hashes.get(i).length).put(hashes.get(i));
+        }
+        buf.force();
+      }
+      Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      log.debug("Saved {} document hashes to {}", ids.size(), snapshot);
+    } catch (IOException | IllegalArgumentException e) {
+      // a single mapping is limited to 2GB, the cache is still usable without a snapshot
+      log.warn("Could not write hash cache snapshot {}", snapshot, e);
+    }
+  }
+
+  private static String readString(ByteBuffer buf) {
+    int length = buf.getInt();
+    if (length < 0 || length > buf.remaining()) {
+      throw new IllegalArgumentException("Invalid string length " + length + " with " + buf.remaining() +
+          " bytes remaining");
+    }
+    byte[] bytes = new byte[length];
+    buf.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jesterj.ingest.model.impl;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.commons.codec.binary.Hex;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * Incrementally hashes document content. Strings are encoded as UTF-8 through a small reusable buffer, so that
+ * hashing a document never requires building its content as a single string or byte array. Supports any
+ * {@link MessageDigest} algorithm available in the JVM, plus {@link #MURMUR3_128}, a fast non-cryptographic
+ * hash that is sufficient for change detection. Not thread safe.
+ */
+abstract class DocHasher {
+  public static final String MURMUR3_128 = "MURMUR3_128";
+
+  // replace with '?' like String.getBytes() does, so results match hashing of the encoded string
+  private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final ByteBuffer buf = ByteBuffer.allocate(8192);
+
+  static DocHasher forAlgorithm(String algorithm) throws NoSuchAlgorithmException {
+    if (MURMUR3_128.equalsIgnoreCase(algorithm)) {
+      return new GuavaHasher(Hashing.murmur3_128().newHasher());
+    }
+    return new DigestHasher(MessageDigest.getInstance(algorithm));
+  }
+
+  DocHasher update(String value) {
+    CharBuffer in = CharBuffer.wrap(value);
+    encoder.reset();
+    while (encoder.encode(in, buf, true).isOverflow()) {
+      drain();
+    }
+    while (encoder.flush(buf).isOverflow()) {
+      drain();
+    }
+    drain();
+    return this;
+  }
+
+  private void drain() {
+    buf.flip();
+    update(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+    buf.clear();
+  }
+
+  abstract DocHasher update(byte[] bytes, int offset, int length);
+
+  /**
+   * @return the hash as upper case hex
+   */
+  abstract String hexDigest();
+
+  private static class DigestHasher extends DocHasher {
+    private final MessageDigest md;
+
+    DigestHasher(MessageDigest md) {
+      this.md = md;
+    }
+
+    @Override
+    DocHasher update(byte[] bytes, int offset, int length) {
+      md.update(bytes, offset, length);
+      return this;
+    }
+
+    @Override
+    String hexDigest() {
+      return new String(Hex.encodeHex(md.digest(), false));
+    }
+  }
+
+  private static class GuavaHasher extends DocHasher {
+    private final Hasher hasher;
+
+    GuavaHasher(Hasher hasher) {
+      this.hasher = hasher;
+    }
+
+    @Override
+    DocHasher update(byte[] bytes, int offset, int length) {
+      hasher.putBytes(bytes, offset, length);
+      return this;
+    }
+
+    @Override
+    String hexDigest() {
+      return hasher.hash().toString().toUpperCase(Locale.ROOT);
+    }
+  }
+}
@@ -17,7 +17,6 @@
 package org.jesterj.ingest.model.impl;
 
 import com.google.common.collect.*;
-import org.apache.commons.codec.binary.Hex;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.appender.AppenderLoggingException;
@@ -26,19 +25,18 @@ import org.jesterj.ingest.logging.Markers;
 import org.jesterj.ingest.model.Scanner;
 import org.jesterj.ingest.model.*;
 import org.jesterj.ingest.processors.DocumentLoggingContext;
-import org.jesterj.ingest.utils.Cloner;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -65,6 +63,8 @@ public class DocumentImpl implements Document {
 
   public static final String CHILD_SEP = "⇛";
   public static final Pattern DEFAULT_TO_STRING = Pattern.compile("([A-Za-z_.0-9]+=\\[[^=]*[0-9_a-z.]+\\.[0-9_A-Za-z.]+@[0-9A-F]+)]}?,");
+  private static final Pattern DEFAULT_TO_STRING_VALUE = Pattern.compile("[0-9_a-z.]+\\.[0-9_A-Za-z.$]+@[0-9a-f]+");
+  private static final int MAX_DEFAULT_TO_STRING_LENGTH = 512;
 
   private static final AtomicLong NONCE_GENERATOR = new AtomicLong();
 
@@ -77,12 +77,16 @@ public class DocumentImpl implements Document {
   // concurrency bugs, optimize it out later.
   private final ListMultimap<String, String> delegate = Multimaps.synchronizedListMultimap(LinkedListMultimap.create());
   private byte[] rawData;
+  // true while rawData is also referenced by a copy of this document (or the document it was copied from)
+  private transient boolean rawDataShared;
+  private ContentSource rawContent;
 
   private final Operation operation;
   private final String sourceScannerName;
   private final String parentId;
   private final String originalParentId;
   private String docHash;
+  private String hashAlg;
   private boolean forceReprocess;
   private DocStatusChange statusChange;
   private final Map<String, DocDestinationStatus> incompleteOutputDestinations = new ConcurrentHashMap<>();
@@ -113,6 +117,44 @@ public class DocumentImpl implements Document {
     this.origination = origination;
   }
 
+  /**
+   * Structural copy, used when routing sends a document to more than one step. The raw data array is shared
+   * until either document hands it out via {@link #getRawData()}, which then copies it, so that a processor
+   * modifying the array in place cannot change the data of the other document.
+   *
+   * @param original the document to copy.
+   */
+  private DocumentImpl(DocumentImpl original) {
+    synchronized (original) {
+      this.rawData = original.rawData;
+      this.rawContent = original.rawContent;
+      this.rawDataShared = original.rawDataShared = original.rawData != null;
+    }
+    this.operation = original.operation;
+    this.sourceScannerName = original.sourceScannerName;
+    this.idField = original.idField;
+    this.parentId = original.parentId;
+    this.originalParentId = original.originalParentId;
+    this.origination = original.origination;
+    this.docHash = original.docHash;
+    this.hashAlg = original.hashAlg;
+    this.forceReprocess = original.forceReprocess;
+    synchronized (original.delegate) {
+      this.delegate.putAll(original.delegate);
+    }
+    for (Map.Entry<String, DocDestinationStatus> dest : original.incompleteOutputDestinations.entrySet()) {
+      this.incompleteOutputDestinations.put(dest.getKey(), copyStatus(dest.getValue()));
+    }
+    DocStatusChange change = original.statusChange;
+    if (change != null) {
+      Collection<String> specific = change.getSpecificDestinations();
+      this.statusChange = new DocStatusChange(change.getStatus(), change.getMessage(),
+          specific == null ? null : new ArrayList<>(specific), copyArgs(change.getMessageParams()));
+    }
+    // match the prior serialization based clone, where this transient field was not initialized
+    this.newDocAllowedToSetProcessingStatus = false;
+  }
+
   public DocumentImpl(byte[] rawData, String id, Operation oper, DocumentImpl parent) {
     this.rawData = rawData;
     if (this.rawData != null) {
@@ -126,17 +168,27 @@ public class DocumentImpl implements Document {
     this.parentId = parent.getId();
     this.originalParentId = parent.originalParentId;
     this.origination = parent.origination;
-    Cloner<DocDestinationStatus> cloner = new Cloner<>();
+    this.hashAlg = parent.hashAlg;
     for (Map.Entry<String, DocDestinationStatus> step : parent.incompleteOutputDestinations.entrySet()) {
-      try {
-        this.incompleteOutputDestinations.put(step.getKey(), cloner.cloneObj(step.getValue()));
-      } catch (IOException | ClassNotFoundException e) {
-        throw new RuntimeException(e);
-      }
+      this.incompleteOutputDestinations.put(step.getKey(), copyStatus(step.getValue()));
     }
 
   }
 
+  private static DocDestinationStatus copyStatus(DocDestinationStatus status) {
+    return new DocDestinationStatus(status.getStatus(), status.getOutputDestination(), status.getMessage(),
+        copyArgs(status.getMessageParams()));
+  }
+
+  private static Serializable[] copyArgs(Object[] args) {
+    return args == null ? null : Arrays.copyOf(args, args.length, Serializable[].class);
+  }
+
+  @Override
+  public DocumentImpl copy() {
+    return new DocumentImpl(this);
+  }
+
   /**
    * Make a child document. DeterministChild ID generation is critical for handling future
    *
@@ -236,13 +288,43 @@ public class DocumentImpl implements Document {
   }
 
   @Override
-  public byte[] getRawData() {
+  public synchronized byte[] getRawData() {
+    if (rawData == null && rawContent != null) {
+      log.debug("Loading {} bytes of lazy content onto the heap for {}", rawContent::length, this::getId);
+      try (InputStream in = rawContent.open()) {
+        rawData = in.readAllBytes();
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not read content for " + getId() + " from " + rawContent, e);
+      }
+      rawContent = null;
+    }
+    if (rawDataShared) {
+      rawData = rawData.clone();
+      rawDataShared = false;
+    }
     return rawData;
   }
 
   @Override
-  public void setRawData(byte[] rawData) {
+  public synchronized void setRawData(byte[] rawData) {
     this.rawData = rawData;
+    this.rawDataShared = false;
+    this.rawContent = null;
+  }
+
+  @Override
+  public synchronized ContentSource getRawContent() {
+    if (rawContent != null) {
+      return rawContent;
+    }
+    return rawData == null ? null : new ByteArrayContentSource(rawData);
+  }
+
+  @Override
+  public synchronized void setRawContent(ContentSource content) {
+    this.rawContent = content;
+    this.rawData = null;
+    this.rawDataShared = false;
   }
 
   @Override
@@ -301,31 +383,88 @@ public class DocumentImpl implements Document {
       return docHash;
     }
     try {
-      MessageDigest md = MessageDigest.getInstance(getHashAlg());
-      String delegateString = getDelegateString();
-      // warn the user if they are making a simple error with potentially subtle consequences.
-      Matcher m = DEFAULT_TO_STRING.matcher(delegateString);
-      if (m.matches()) {
-        log.warn("Detected possible default Object.toString() when calculating hash code for {}! " +
-            "If allowed, this will lead to non-reproducable hash codes due to the inclusion of java memory " +
-            "addresses that are non-deterministic. The normal fix is to implement toString() for the object, or" +
-            "serialize the object in a deterministic fashion before adding it to the document when scanning." +
-            "Offending match={}", getId(), m.group(1));
-      }
-      md.update(delegateString.getBytes(StandardCharsets.UTF_8));
-      if (getRawData() != null) {
-        md.update(getRawData());
+      DocHasher hasher = DocHasher.forAlgorithm(getHashAlg());
+      hashDelegate(hasher);
+      ContentSource content = getRawContent();
+      if (content instanceof ByteArrayContentSource) {
+        byte[] raw = ((ByteArrayContentSource) content).getBytes();
+        hasher.update(raw, 0, raw.length);
+      } else if (content != null) {
+        try (InputStream in = content.open()) {
+          byte[] buf = new byte[8192];
+          int read;
+          while ((read = in.read(buf)) != -1) {
+            hasher.update(buf, 0, read);
+          }
+        }
       }
-      docHash = new String(Hex.encodeHex(md.digest(), false));
+      docHash = hasher.hexDigest();
       return docHash;
     } catch (NoSuchAlgorithmException e) {
       log.debug(e);
       throw new RuntimeException(e);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read content to hash " + getId(), e);
     }
   }
 
-  String getDelegateString() {
-    return delegate.toString();
+  /**
+   * Feed the fields of this document to the hasher in the same form produced by the delegate's toString()
+   * (<code>{k1=[v1, v2], k2=[v3]}</code>) so that hashes match those recorded by earlier versions, but without
+   * ever building that string.
+   *
+   * @param hasher the hasher to update
+   */
+  void hashDelegate(DocHasher hasher) {
+    synchronized (delegate) {
+      hasher.update("{");
+      boolean firstField = true;
+      for (Map.Entry<String, Collection<String>> field : delegate.asMap().entrySet()) {
+        if (!firstField) {
+          hasher.update(", ");
+        }
+        firstField = false;
+        hasher.update(String.valueOf(field.getKey())).update("=[");
+        boolean firstValue = true;
+        for (String value : field.getValue()) {
+          if (!firstValue) {
+            hasher.update(", ");
+          }
+          firstValue = false;
+          warnIfDefaultToString(field.getKey(), value);
+          hasher.update(String.valueOf(value));
+        }
+        hasher.update("]");
+      }
+      hasher.update("}");
+    }
+  }
+
+  private void warnIfDefaultToString(String field, String value) {
+    // warn the user if they are making a simple error with potentially subtle consequences.
+    if (value != null && value.length() < MAX_DEFAULT_TO_STRING_LENGTH && DEFAULT_TO_STRING_VALUE.matcher(value).matches()) {
+      log.warn("Detected possible default Object.toString() when calculating hash code for {}! " +
+          "If allowed, this will lead to non-reproducable hash codes due to the inclusion of java memory " +
+          "addresses that are non-deterministic. The normal fix is to implement toString() for the object, or" +
+          "serialize the object in a deterministic fashion before adding it to the document when scanning." +
+          "Offending match={}={}", getId(), field, value);
+    }
+  }
+
+  @Override
+  public String getHashAlg() {
+    return hashAlg == null ? Document.super.getHashAlg() : hashAlg;
+  }
+
+  /**
+   * Set the algorithm used by {@link #getHash()}. Any {@link MessageDigest} algorithm may be used, or
+   * {@link DocHasher#MURMUR3_128} for faster non-cryptographic change detection.
+   *
+   * @param hashAlg the algorithm name
+   */
+  public void setHashAlg(String hashAlg) {
+    this.hashAlg = hashAlg;
+    this.docHash = null;
   }
 
   @Override
@@ -439,6 +578,17 @@ public class DocumentImpl implements Document {
         }
       }
       DocumentImpl.this.statusChange = null;
+      if (destinationChanges.stream().anyMatch(d -> d.getStatus() == Status.ERROR)) {
+        notifyScannerOfError();
+      }
+    }
+
+    private void notifyScannerOfError() {
+      Plan plan = step.getPlan();
+      Step source = plan == null ? null : plan.findStep(sourceScannerName);
+      if (source instanceof ScannerImpl) {
+        ((ScannerImpl) source).docErrored(DocumentImpl.this);
+      }
     }
 
     @Override
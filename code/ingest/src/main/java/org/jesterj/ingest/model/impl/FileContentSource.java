@@ -0,0 +1,112 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jesterj.ingest.model.impl;
+
+import org.jesterj.ingest.model.ContentSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A content source that reads a file when the content is needed rather than when the document is created.
+ * Files are either streamed from disk, or memory mapped so that the content is paged in by the operating
+ * system without occupying heap. Files too large for a single mapping are always streamed. The file is not
+ * copied, so changes made to it after the document is created will be seen by later readers.
+ */
+public class FileContentSource implements ContentSource {
+  // Path is not serializable
+  private final String path;
+  private final long length;
+  private final boolean mapped;
+
+  public FileContentSource(Path path, long length, boolean mapped) {
+    this.path = path.toString();
+    this.length = length;
+    this.mapped = mapped;
+  }
+
+  @Override
+  public InputStream open() throws IOException {
+    Path file = Paths.get(path);
+    if (!mapped || length > Integer.MAX_VALUE) {
+      return Files.newInputStream(file);
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      // the mapping remains valid after the channel is closed
+      return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(length, channel.size())));
+    }
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  @Override
+  public String toString() {
+    return "FileContentSource{" + path + ", " + length + " bytes" + (mapped ? ", mapped" : "") + "}";
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(len, buffer.remaining());
+      buffer.get(b, off, count);
+      return count;
+    }
+
+    @Override
+    public long skip(long n) {
+      int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -30,6 +30,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jesterj.ingest.Main;
 import org.jesterj.ingest.model.Configurable;
+import org.jesterj.ingest.model.ExecutionMode;
 import org.jesterj.ingest.model.Plan;
 import org.jesterj.ingest.model.Scanner;
 import org.jesterj.ingest.model.Step;
@@ -52,6 +53,7 @@ public class PlanImpl implements Plan {
   private boolean active = false;
   private String name;
   private int planVersion;
+  private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
 
   protected PlanImpl() {
   }
@@ -113,6 +115,11 @@ public class PlanImpl implements Plan {
     return planVersion;
   }
 
+  @Override
+  public ExecutionMode getExecutionMode() {
+    return executionMode;
+  }
+
   private void linkUp(Map<String, Node> nodes, List<String> knownSteps, StepImpl step) {
     LinkedHashMap<String, Step> nextSteps = step.getNextSteps();
     String label = getLabel(step);
@@ -398,6 +405,19 @@ public class PlanImpl implements Plan {
       getObj().setIdField(id);
       return this;
     }
+
+    /**
+     * Select the type of threads used to run the steps and scanners in this plan. See {@link ExecutionMode}
+     * for details.
+     *
+     * @param mode the execution mode, defaults to {@link ExecutionMode#PLATFORM_THREADS}
+     * @return This builder for further configuration
+     */
+    @SuppressWarnings("unused")
+    public Builder withExecutionMode(ExecutionMode mode) {
+      getObj().executionMode = mode == null ? ExecutionMode.PLATFORM_THREADS : mode;
+      return this;
+    }
   }
 
 }
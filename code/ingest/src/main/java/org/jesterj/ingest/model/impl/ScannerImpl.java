@@ -30,6 +30,7 @@ import org.jesterj.ingest.routers.RouterBase;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
@@ -55,6 +56,10 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
 
   private static final Logger log = LogManager.getLogger();
   public static final int DEF_MAX_ERROR_RETRY = Integer.getInteger("org.jesterj.scanner.max_error_retry", 3);
+  public static final int DEF_LOOKUP_CHUNK_SIZE = Integer.getInteger("org.jesterj.scanner.lookup_chunk_size", 64);
+  // number of documents requested from fetchByIds() at once when re-feeding documents found by FTI
+  static final int FETCH_CHUNK_SIZE = Integer.getInteger("org.jesterj.scanner.fetch_chunk_size", 500);
+  public static final int LOOKUP_CONCURRENCY = Integer.getInteger("org.jesterj.scanner.lookup_concurrency", 32);
   public static final int TIMEOUT = 600;
   static final String FIND_STRANDED_DOCS = "find_stranded_docs";
   static final String FIND_ERROR_DOCS = "find_error_docs";
@@ -63,9 +68,15 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
   public static final int DDL_TIMEOUT = 30;
 
   private boolean hashing;
+  private String hashAlg;
   private long interval;
   boolean remembering;
   private int retryErrors = DEF_MAX_ERROR_RETRY;
+  private int lookupChunkSize = DEF_LOOKUP_CHUNK_SIZE;
+  private int hashCacheEntries;
+  private long hashCacheBytes;
+  private Path hashCacheSnapshot;
+  private volatile DocHashCache hashCache;
 
   // can be used to avoid starting a scan while one is still running. This is not required however
   // and can be ignored if desired.
@@ -78,12 +89,8 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
   private final ExecutorService exec =
       new ThreadPoolExecutor(0, 1,
           60L, TimeUnit.SECONDS,
-          new SynchronousQueue<>(), r -> {
-        Thread scanner = new Thread(r);
-        scanner.setName("jj-scan-" + ScannerImpl.this.getName() + "-" + System.nanoTime());
-        scanner.setDaemon(true);
-        return scanner;
-      }) {
+          new SynchronousQueue<>(), r -> getThreadMaker().newThread(r,
+          "jj-scan-" + ScannerImpl.this.getName() + "-" + System.nanoTime(), isUsingVirtualThreads())) {
         @NotNull
         @Override
         public Future<?> submit(@NotNull Runnable task) {
@@ -143,6 +150,13 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
           "PRIMARY KEY ((docId),created,createdNanos,antiCollision)) " +
           "WITH CLUSTERING ORDER BY (created DESC, createdNanos DESC);";
 
+  public static final String CREATE_SCANNER_STATE =
+      "CREATE TABLE IF NOT EXISTS %s.jj_scanner_state (" +
+          "name varchar, " +        // k1
+          "value varchar, " +
+          "updated timestamp, " +
+          "PRIMARY KEY (name));";
+
   static final String FIND_STRANDED_STATUS =
       "SELECT docid FROM %s.jj_output_step_status " +
           "WHERE status = ?" +
@@ -164,7 +178,7 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
           "PER PARTITION LIMIT 1";
 
   static String FTI_CHECK_DOC_HASH_Q = "FTI_CHECK_Q";
-  static String FTI_CHECK_DOC_HASH = "SELECT docHash from %s.jj_scanner_doc_hash " +
+  static String FTI_CHECK_DOC_HASH = "SELECT docHash, WRITETIME(docHash) from %s.jj_scanner_doc_hash " +
       "WHERE docid = ? " +
       "LIMIT 1";
 
@@ -175,6 +189,12 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
       "VALUES(" +
       "?,?,?,?," +
       "?,?) USING TTL ?";
+  static String SCANNER_STATE_Q = "SCANNER_STATE_Q";
+  static String SCANNER_STATE = "SELECT value FROM %s.jj_scanner_state WHERE name = ?";
+
+  static String SCANNER_STATE_U = "SCANNER_STATE_U";
+  static String UPDATE_SCANNER_STATE = "INSERT INTO %s.jj_scanner_state (name, value, updated) VALUES (?,?,?)";
+
   private volatile boolean shutdownHasStarted;
   private boolean persistenceCreated;
   private final Map<String, String> keySpaces = new ConcurrentHashMap<>();
@@ -187,6 +207,11 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
     try {
       addStepContext();
       shutdownHasStarted = false;
+      if (hashCacheEntries > 0 && hashCache == null) {
+        DocHashCache cache = new DocHashCache(hashCacheEntries, hashCacheBytes, FTI_TTL * 1000L, hashCacheSnapshot);
+        cache.load();
+        hashCache = cache;
+      }
       Set<String> sentAlready = new HashSet<>();
       FTIQueryContext ctx = new FTIQueryContext(sentAlready);
 
@@ -214,6 +239,14 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
   public void deactivate() {
     shutdownHasStarted = true;
     super.deactivate();
+    saveHashCache();
+  }
+
+  private void saveHashCache() {
+    DocHashCache cache = hashCache;
+    if (cache != null) {
+      cache.save();
+    }
   }
 
   public void run() {
@@ -299,15 +332,8 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
    * @return true if the found document should be indexed, false if it should be ignored
    */
   public boolean docFound(Document doc) {
-    ((DocumentImpl) doc).stepStarted(this);
     String scannerName = getName();
-    String oldId = doc.getId();
-    setDocId(doc);
-    log.trace("{} found doc:{} Transformed id is:{}", scannerName, oldId, doc.getId());
-
-    doc.setStatus(PROCESSING, "{} found doc:{}", scannerName, doc.getId());
-
-    boolean shouldIndex = doc.isForceReprocess();
+    boolean shouldIndex = startDocFound(doc);
 
     if (isRemembering() & !shouldIndex) {
       CqlSession session = getCassandra().getSession();
@@ -332,7 +358,108 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
       shouldIndex = true;
       log.trace("Not Remembering");
     }
+    return finishDocFound(doc, shouldIndex);
+  }
+
+  /**
+   * Handle a group of documents found together by a scan. This has the same effect as calling
+   * {@link #docFound(Document)} for each document in order, but when remembering, the lookups that decide
+   * whether each document has been seen before (or has changed) are issued asynchronously, with up to
+   * {@link #LOOKUP_CONCURRENCY} in flight at once, rather than one blocking round trip per document.
+   * Documents that need indexing are sent on in their original order once all lookups are complete.
+   *
+   * @param docs The documents found
+   * @return the number of documents that were sent on for indexing
+   */
+  public int docsFound(List<Document> docs) {
+    if (docs.size() == 1) {
+      return docFound(docs.get(0)) ? 1 : 0;
+    }
+    String scannerName = getName();
+    boolean[] shouldIndex = new boolean[docs.size()];
+    List<CompletableFuture<Boolean>> lookups = new ArrayList<>();
+    CqlSession session = isRemembering() ? getCassandra().getSession() : null;
+    Semaphore permits = new Semaphore(LOOKUP_CONCURRENCY);
+    try {
+      for (int i = 0; i < docs.size(); i++) {
+        Document doc = docs.get(i);
+        shouldIndex[i] = startDocFound(doc);
+        if (!isRemembering()) {
+          shouldIndex[i] = true;
+          continue;
+        }
+        if (shouldIndex[i] || hasForcedDestination(doc)) {
+          shouldIndex[i] = true;
+          continue;
+        }
+        final int idx = i;
+        permits.acquire();
+        CompletionStage<Boolean> lookup;
+        try {
+          lookup = isHashing() ?
+              isFreshContentAsync(doc, scannerName, doc.getId(), session) :
+              seenPreviouslyAsync(scannerName, doc.getId(), session).thenApply(seen -> !seen);
+        } catch (RuntimeException e) {
+          permits.release();
+          throw e;
+        }
+        // completion of all lookups (join below) makes these writes visible to this thread
+        lookups.add(lookup.toCompletableFuture().whenComplete((fresh, t) -> {
+          permits.release();
+          if (t == null) {
+            shouldIndex[idx] = fresh;
+          }
+        }));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while checking documents previously seen by " + scannerName, e);
+    }
+    // failures propagate here just as they would from docFound()
+    CompletableFuture.allOf(lookups.toArray(new CompletableFuture[0])).join();
+
+    int sent = 0;
+    for (int i = 0; i < docs.size(); i++) {
+      if (finishDocFound(docs.get(i), shouldIndex[i])) {
+        sent++;
+      }
+    }
+    return sent;
+  }
+
+  /**
+   * Begin handling a document found by the scanner.
+   *
+   * @param doc the document found
+   * @return true if the document is known to need indexing without any lookup
+   */
+  private boolean startDocFound(Document doc) {
+    ((DocumentImpl) doc).stepStarted(this);
+    if (hashAlg != null) {
+      ((DocumentImpl) doc).setHashAlg(hashAlg);
+    }
+    String scannerName = getName();
+    String oldId = doc.getId();
+    setDocId(doc);
+    log.trace("{} found doc:{} Transformed id is:{}", scannerName, oldId, doc.getId());
+
+    doc.setStatus(PROCESSING, "{} found doc:{}", scannerName, doc.getId());
+
+    return doc.isForceReprocess();
+  }
+
+  private boolean hasForcedDestination(Document doc) {
+    for (String destination : getOutputDestinationNames()) {
+      Status status = doc.getStatus(destination);
+      // Typically these statuses already have forceReprocess set, but just in case.
+      if (status == FORCE || status == RESTART) {
+        return true;
+      }
+    }
+    return false;
+  }
 
+  private boolean finishDocFound(Document doc, boolean shouldIndex) {
     shouldIndex = shouldIndex || isHeuristicallyDirty(doc);
 
     log.trace("Memory complete");
@@ -378,28 +505,106 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
   }
 
   boolean isFreshContent(Document doc, String scannerName, String id, CqlSession session) {
-    String prevHash = findPreviousHash(doc, id, session);
+    if (isCachedUnchanged(doc, scannerName, id)) {
+      return false;
+    }
+    Row previous = findPreviousHash(doc, id, session);
+    String prevHash = previous == null ? null : previous.getString(0);
     if (doc.getHash().equals(prevHash)) {
       log.trace("{} ignoring document with previously seen content {}", scannerName, id);
+      cacheHash(id, prevHash, writtenMillis(previous));
       return false;
     } else {
       updateHash(doc, session);
+      cacheHash(id, doc.getHash());
       return true;
     }
   }
 
+  private boolean isCachedUnchanged(Document doc, String scannerName, String id) {
+    DocHashCache cache = hashCache;
+    if (cache != null && cache.isUnchanged(id, doc.getHash())) {
+      log.trace("{} ignoring document with content matching the local hash cache {}", scannerName, id);
+      return true;
+    }
+    return false;
+  }
+
+  private void cacheHash(String id, String hash) {
+    DocHashCache cache = hashCache;
+    if (cache != null) {
+      cache.put(id, hash);
+    }
+  }
+
+  private void cacheHash(String id, String hash, long storedMillis) {
+    DocHashCache cache = hashCache;
+    if (cache != null) {
+      // expire relative to when the row was written, which is when its TTL started
+      cache.put(id, hash, storedMillis);
+    }
+  }
+
+  private static long writtenMillis(Row hashRow) {
+    // WRITETIME is in microseconds
+    return hashRow.getLong(1) / 1000;
+  }
+
+  CompletionStage<Boolean> seenPreviouslyAsync(String scannerName, String id, CqlSession session) {
+    String anyStep = getOutputDestinationNames().iterator().next();
+    String keySpace = keySpace(anyStep);
+    String actualQuery = String.format(FIND_LATEST_STATUS, keySpace);
+    PreparedStatement seenDocQuery = getCassandra().getPreparedQuery(FIND_LATEST_STATUS_Q + "_" + keySpace(anyStep), actualQuery);
+    return session.executeAsync(seenDocQuery.bind(id)).thenApply(lastStatus -> {
+      if (lastStatus.remaining() > 0) {
+        log.trace("{} ignoring document previously seen {}", scannerName, id);
+        return true;
+      }
+      return false;
+    });
+  }
+
+  CompletionStage<Boolean> isFreshContentAsync(Document doc, String scannerName, String id, CqlSession session) {
+    // Hashing may stream the whole content, so it must happen here, not in the callbacks below, which run on
+    // the driver's I/O threads.
+    String hash = doc.getHash();
+    if (isCachedUnchanged(doc, scannerName, id)) {
+      return CompletableFuture.completedFuture(false);
+    }
+    log.trace("We are using hashing to detect new versions");
+    String actualQuery = String.format(FTI_CHECK_DOC_HASH, keySpace(null));
+    PreparedStatement preparedQuery = getCassandra().getPreparedQuery(FTI_CHECK_DOC_HASH_Q + "_" + keySpace(null), actualQuery);
+    return session.executeAsync(preparedQuery.bind(id)).thenCompose(statusRs -> {
+      Row row = statusRs.one();
+      String prevHash = row == null ? null : row.getString(0);
+      if (hash.equals(prevHash)) {
+        log.trace("{} ignoring document with previously seen content {}", scannerName, id);
+        cacheHash(id, prevHash, writtenMillis(row));
+        return CompletableFuture.completedFuture(false);
+      }
+      log.trace("Found '{}' with hash {}, current hash is {}", id, prevHash, hash);
+      return session.executeAsync(bindUpdateHash(doc, hash)).thenApply(rs -> {
+        cacheHash(id, hash);
+        return true;
+      });
+    });
+  }
+
   private void updateHash(Document doc, CqlSession session) {
+    session.execute(bindUpdateHash(doc, doc.getHash()));
+  }
+
+  private BoundStatement bindUpdateHash(Document doc, String hash) {
     // doc hashing only needs to be determined once per scanner, not for every down stream step
     String actualQuery = String.format(FTI_DOC_HASH, keySpace(null));
     PreparedStatement updateHash = getCassandra().getPreparedQuery(FTI_DOC_HASH_U + "_" + keySpace(null), actualQuery);
-    BoundStatement bs = updateHash.bind(doc.getId(),
+    return updateHash.bind(doc.getId(),
         Instant.now(), (int) (System.nanoTime() % 1_000_000),
-        CassandraSupport.antiCollision.get().nextInt(), doc.getHashAlg(), doc.getHash(), FTI_TTL);
-    session.execute(bs);
+        CassandraSupport.antiCollision.get().nextInt(), doc.getHashAlg(), hash, FTI_TTL);
   }
 
   @Nullable
-  private String findPreviousHash(Document doc, String id, CqlSession session) {
+  private Row findPreviousHash(Document doc, String id, CqlSession session) {
     log.trace("We are using hashing to detect new versions");
     String actualQuery = String.format(FTI_CHECK_DOC_HASH, keySpace(null));
     PreparedStatement preparedQuery = getCassandra().getPreparedQuery(FTI_CHECK_DOC_HASH_Q + "_" + keySpace(null), actualQuery);
@@ -407,13 +612,12 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
     BoundStatement bind = preparedQuery.bind(id);
     ResultSet statusRs = session.execute(bind);
     printErrors(statusRs);
-    String previousHash = null;
+    Row previous = null;
     if (statusRs.getAvailableWithoutFetching() > 0) {
-      Row next = statusRs.all().iterator().next();
-      previousHash = next.getString(0);
-      log.trace("Found '{}' with hash {}, current hash is {}", id, previousHash, doc.getHash());
+      previous = statusRs.all().iterator().next();
+      log.trace("Found '{}' with hash {}, current hash is {}", id, previous.getString(0), doc.getHash());
     }
-    return previousHash;
+    return previous;
   }
 
   protected void setInterval(long interval) {
@@ -421,6 +625,16 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
   }
 
 
+  /**
+   * Called when a document from this scanner is reported with {@link Status#ERROR} status by any step. Scanners
+   * that remember locally what they have already found (rather than relying on the FTI) should forget the
+   * document's source here, so that it is found again. The default does nothing.
+   *
+   * @param doc the document that errored
+   */
+  protected void docErrored(Document doc) {
+  }
+
   @Override
   @SuppressWarnings("unused")
   public boolean isHeuristicallyDirty(Document doc) {
@@ -460,7 +674,6 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
     BoundStatement bs;
     PreparedStatement pq;
     ResultSet rs;
-    int i = 0;
 
     // Sadly to avoid allow filtering we have to iterate here instead of just using a single IN()
     CassandraSupport cStar = getCassandra();
@@ -493,21 +706,40 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
         }
       }
     }
-    // if there are no statuses that require processing, we skip this loop and the doc is not sent.
-    for (Map.Entry<String, Set<LatestStatus>> toProcess : needToProcess.entrySet()) {
-      process(force, sentAlready, toProcess, FTI_ORIGIN);
-      i++;
+    // if there are no statuses that require processing, nothing is fetched and no doc is sent.
+    if (!needToProcess.isEmpty()) {
+      processAll(force, sentAlready, needToProcess, FTI_ORIGIN);
     }
-    log.info("Found and restarted processing for {} FTI records", i);
+    log.info("Found and restarted processing for {} FTI records", needToProcess.size());
   }
 
+  /**
+   * Re-feed documents found by FTI, fetching them in chunks via {@link #fetchByIds(Collection, String)}
+   * so that scanners able to load documents in bulk need not make a round trip per document.
+   */
+  void processAll(boolean force, Set<String> sentAlready, Map<String, Set<LatestStatus>> toProcess, String origination) {
+    List<Map.Entry<String, Set<LatestStatus>>> entries = new ArrayList<>(toProcess.entrySet());
+    for (int start = 0; start < entries.size(); start += FETCH_CHUNK_SIZE) {
+      List<Map.Entry<String, Set<LatestStatus>>> chunk =
+          entries.subList(start, Math.min(entries.size(), start + FETCH_CHUNK_SIZE));
+      List<String> ids = new ArrayList<>(chunk.size());
+      for (Map.Entry<String, Set<LatestStatus>> entry : chunk) {
+        ids.add(entry.getKey());
+      }
+      Map<String, Document> fetched = fetchByIds(ids, origination);
+      log.debug("Fetched {} of {} documents for reprocessing", fetched.size(), ids.size());
+      for (Map.Entry<String, Set<LatestStatus>> entry : chunk) {
+        process(force, sentAlready, entry, Optional.ofNullable(fetched.get(entry.getKey())));
+      }
+    }
+  }
 
-  void process(boolean force, Set<String> sentAlready, Map.Entry<String, Set<LatestStatus>> toProcess, String origination) {
+  void process(boolean force, Set<String> sentAlready, Map.Entry<String, Set<LatestStatus>> toProcess, Optional<Document> fetched) {
     String docId = toProcess.getKey();
     if (sentAlready != null) {
       sentAlready.add(docId);
     }
-    fetchById(docId, origination).ifPresentOrElse((d) -> {
+    fetched.ifPresentOrElse((d) -> {
           d.setForceReprocess(force);
           Set<LatestStatus> statuses = toProcess.getValue();
           Map<String, DocDestinationStatus> downstream = new HashMap<>();
@@ -600,10 +832,39 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
       }
       executeWithTimoutSecs(session, CREATE_FT_KEYSPACE, null, DDL_TIMEOUT);
       executeWithTimoutSecs(session, CREATE_DOC_HASH, null, DDL_TIMEOUT);
+      executeWithTimoutSecs(session, CREATE_SCANNER_STATE, null, DDL_TIMEOUT);
       this.persistenceCreated = true;
     }
   }
 
+  /**
+   * Read a value that a scanner has saved to keep track of its progress across scans and restarts.
+   *
+   * @param name the name of the value, unique within this scanner
+   * @return the value last saved under the name, if any
+   */
+  protected Optional<String> loadScannerState(String name) {
+    ensurePersistence();
+    String actualQuery = String.format(SCANNER_STATE, keySpace(null));
+    PreparedStatement query = getCassandra().getPreparedQuery(SCANNER_STATE_Q + "_" + keySpace(null), actualQuery);
+    Row row = getCassandra().getSession().execute(query.bind(name)).one();
+    return row == null ? Optional.empty() : Optional.ofNullable(row.getString(0));
+  }
+
+  /**
+   * Save a value that keeps track of the progress of this scanner. Values are kept in the scanner's keyspace,
+   * and do not expire.
+   *
+   * @param name  the name of the value, unique within this scanner
+   * @param value the value to save
+   */
+  protected void saveScannerState(String name, String value) {
+    ensurePersistence();
+    String actualQuery = String.format(UPDATE_SCANNER_STATE, keySpace(null));
+    PreparedStatement update = getCassandra().getPreparedQuery(SCANNER_STATE_U + "_" + keySpace(null), actualQuery);
+    getCassandra().getSession().execute(update.bind(name, value, Instant.now()));
+  }
+
   @SuppressWarnings("SameParameterValue")
   private void executeWithTimoutSecs(CqlSession session, String cqlTemplate, String destinationName, int seconds) {
     String format = String.format(cqlTemplate, keySpace(destinationName));
@@ -707,8 +968,8 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
       d.reportDocStatus();
     }
 
-    for (Map.Entry<String, Set<LatestStatus>> toReproc : forceReprocess.entrySet()) {
-      process(true, null, toReproc, FTI_ORIGIN);
+    if (!forceReprocess.isEmpty()) {
+      processAll(true, null, forceReprocess, FTI_ORIGIN);
     }
   }
 
@@ -938,6 +1199,18 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
       return this;
     }
 
+    /**
+     * Not supported for scanners. Scanners push documents to their successors from the scan operation and have no
+     * queue to be consumed by multiple workers.
+     *
+     * @param workers ignored
+     * @return never returns normally
+     */
+    @Override
+    public ScannerImpl.Builder withWorkers(int workers) {
+      throw new UnsupportedOperationException("Scanners are a push only source of documents and cannot have multiple workers");
+    }
+
     @Override
     protected abstract ScannerImpl getObj();
 
@@ -965,6 +1238,26 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
       return this;
     }
 
+    /**
+     * The number of scanned documents to check against the scanner's memory at once. Larger chunks allow the
+     * "seen before" or hash lookups to proceed concurrently instead of one round trip at a time, at the cost of
+     * holding that many documents in memory and delaying their submission until the chunk is checked. Has no
+     * effect unless {@link #rememberScannedIds(boolean)} is turned on. Defaults to the value of the
+     * <code>org.jesterj.scanner.lookup_chunk_size</code> system property, or 64.
+     *
+     * @param size the number of documents per chunk, 1 disables chunking
+     * @return this builder for further configuration.
+     */
+    @SuppressWarnings({"unused", "UnusedReturnValue"})
+    public ScannerImpl.Builder checkingMemoryInChunksOf(int size) {
+      if (size < 1) {
+        throw new IllegalArgumentException("Lookup chunk size must be at least 1, got " + size);
+      }
+      getObj().lookupChunkSize = size;
+      return this;
+    }
+
+
     /**
      * Turn on document id based memory. When enabled this option will cause the scanner not to submit documents that
      * have already been indexed a second time unless they have been marked dirty, the scanner's heuristics determine
@@ -995,6 +1288,60 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
       return this;
     }
 
+    /**
+     * Choose the algorithm used to hash documents for change detection. Any {@link MessageDigest} algorithm
+     * supported by the JVM may be used, as may <code>MURMUR3_128</code>, which is much faster and sufficient
+     * for detecting changes, though not cryptographically secure. Changing the algorithm for an existing plan
+     * will cause every document to be seen as changed on the next scan. Defaults to MD5.
+     *
+     * @param algorithm the name of the algorithm
+     * @return This builder object for further configuration
+     */
+    @SuppressWarnings({"unused", "UnusedReturnValue"})
+    public ScannerImpl.Builder hashingWith(String algorithm) {
+      try {
+        DocHasher.forAlgorithm(algorithm);
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalArgumentException("Unsupported hash algorithm " + algorithm, e);
+      }
+      getObj().hashAlg = algorithm;
+      return this;
+    }
+
+    /**
+     * Keep a local record of recently stored document hashes so that documents found to be unchanged on
+     * re-scans need not be checked against cassandra. The least recently used entries are discarded once
+     * either limit is reached. Documents not in the cache, or with a different hash, are still checked
+     * against cassandra. Has no effect unless {@link #detectChangesViaHashing(boolean)} is turned on.
+     *
+     * @param maxEntries the maximum number of document hashes to remember
+     * @param maxBytes   the maximum approximate heap to use for the cache
+     * @return This builder object for further configuration
+     */
+    @SuppressWarnings({"unused", "UnusedReturnValue"})
+    public ScannerImpl.Builder cachingHashes(int maxEntries, long maxBytes) {
+      if (maxEntries < 1 || maxBytes < 1) {
+        throw new IllegalArgumentException("Hash cache limits must be positive");
+      }
+      getObj().hashCacheEntries = maxEntries;
+      getObj().hashCacheBytes = maxBytes;
+      return this;
+    }
+
+    /**
+     * Persist the hash cache configured via {@link #cachingHashes(int, long)} to a file after each scan and
+     * on shutdown, and reload it on startup so that the first scan after a restart also benefits. Entries
+     * older than the hash table's time to live are discarded on load.
+     *
+     * @param snapshot the file to use
+     * @return This builder object for further configuration
+     */
+    @SuppressWarnings({"unused", "UnusedReturnValue"})
+    public ScannerImpl.Builder snapshottingHashCacheTo(Path snapshot) {
+      getObj().hashCacheSnapshot = snapshot;
+      return this;
+    }
+
   }
 
   /**
@@ -1028,6 +1375,7 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
         scanStarted();
         processDirty();
         custom.run();
+        saveHashCache();
         log.info("{} of plan {} Finishing scan at {} on {}", scanner.getName(), getPlan().getName(), new Date(),
             Thread.currentThread().getName());
       } catch (Exception e) {
@@ -1042,6 +1390,48 @@ public abstract class ScannerImpl extends StepImpl implements Scanner {
   }
 
 
+  /**
+   * Collects documents found during a scan and hands them to {@link #docsFound(List)} in chunks, so that
+   * the lookups needed for remembering and hashing can be made in bulk. When not remembering, or when the
+   * chunk size is 1, documents are passed straight to {@link #docFound(Document)}. Scan operations must call
+   * {@link #flush()} when the scan completes. Not thread safe, intended for use by a single scan.
+   */
+  public class FoundDocs {
+    private final List<Document> pending = new ArrayList<>();
+    private int sent;
+
+    public void found(Document doc) {
+      if (!isRemembering() || lookupChunkSize <= 1) {
+        if (docFound(doc)) {
+          sent++;
+        }
+        return;
+      }
+      pending.add(doc);
+      if (pending.size() >= lookupChunkSize) {
+        flush();
+      }
+    }
+
+    public void flush() {
+      if (pending.isEmpty()) {
+        return;
+      }
+      try {
+        sent += docsFound(pending);
+      } finally {
+        pending.clear();
+      }
+    }
+
+    /**
+     * @return the number of documents sent on for indexing so far
+     */
+    public int getSent() {
+      return sent;
+    }
+  }
+
   protected void processDirty() {
     if (this.isRemembering()) {
       log.trace("processing dirty");
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jesterj.ingest.model.impl;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.ref.Cleaner;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Content copied to a temporary file, for content read from a source that cannot be read again later, such as
+ * a LOB column of a JDBC result set. The file is deleted once this object is no longer reachable, so a
+ * deserialized copy of a document holding spooled content should not outlive the original.
+ */
+public class SpooledContentSource extends FileContentSource {
+  private static final Logger log = LogManager.getLogger();
+  private static final Cleaner CLEANER = Cleaner.create();
+
+  private SpooledContentSource(Path file, long length, boolean mapped) {
+    super(file, length, mapped);
+    CLEANER.register(this, new Delete(file.toString()));
+  }
+
+  /**
+   * Copy bytes to a new temporary file.
+   *
+   * @param in       the content, not closed by this method
+   * @param maxBytes the maximum number of bytes to copy, any more are discarded
+   * @param dir      the directory for the file, or null for the default temporary directory
+   * @param mapped   whether the file should be memory mapped when read
+   * @return a content source for the copy
+   * @throws IOException if the content cannot be read or the file cannot be written
+   */
+  public static SpooledContentSource spool(InputStream in, long maxBytes, Path dir, boolean mapped) throws IOException {
+    Path file = createFile(dir);
+    try (OutputStream out = Files.newOutputStream(file)) {
+      IOUtils.copyLarge(in, out, 0, maxBytes);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+    return new SpooledContentSource(file, Files.size(file), mapped);
+  }
+
+  /**
+   * Copy characters to a new temporary file as UTF-8.
+   *
+   * @param in       the content, not closed by this method
+   * @param maxChars the maximum number of characters to copy, any more are discarded
+   * @param dir      the directory for the file, or null for the default temporary directory
+   * @param mapped   whether the file should be memory mapped when read
+   * @return a content source for the copy
+   * @throws IOException if the content cannot be read or the file cannot be written
+   */
+  public static SpooledContentSource spool(Reader in, long maxChars, Path dir, boolean mapped) throws IOException {
+    Path file = createFile(dir);
+    try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      IOUtils.copyLarge(in, out, 0, maxChars);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+    return new SpooledContentSource(file, Files.size(file), mapped);
+  }
+
+  private static Path createFile(Path dir) throws IOException {
+    return dir == null ? Files.createTempFile("jj_spool_", ".tmp") : Files.createTempFile(dir, "jj_spool_", ".tmp");
+  }
+
+  @Override
+  public String toString() {
+    return "Spooled" + super.toString();
+  }
+
+  // must not refer to the content source, or it would never become unreachable
+  private static class Delete implements Runnable {
+    private final String path;
+
+    Delete(String path) {
+      this.path = path;
+    }
+
+    @Override
+    public void run() {
+      try {
+        Files.deleteIfExists(Paths.get(path));
+      } catch (IOException e) {
+        log.warn("Could not delete spooled content {}", path, e);
+      }
+    }
+  }
+}
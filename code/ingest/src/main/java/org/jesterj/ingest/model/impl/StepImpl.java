@@ -23,6 +23,7 @@ import org.apache.logging.log4j.ThreadContext;
 import org.jesterj.ingest.model.*;
 import org.jesterj.ingest.processors.NoOpProcessor;
 import org.jesterj.ingest.routers.RouterBase;
+import org.jesterj.ingest.utils.ThreadMaker;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -66,8 +67,12 @@ public class StepImpl implements Step {
   private String stepName;
   private Router router;
   private volatile DocumentProcessor processor = new NoOpProcessor();
-  private volatile Thread worker;
+  private volatile List<Thread> workers = Collections.emptyList();
   private final Object WORKER_LOCK = new Object();
+  private int workerCount = 1;
+  private final ThreadMaker threadMaker = new ThreadMaker();
+  // workers blocked in queue.take(), which must be interrupted to notice deactivation
+  private final Set<Thread> awaitingDocuments = ConcurrentHashMap.newKeySet();
   private Plan plan;
   private final List<Runnable> deferred = new ArrayList<>();
   private int shutdownTimeout = 100;
@@ -233,6 +238,16 @@ public class StepImpl implements Step {
     return batchSize;
   }
 
+  /**
+   * The number of worker threads requested for this step. See {@link #getEffectiveWorkerCount()} for the number
+   * actually used.
+   *
+   * @return the configured number of workers
+   */
+  public int getWorkerCount() {
+    return workerCount;
+  }
+
   @Override
   public NextSteps getNextSteps(Document doc) {
     if (nextSteps.isEmpty()) {
@@ -265,43 +280,77 @@ public class StepImpl implements Step {
   @Override
   public synchronized void activate() {
     log.info("Starting {} ", getName());
-    if (worker == null || !worker.isAlive()) {
+    if (workers.stream().noneMatch(Thread::isAlive)) {
       synchronized (WORKER_LOCK) {
-        log.info("Starting new thread for {} ", getName());
-        worker = new Thread(this);
-        worker.setName("jj-worker-" + this.stepName + "-" + System.currentTimeMillis());
-        worker.setDaemon(true);
+        int count = getEffectiveWorkerCount();
+        log.info("Starting {} new thread(s) for {} ", count, getName());
+        List<Thread> started = new ArrayList<>(count);
+        long now = System.currentTimeMillis();
+        boolean virtual = isUsingVirtualThreads();
+        if (!virtual && isVirtualThreadsRequested()) {
+          log.warn("Plan {} requested virtual threads, but they are not supported by this JVM ({}). {} will use " +
+              "platform threads", getPlan().getName(), System.getProperty("java.version"), getName());
+        }
+        for (int i = 0; i < count; i++) {
+          String name = "jj-worker-" + this.stepName + "-" + now + (count > 1 ? "-" + i : "");
+          started.add(getThreadMaker().newThread(this, name, virtual));
+        }
         this.active = true;
-        worker.start();
-        log.info("started {} ({})", worker.getName(), worker.getId());
+        this.workers = Collections.unmodifiableList(started);
+        for (Thread worker : started) {
+          worker.start();
+          log.info("started {} ({})", worker.getName(), worker.getId());
+        }
       }
     }
     log.info("Started step {} ", getName());
   }
 
+  /**
+   * The number of threads that will actually consume documents from this step's queue. Processors that do not
+   * declare themselves thread safe always get a single worker, regardless of the configured worker count.
+   *
+   * @return the number of worker threads to start when activated
+   */
+  int getEffectiveWorkerCount() {
+    if (workerCount > 1 && !processor.isThreadSafe()) {
+      log.warn("Step {} was configured with {} workers, but processor {} is not thread safe. Using 1 worker.",
+          getName(), workerCount, processor.getName());
+      return 1;
+    }
+    return Math.max(1, workerCount);
+  }
+
   @Override
   public synchronized void deactivate() {
     log.info("Deactivating step {}", getName());
     this.active = false;
     this.queue.clear();
     // make this method idempotent so that it can be called any number of times without NPE, and can be
-    // called by the joined thread  without getting stuck in a join/interrupt loop.
-    if (worker != null) {
-      Thread workerShuttingDown;
-      synchronized (WORKER_LOCK) {
-        workerShuttingDown = worker;
-        worker = null;
+    // called by one of the joined threads without getting stuck in a join/interrupt loop.
+    List<Thread> workersShuttingDown;
+    synchronized (WORKER_LOCK) {
+      workersShuttingDown = workers;
+      workers = Collections.emptyList();
+    }
+    // idle workers blocked waiting for a document will never see the change in active status
+    for (Thread idle : awaitingDocuments) {
+      if (idle != Thread.currentThread()) {
+        idle.interrupt();
       }
-      if (workerShuttingDown != null) {
-        try {
-          workerShuttingDown.join(shutdownTimeout);
-          if (workerShuttingDown.isAlive()) {
-            log.warn("{} was slow shutting down, interrupting..", getName());
-            workerShuttingDown.interrupt();
-          }
-        } catch (InterruptedException e) {
-          log.error("Thread on which shutdown was was interrupted while shutting down {}", getName());
+    }
+    for (Thread workerShuttingDown : workersShuttingDown) {
+      if (workerShuttingDown == Thread.currentThread()) {
+        continue;
+      }
+      try {
+        workerShuttingDown.join(shutdownTimeout);
+        if (workerShuttingDown.isAlive()) {
+          log.warn("{} was slow shutting down, interrupting..", getName());
+          workerShuttingDown.interrupt();
         }
+      } catch (InterruptedException e) {
+        log.error("Thread on which shutdown was was interrupted while shutting down {}", getName());
       }
     }
   }
@@ -318,6 +367,25 @@ public class StepImpl implements Step {
     return this.active;
   }
 
+  /**
+   * True if the plan requested {@link ExecutionMode#VIRTUAL_THREADS} and the JVM supports them. In that case
+   * workers run on virtual threads and block on the queue rather than polling it.
+   *
+   * @return true if this step's threads should be virtual
+   */
+  boolean isUsingVirtualThreads() {
+    return isVirtualThreadsRequested() && getThreadMaker().isVirtualThreadSupported();
+  }
+
+  private boolean isVirtualThreadsRequested() {
+    Plan plan = getPlan();
+    return plan != null && plan.getExecutionMode() == ExecutionMode.VIRTUAL_THREADS;
+  }
+
+  ThreadMaker getThreadMaker() {
+    return threadMaker;
+  }
+
   @Override
   public void sendToNext(Document doc) {
     pushToNextIfNotDropped(doc);
@@ -627,7 +695,7 @@ public class StepImpl implements Step {
       while (this.active) {
         try {
           log.trace("active: {}", getName());
-          Document document = queue.poll(10, TimeUnit.MILLISECONDS);
+          Document document = nextDocument();
           if (document != null) {
             if (document.getIncompleteOutputDestinations().length < 1 ) {
               throw new RuntimeException("Critical failure! No down stream step on Document. This is likely to be a bug " +
@@ -651,7 +719,9 @@ public class StepImpl implements Step {
             documentConsumer.accept(di);
           }
         } catch (InterruptedException e) {
-          this.deactivate();
+          if (this.active) {
+            this.deactivate();
+          }
           break;
         }
       }
@@ -668,6 +738,24 @@ public class StepImpl implements Step {
     }
   }
 
+  // visible for testing
+  Document nextDocument() throws InterruptedException {
+    if (!isUsingVirtualThreads()) {
+      return queue.poll(10, TimeUnit.MILLISECONDS);
+    }
+    Thread current = Thread.currentThread();
+    awaitingDocuments.add(current);
+    try {
+      // checked after registering so that deactivate() either interrupts us or we see it here.
+      if (!this.active) {
+        return null;
+      }
+      return queue.take();
+    } finally {
+      awaitingDocuments.remove(current);
+    }
+  }
+
   void addStepContext() {
     ThreadContext.put(JJ_PLAN_NAME, getPlan().getName());
     ThreadContext.put(JJ_PLAN_VERSION, String.valueOf(getPlan().getVersion()));
@@ -799,6 +887,23 @@ public class StepImpl implements Step {
       return this;
     }
 
+    /**
+     * Consume documents from this step's queue with more than one thread. This is useful for CPU intensive
+     * processors such as {@link org.jesterj.ingest.processors.TikaProcessor}, but has no effect unless the
+     * processor reports that it is {@link DocumentProcessor#isThreadSafe() thread safe}. Note that documents
+     * may complete this step in a different order than they were received when using more than one worker.
+     *
+     * @param workers the number of threads to take documents from the queue, must be at least 1
+     * @return This builder for further configuration
+     */
+    public Builder withWorkers(int workers) {
+      if (workers < 1) {
+        throw new IllegalArgumentException("A step requires at least one worker, got " + workers);
+      }
+      getObj().workerCount = workers;
+      return this;
+    }
+
     public Builder routingBy(RouterBase.Builder<? extends Router> router) {
       StepImpl currObj = getObj(); // make sure that this cant change after build() called.
       getObj().addDeferred(() -> currObj.router = router.forStep(getObj()).build());
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jesterj.ingest.processors;
+
+/**
+ * Tunes the number of documents per batch toward a target send latency and a target request size. Each completed
+ * send feeds back its duration and its estimated size in bytes. Send latency is modeled as a fixed per-request
+ * overhead plus a cost per document, fitted by a smoothed linear regression over recent sends, so that small
+ * partial batches sent by the timer don't look expensive per document. Until the observed batch sizes vary enough
+ * to separate the two, the whole latency is attributed to the documents. The batch size that would meet both
+ * targets at those costs is then approached half a step at a time, always staying within the configured bounds.
+ * A failed send halves the batch size, since large requests are a common cause of timeouts and rejections.
+ * <p>
+ * All methods are synchronized; they are called once per batch, so contention is negligible.
+ */
+class AdaptiveBatchSizer {
+  // weight given to the newest observation when smoothing
+  private static final double ALPHA = 0.3;
+  // batch sizes must vary by at least this fraction of their mean before the overhead is estimated separately
+  private static final double MIN_VARIATION = 0.05;
+
+  private final int minBatchSize;
+  private final int maxBatchSize;
+  private final double targetLatencyMs;
+  private final long targetBytes;
+
+  private volatile int batchSize;
+  private double bytesPerDoc = -1;
+
+  // exponentially weighted sums of batch size (x) and latency in ms (y) for the regression
+  private double weight;
+  private double sumX;
+  private double sumY;
+  private double sumXX;
+  private double sumXY;
+
+  AdaptiveBatchSizer(int initialBatchSize, int minBatchSize, int maxBatchSize, int targetLatencyMs, long targetBytes) {
+    if (minBatchSize < 1 || maxBatchSize < minBatchSize) {
+      throw new IllegalArgumentException("Batch size bounds must satisfy 1 <= min <= max, got min=" +
+          minBatchSize + " max=" + maxBatchSize);
+    }
+    if (targetLatencyMs < 1 || targetBytes < 1) {
+      throw new IllegalArgumentException("Target latency and target bytes must be positive");
+    }
+    this.minBatchSize = minBatchSize;
+    this.maxBatchSize = maxBatchSize;
+    this.targetLatencyMs = targetLatencyMs;
+    this.targetBytes = targetBytes;
+    this.batchSize = clamp(initialBatchSize);
+  }
+
+  int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Feed back the result of a successful send.
+   *
+   * @param docs  the number of documents in the batch
+   * @param bytes the estimated size of the batch
+   * @param nanos the time taken to send it
+   */
+  synchronized void recordSend(int docs, long bytes, long nanos) {
+    if (docs <= 0) {
+      return;
+    }
+    double ms = nanos / 1_000_000.0;
+    bytesPerDoc = smooth(bytesPerDoc, (double) bytes / docs);
+    double decay = 1 - ALPHA;
+    weight = decay * weight + 1;
+    sumX = decay * sumX + docs;
+    sumY = decay * sumY + ms;
+    sumXX = decay * sumXX + (double) docs * docs;
+    sumXY = decay * sumXY + docs * ms;
+
+    double meanX = sumX / weight;
+    double meanY = sumY / weight;
+    double varX = sumXX / weight - meanX * meanX;
+    double msPerDoc = meanY / meanX;
+    double overheadMs = 0;
+    if (varX > MIN_VARIATION * MIN_VARIATION * meanX * meanX) {
+      double slope = (sumXY / weight - meanX * meanY) / varX;
+      double intercept = meanY - slope * meanX;
+      if (slope > 0 && intercept > 0) {
+        msPerDoc = slope;
+        overheadMs = intercept;
+      }
+    }
+
+    double byLatency = msPerDoc > 0 ? (targetLatencyMs - overheadMs) / msPerDoc : maxBatchSize;
+    double byBytes = bytesPerDoc > 0 ? targetBytes / bytesPerDoc : maxBatchSize;
+    double desired = Math.min(byLatency, byBytes);
+    int current = batchSize;
+    batchSize = clamp(Math.round(current + (desired - current) / 2));
+  }
+
+  synchronized void recordFailure() {
+    batchSize = clamp(batchSize / 2);
+  }
+
+  private static double smooth(double previous, double observed) {
+    return previous < 0 ? observed : previous + ALPHA * (observed - previous);
+  }
+
+  private int clamp(long size) {
+    return (int) Math.max(minBatchSize, Math.min(maxBatchSize, size));
+  }
+}
@@ -19,49 +19,83 @@ package org.jesterj.ingest.processors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.ThreadContext;
+import org.jesterj.ingest.logging.JesterJAppender;
+import org.jesterj.ingest.model.ContentSource;
 import org.jesterj.ingest.model.Document;
 import org.jesterj.ingest.model.DocumentProcessor;
 import org.jesterj.ingest.model.Status;
+import org.jesterj.ingest.model.exception.PersistenceException;
 import org.jesterj.ingest.model.impl.NamedBuilder;
 import org.jesterj.ingest.utils.SynchronizedLinkedBimap;
 import org.jetbrains.annotations.NotNull;
 
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 
-public abstract class BatchProcessor<T> implements DocumentProcessor {
+public abstract class BatchProcessor<T> implements DocumentProcessor, BatchProcessorMBean {
   private static final Logger log = LogManager.getLogger();
   protected AtomicLong docsReceived = new AtomicLong(0);
   protected AtomicLong docsSucceeded = new AtomicLong(0);
   protected AtomicLong docsAttempted = new AtomicLong(0);
 
   private volatile ScheduledExecutorService sender;
+  private volatile ExecutorService sendPool;
   private int batchSize = 100;
   private int sendPartialBatchAfterMs = 5000;
-  private ScheduledFuture<?> scheduledSend;
+  private int maxInFlightBatches = 1;
+  // send on a pool thread even when only one batch may be in flight, so the step never waits on a send it
+  // could have queued
+  private boolean sendOffStepThread;
+  // 0 means batches are bounded by document count only
+  private long maxBatchBytes = 0;
+  // adaptive sizing is enabled when the max is non-zero, the sizer itself is created with the sender
+  private int adaptiveMinBatchSize;
+  private int adaptiveMaxBatchSize;
+  private int adaptiveTargetLatencyMs;
+  private long adaptiveTargetBytes;
+  private volatile AdaptiveBatchSizer sizer;
+  private volatile ScheduledFuture<?> scheduledSend;
 
   private final Object batchLock = new Object();
-  private final Object sendLock = new Object();
+  private final Object scheduleLock = new Object();
+  // limits the number of batches being sent at any one time (1 by default)
+  private volatile Semaphore inFlight;
+
+  private final AtomicLong batchesSent = new AtomicLong(0);
+  private volatile double lastSendMillis;
+  private volatile double averageSendMillis;
+  private volatile double averageDocBytes;
 
   private final List<BatchSendListener> sendListeners = Collections.synchronizedList(new ArrayList<>());
 
   // While order is not critical for proper functionality,
   // it is useful for writing unit tests, if this proves to
   // be a bottleneck later we can optimize it.
-  private SynchronizedLinkedBimap<Document, T> batch;
+  private PendingBatch<T> batch;
   private String nonceField = "jjNonce";
 
   {
     // lock on monitor to ensure initialization "happens before" any access.
     synchronized (batchLock) {
-      batch = new SynchronizedLinkedBimap<>();
+      batch = new PendingBatch<>();
     }
   }
 
+  /**
+   * A batch that also tracks its estimated size in bytes. Mutated only while holding batchLock, and
+   * read only after being taken by {@link #takeBatch()}.
+   */
+  private static class PendingBatch<T> extends SynchronizedLinkedBimap<Document, T> {
+    private long bytes;
+  }
+
   // these 3 are primarily for testing purposes
   public long getDocsSucceeded() {
     return docsSucceeded.get();
@@ -74,101 +108,309 @@ public abstract class BatchProcessor<T> implements DocumentProcessor {
     return docsAttempted.get();
   }
 
+  @Override
+  public int getBatchSize() {
+    AdaptiveBatchSizer s = sizer;
+    return s == null ? batchSize : s.getBatchSize();
+  }
+
+  @Override
+  public boolean isAdaptiveBatchSize() {
+    return adaptiveMaxBatchSize > 0;
+  }
+
+  @Override
+  public int getBatchesInFlight() {
+    Semaphore s = inFlight;
+    return s == null ? 0 : maxInFlightBatches - s.availablePermits();
+  }
+
+  @Override
+  public long getBatchesSent() {
+    return batchesSent.get();
+  }
+
+  @Override
+  public double getLastSendMillis() {
+    return lastSendMillis;
+  }
+
+  @Override
+  public double getAverageSendMillis() {
+    return averageSendMillis;
+  }
+
+  @Override
+  public double getAverageDocBytes() {
+    return averageDocBytes;
+  }
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   public Document[] processDocument(Document document) {
     log.debug("Document {} received by batch processor {}", document.getId(), getName());
     document.addNonce(nonceField);
     if (this.sender == null) {
       synchronized (this) {
         if (this.sender == null) {
-          sender = Executors.newScheduledThreadPool(1, new ThreadFactory() {
-            @Override
-            public Thread newThread( Runnable r) {
-              return new Thread(r) {
-                final private Map<String, String> context = ThreadContext.getContext();
-
-                @Override
-                public void run() {
-                  ThreadContext.putAll(context);
-                  super.run();
-                }
-              };
-            }
-          });
+          if (isAdaptiveBatchSize()) {
+            sizer = new AdaptiveBatchSizer(batchSize, adaptiveMinBatchSize, adaptiveMaxBatchSize,
+                adaptiveTargetLatencyMs, adaptiveTargetBytes);
+          }
+          inFlight = new Semaphore(maxInFlightBatches);
+          if (maxInFlightBatches > 1 || sendOffStepThread) {
+            sendPool = Executors.newFixedThreadPool(maxInFlightBatches, contextPreservingThreadFactory());
+          }
+          sender = Executors.newScheduledThreadPool(1, contextPreservingThreadFactory());
+          registerMBean();
           schedulePartialBatch();
           log.debug("Batch send thread started for {}", getName());
         }
       }
     }
     T searchEngineDocument = convertDoc(document);
+    long size = estimateSize(document, searchEngineDocument);
     SynchronizedLinkedBimap<Document, T> oldBatch = null;
     synchronized (batchLock) {
-      if (this.batch.size() >= batchSize) {
+      if (this.batch.size() >= getBatchSize() || wouldExceedMaxBytes(size)) {
         oldBatch = takeBatch();
       }
       docsReceived.incrementAndGet();
       log.trace("adding {}", document.getId() );
       this.batch.put(document, searchEngineDocument);
+      this.batch.bytes += size;
       document.setStatus(Status.BATCHED, "{} queued in position {} by {}. " +
           "Will send within {} milliseconds.", document.getId(), this.batch.size() - 1,getName(), sendPartialBatchAfterMs);
       document.reportDocStatus();
     }
     if (oldBatch != null) {
-      sendBatch(oldBatch);
+      if (sendPool != null) {
+        dispatchBatch(oldBatch);
+      } else {
+        sendBatch(oldBatch);
+      }
     }
     log.trace("Batch Processor ({}) processed {}", getName(), document.getId());
 
     return new Document[0];
   }
 
-  private SynchronizedLinkedBimap<Document, T> takeBatch() {
+  /**
+   * Check whether adding a document of the given size would push the current batch past the configured byte
+   * limit. A document that is larger than the limit on its own is still sent, in a batch by itself.
+   *
+   * @param size the estimated size of the document to be added
+   * @return true if the current batch should be sent before adding the document
+   */
+  private boolean wouldExceedMaxBytes(long size) {
+    return maxBatchBytes > 0 && !this.batch.isEmpty() && this.batch.bytes + size > maxBatchBytes;
+  }
+
+  private PendingBatch<T> takeBatch() {
     synchronized (batchLock) {
-      SynchronizedLinkedBimap<Document, T> oldBatch = this.batch;
-      this.batch = new SynchronizedLinkedBimap<>();
+      PendingBatch<T> oldBatch = this.batch;
+      this.batch = new PendingBatch<>();
       log.trace("took batch {} with size {}", oldBatch.toString(), oldBatch.size());
       return oldBatch;
     }
   }
 
-  private void sendBatch(SynchronizedLinkedBimap<Document, T> oldBatch) {
+  /**
+   * Estimate the number of bytes a document will contribute to a request. Used for byte limited batches,
+   * reporting and adaptive batch sizing, so this should be cheap, and need only be roughly proportional to the
+   * real cost (but see {@link Builder#limitingBatchesToBytes(long)}). The default counts the raw
+   * data and the characters in all field names and values. Subclasses whose converted form is already serialized
+   * should override this to measure that instead.
+   *
+   * @param document  the document being batched
+   * @param converted the result of {@link #convertDoc(Document)} for the document
+   * @return an estimate of the size of the document in bytes
+   */
+  protected long estimateSize(Document document, T converted) {
+    // use the content source so that lazily supplied content is not loaded just to measure it
+    ContentSource raw = document.getRawContent();
+    long size = raw == null ? 0 : raw.length();
+    for (Map.Entry<String, String> entry : document.entries()) {
+      size += entry.getKey().length();
+      String value = entry.getValue();
+      if (value != null) {
+        size += value.length();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Configure another processor to batch and send documents the same way as this one, but always on a sender
+   * thread of its own. Used to divide documents between several processors that then send independently.
+   *
+   * @param other the processor to configure, which must not have received any documents yet
+   */
+  protected void copyBatchingTo(BatchProcessor<T> other) {
+    other.batchSize = batchSize;
+    other.sendPartialBatchAfterMs = sendPartialBatchAfterMs;
+    other.maxInFlightBatches = maxInFlightBatches;
+    other.sendOffStepThread = true;
+    other.maxBatchBytes = maxBatchBytes;
+    other.adaptiveMinBatchSize = adaptiveMinBatchSize;
+    other.adaptiveMaxBatchSize = adaptiveMaxBatchSize;
+    other.adaptiveTargetLatencyMs = adaptiveTargetLatencyMs;
+    other.adaptiveTargetBytes = adaptiveTargetBytes;
+    other.nonceField = nonceField;
+    other.sendListeners.addAll(sendListeners);
+  }
+
+  private void registerMBean() {
+    String mbeanName = "org.jesterj:type=BatchProcessor,name=" + ObjectName.quote(String.valueOf(getName()));
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(mbeanName));
+    } catch (Exception e) {
+      log.info("Could not register {} MBean ({})", mbeanName, e.toString());
+    }
+  }
+
+  private void recordSend(int docs, long bytes, long nanos) {
+    double ms = nanos / 1_000_000.0;
+    long sent = batchesSent.incrementAndGet();
+    lastSendMillis = ms;
+    // running means are good enough for monitoring, the sizer keeps its own smoothed view
+    averageSendMillis = averageSendMillis + (ms - averageSendMillis) / sent;
+    averageDocBytes = averageDocBytes + ((double) bytes / docs - averageDocBytes) / sent;
+    AdaptiveBatchSizer s = sizer;
+    if (s != null) {
+      int before = s.getBatchSize();
+      s.recordSend(docs, bytes, nanos);
+      if (before != s.getBatchSize()) {
+        log.debug("{} batch size adjusted from {} to {}", getName(), before, s.getBatchSize());
+      }
+    }
+  }
+
+  @NotNull
+  private ThreadFactory contextPreservingThreadFactory() {
+    return new ThreadFactory() {
+      @Override
+      public Thread newThread( Runnable r) {
+        return new Thread(r) {
+          final private Map<String, String> context = ThreadContext.getContext();
+
+          @Override
+          public void run() {
+            ThreadContext.putAll(context);
+            super.run();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Hand a full batch off to the send pool. Blocks the calling (step) thread while the maximum number of
+   * batches are already in flight, so that a slow destination applies back-pressure to the step.
+   *
+   * @param oldBatch the batch to send
+   */
+  private void dispatchBatch(PendingBatch<T> oldBatch) {
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      log.info("Send aborted due to system shutdown");
+      return;
+    }
+    try {
+      sendPool.execute(() -> {
+        try {
+          sendAcquired(oldBatch);
+        } finally {
+          inFlight.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      inFlight.release();
+      throw e;
+    }
+  }
+
+  private void sendBatch(PendingBatch<T> oldBatch) {
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      log.info("Send aborted due to system shutdown");
+      return;
+    }
+    try {
+      sendAcquired(oldBatch);
+    } finally {
+      inFlight.release();
+    }
+  }
+
+  /**
+   * Send a batch. Callers must hold a permit from {@link #inFlight}. Each batch taken by {@link #takeBatch()} is
+   * a distinct object, so concurrent sends never share a batch, and failure handling is confined to the batch
+   * that failed.
+   *
+   * @param oldBatch the batch to send
+   */
+  private void sendAcquired(PendingBatch<T> oldBatch) {
     docsAttempted.addAndGet(oldBatch.size());
-    // there's a small window where the same BiMap could be grabbed by a timer and a full batch causing a double
-    // send. Thus, we have a lock to ensure that the oldBatch.clear() in the finally is called
-    // before the second thread tries to send the same batch. We tolerate this because it means batches can fill up
-    // while sending is in progress.
-    synchronized (sendLock) {
+    try {
+      if (oldBatch.isEmpty()) {
+        return;
+      }
+      // statuses reported so far (e.g. BATCHED) must be durable before we act externally and mark docs INDEXED
       try {
-        if (oldBatch.isEmpty()) {
-          return;
-        }
-        batchOperation(oldBatch);
-        docsSucceeded.addAndGet(oldBatch.size());
-      } catch (InterruptedException e) {
-        // no fall back if shutting down, and cassandra won't be avail so no failure marking either
-        log.info("Send aborted due to system shutdown");
-      } catch (Throwable e) {
-        Exception ex = handleAssertionErrorsForTests(e); // other Errors rethrown
-        log.info("Batch Send failed", ex);
-        // we may have a single bad document...
-        //noinspection ConstantConditions
-        if (exceptionIndicatesDocumentIssue(ex)) {
-          docsSucceeded.addAndGet(
-              individualFallbackOperation(oldBatch, ex)
-          );
-        } else {
-          // in this case the entire batch failed (i/o error etc)
-          entireBatchFailure(oldBatch, ex);
-        }
-      } finally {
-        schedulePartialBatch();
-        for (BatchSendListener sendListener : sendListeners) {
-          // inspect doc statuses to determine disposition
-          sendListener.batchSent(new ArrayList<>(oldBatch.keySet()));
+        awaitStatusDurability(oldBatch.keySet());
+      } catch (PersistenceException e) {
+        // the FTI can't account for these documents, so don't send them
+        entireBatchFailure(oldBatch, e);
+        return;
+      }
+      long start = System.nanoTime();
+      batchOperation(oldBatch);
+      recordSend(oldBatch.size(), oldBatch.bytes, System.nanoTime() - start);
+      docsSucceeded.addAndGet(oldBatch.size());
+    } catch (InterruptedException e) {
+      // no fall back if shutting down, and cassandra won't be avail so no failure marking either
+      log.info("Send aborted due to system shutdown");
+    } catch (Throwable e) {
+      Exception ex = handleAssertionErrorsForTests(e); // other Errors rethrown
+      log.info("Batch Send failed", ex);
+      // we may have a single bad document...
+      //noinspection ConstantConditions
+      if (exceptionIndicatesDocumentIssue(ex)) {
+        docsSucceeded.addAndGet(
+            individualFallbackOperation(oldBatch, ex)
+        );
+      } else {
+        // in this case the entire batch failed (i/o error etc), possibly because it was too big
+        AdaptiveBatchSizer s = sizer;
+        if (s != null) {
+          s.recordFailure();
         }
-        oldBatch.clear();
+        entireBatchFailure(oldBatch, ex);
       }
+    } finally {
+      schedulePartialBatch();
+      for (BatchSendListener sendListener : sendListeners) {
+        // inspect doc statuses to determine disposition
+        sendListener.batchSent(new ArrayList<>(oldBatch.keySet()));
+      }
+      oldBatch.clear();
     }
   }
 
+  void awaitStatusDurability(Collection<Document> docs) throws InterruptedException, PersistenceException {
+    List<String> ids = new ArrayList<>(docs.size());
+    for (Document doc : docs) {
+      ids.add(doc.getId());
+    }
+    JesterJAppender.getStatusWriter().awaitDurable(ids);
+  }
+
   private static @NotNull Exception handleAssertionErrorsForTests(Throwable e) {
     Exception ex;
     if (e instanceof AssertionError) {
@@ -184,24 +426,20 @@ public abstract class BatchProcessor<T> implements DocumentProcessor {
 
   private void schedulePartialBatch() {
     log.trace("Scheduling partial batch");
-    if (scheduledSend != null) {
-      if (!scheduledSend.cancel(false)){
-        log.warn("Double cancel in {} (this is only a problem if it starts happening more frequently then the batch timeout)",getName());
+    // With more than one batch in flight several senders may finish at once. Cancel and reschedule as a unit
+    // so that exactly one timer remains scheduled, measured from the most recent send.
+    synchronized (scheduleLock) {
+      ScheduledFuture<?> previous = scheduledSend;
+      if (previous != null && !previous.isDone()) {
+        if (!previous.cancel(false)) {
+          log.warn("Double cancel in {} (this is only a problem if it starts happening more frequently then the batch timeout)", getName());
+        }
       }
+      scheduledSend = sender.schedule(() -> {
+        log.trace("Scheduled Send Activated");
+        sendBatch(takeBatch());
+      }, sendPartialBatchAfterMs, TimeUnit.MILLISECONDS);
     }
-    // small but unimportant race condition here. If another thread passes us at this point
-    // we will cancel their task, but at worst this is a <2x inflation of send time, and
-    // that case is only likely with exceptionally broken thread scheduling, or very short
-    // settings for sendPartialBatchAfterMs. It is only possible to send later, not to
-    // fail to send (except system shut down which is what fault tolerance handles)
-    // in theory its possible to imagine repeated stall resume at exactly this point creating
-    // infinite delay, but I can think of no logic by which such a thing would happen consistently.
-    // The above double cancel log message showing up frequently would indicate this has become
-    // a possibility.
-    scheduledSend = sender.schedule(() -> {
-      log.trace("Scheduled Send Activated");
-      sendBatch(takeBatch());
-    }, sendPartialBatchAfterMs, TimeUnit.MILLISECONDS);
   }
 
   protected void entireBatchFailure(SynchronizedLinkedBimap<Document, ?> oldBatch, Exception e) {
@@ -250,6 +488,68 @@ public abstract class BatchProcessor<T> implements DocumentProcessor {
       return this;
     }
 
+    /**
+     * Allow more than one batch to be sent at the same time. Full batches are handed to a pool of this many
+     * sender threads, and the step blocks only when that many batches are already in flight. The default of 1
+     * sends one batch at a time. Note that with more than one batch in flight, batches (and thus updates to the
+     * same document in different batches) may complete out of order.
+     *
+     * @param maxInFlight the maximum number of concurrent batch sends, must be at least 1
+     * @return This builder for further configuration
+     */
+    public Builder<T> withMaxInFlightBatches(int maxInFlight) {
+      if (maxInFlight < 1) {
+        throw new IllegalArgumentException("At least one batch must be allowed in flight, got " + maxInFlight);
+      }
+      getObj().maxInFlightBatches = maxInFlight;
+      return this;
+    }
+
+    /**
+     * Let the batch size float between the supplied bounds, tuned after each send toward a target send latency
+     * and request size. The value supplied to {@link #sendingBatchesOf(int)} is used as the starting size. The
+     * size currently in use is visible via the <code>BatchSize</code> attribute of this processor's MBean.
+     *
+     * @param minBatchSize    the smallest batch size to use
+     * @param maxBatchSize    the largest batch size to use
+     * @param targetLatencyMs the desired duration of a single batch send
+     * @param targetBytes     the desired estimated size of a single batch (see
+     *                        {@link BatchProcessor#estimateSize(Document, Object)})
+     * @return This builder for further configuration
+     */
+    public Builder<T> adaptingBatchSize(int minBatchSize, int maxBatchSize, int targetLatencyMs, long targetBytes) {
+      if (minBatchSize < 1 || maxBatchSize < minBatchSize) {
+        throw new IllegalArgumentException("Batch size bounds must satisfy 1 <= min <= max, got min=" +
+            minBatchSize + " max=" + maxBatchSize);
+      }
+      if (targetLatencyMs < 1 || targetBytes < 1) {
+        throw new IllegalArgumentException("Target latency and target bytes must be positive");
+      }
+      getObj().adaptiveMinBatchSize = minBatchSize;
+      getObj().adaptiveMaxBatchSize = maxBatchSize;
+      getObj().adaptiveTargetLatencyMs = targetLatencyMs;
+      getObj().adaptiveTargetBytes = targetBytes;
+      return this;
+    }
+
+    /**
+     * Send a batch early if adding the next document would make its estimated size exceed this many bytes. This
+     * bounds both request size and the memory held by pending batches when documents vary greatly in size. The
+     * count limit set by {@link #sendingBatchesOf(int)} still applies; whichever limit is reached first triggers
+     * the send. Sizes are estimates (see {@link BatchProcessor#estimateSize(Document, Object)}), so leave some
+     * headroom below any hard limit enforced by the destination.
+     *
+     * @param maxBytes the maximum estimated size of a batch, must be positive
+     * @return This builder for further configuration
+     */
+    public Builder<T> limitingBatchesToBytes(long maxBytes) {
+      if (maxBytes < 1) {
+        throw new IllegalArgumentException("Maximum batch bytes must be positive, got " + maxBytes);
+      }
+      getObj().maxBatchBytes = maxBytes;
+      return this;
+    }
+
     public Builder<T> storingNonceIn(String field) {
       getObj().nonceField = field;
       return this;
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jesterj.ingest.processors;
+
+/**
+ * JMX view of a batch processor's sending behavior. Registered as
+ * <code>org.jesterj:type=BatchProcessor,name=&lt;processor name&gt;</code> once the processor sees its first
+ * document.
+ */
+public interface BatchProcessorMBean {
+
+  String getName();
+
+  /**
+   * @return the number of documents that will currently trigger a send. This only changes over time when
+   * adaptive sizing is enabled.
+   */
+  int getBatchSize();
+
+  boolean isAdaptiveBatchSize();
+
+  int getBatchesInFlight();
+
+  long getDocsReceived();
+
+  long getDocsAttempted();
+
+  long getDocsSucceeded();
+
+  long getBatchesSent();
+
+  double getLastSendMillis();
+
+  double getAverageSendMillis();
+
+  double getAverageDocBytes();
+}
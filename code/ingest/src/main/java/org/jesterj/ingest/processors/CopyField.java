@@ -63,6 +63,11 @@ public class CopyField implements DocumentProcessor {
     return retainOriginal;
   }
 
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public String getName() {
     return name;
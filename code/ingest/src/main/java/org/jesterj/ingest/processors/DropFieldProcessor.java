@@ -37,6 +37,11 @@ public class DropFieldProcessor implements DocumentProcessor {
     return new Document[]{document};
   }
 
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public String getName() {
     return this.name;
@@ -16,15 +16,24 @@
 
 package org.jesterj.ingest.processors;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.context.Context;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.parser.ParseException;
 import org.jesterj.ingest.model.Document;
 import org.jesterj.ingest.model.DocumentProcessor;
 import org.jesterj.ingest.model.impl.NamedBuilder;
 
+import java.io.StringReader;
 import java.io.StringWriter;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interpret the value of a field as a velocity template using the document as context. If the field has
@@ -45,9 +54,27 @@ import java.util.List;
  */
 public class FieldTemplateProcessor implements DocumentProcessor {
 
+  private static final Logger log = LogManager.getLogger();
+
   private String name;
   private String templateField;
-  private final VelocityEngine engine = new VelocityEngine();
+  private int maxCachedTemplates = 256;
+  private final RuntimeInstance velocity = new RuntimeInstance();
+
+  // Parsed templates keyed by template text. Templates come from document fields, so there may be an unbounded
+  // variety of them, hence LRU eviction. Merging a parsed template is thread safe.
+  private final Map<String, Template> templates = Collections.synchronizedMap(
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+          return size() > maxCachedTemplates;
+        }
+      });
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
 
   @Override
   public String getName() {
@@ -56,17 +83,76 @@ public class FieldTemplateProcessor implements DocumentProcessor {
 
   @Override
   public Document[] processDocument(Document document) {
-    VelocityContext velocityContext = new VelocityContext(new HashMap<>(document.asMap()));
+    // #set() in a template writes to the outer context, leaving the document untouched
+    VelocityContext velocityContext = new VelocityContext(new DocumentContext(document.asMap()));
     List<String> values = document.removeAll(templateField);
 
     for (String value : values) {
       StringWriter writer = new StringWriter();
-      engine.evaluate(velocityContext, writer, document.getId(), value);
+      try {
+        template(value).merge(velocityContext, writer);
+      } catch (ParseException e) {
+        throw new RuntimeException("Invalid template in " + templateField + " of " + document.getId(), e);
+      }
       document.put(templateField, writer.toString());
     }
     return new Document[]{document};
   }
 
+  private Template template(String text) throws ParseException {
+    Template template = templates.get(text);
+    if (template == null) {
+      // parsing outside the lock, so a race may parse the same text twice, which is harmless
+      template = new Template();
+      template.setName(name + ":" + templateField);
+      template.setRuntimeServices(velocity);
+      template.setData(velocity.parse(new StringReader(text), template));
+      template.initDocument();
+      templates.put(text, template);
+      log.trace("Cached template, {} now cached", templates::size);
+    }
+    return template;
+  }
+
+  /**
+   * A read only velocity context that reads field values directly from a document rather than a copy. It is
+   * always wrapped in a VelocityContext, which holds anything a template sets. Velocity also asks the wrapped
+   * context to remove variables (e.g. the loop variable of #foreach, or #set to null), so writes are ignored
+   * rather than rejected.
+   */
+  static class DocumentContext implements Context {
+    private final Map<String, Collection<String>> fields;
+
+    DocumentContext(Map<String, Collection<String>> fields) {
+      this.fields = fields;
+    }
+
+    @Override
+    public Object get(String key) {
+      return fields.get(key);
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+      return fields.containsKey(key);
+    }
+
+    @Override
+    public String[] getKeys() {
+      return fields.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+      return null;
+    }
+
+    @Override
+    public Object remove(String key) {
+      return null;
+    }
+  }
+
   public void setName(String name) {
     this.name = name;
   }
@@ -95,6 +181,21 @@ public class FieldTemplateProcessor implements DocumentProcessor {
       return this;
     }
 
+    /**
+     * The number of distinct templates to keep parsed and ready for reuse. When more distinct templates are
+     * seen, the least recently used are discarded and must be parsed again if seen later. Defaults to 256.
+     *
+     * @param max the maximum number of parsed templates to keep
+     * @return this builder for further configuration
+     */
+    public FieldTemplateProcessor.Builder cachingTemplates(int max) {
+      if (max < 1) {
+        throw new IllegalArgumentException("Must cache at least one template, got " + max);
+      }
+      getObj().maxCachedTemplates = max;
+      return this;
+    }
+
     private void setObj(FieldTemplateProcessor obj) {
       this.obj = obj;
     }
@@ -3,9 +3,17 @@ package org.jesterj.ingest.processors;
 import java.net.http.HttpResponse;
 
 public class OpenSearchBatchFailureException extends Exception {
-  HttpResponse<String> response;
-  public OpenSearchBatchFailureException(String s, HttpResponse<String> resp) {
+  HttpResponse<?> response;
+  // null if the response could not be read
+  SendToOpenSearchProcessor.BulkResponse bulkResponse;
+
+  public OpenSearchBatchFailureException(String s, HttpResponse<?> resp) {
+    this(s, resp, null);
+  }
+
+  OpenSearchBatchFailureException(String s, HttpResponse<?> resp, SendToOpenSearchProcessor.BulkResponse bulk) {
     super(s);
     response = resp;
+    bulkResponse = bulk;
   }
 }
@@ -113,6 +113,11 @@ public class PreAnalyzeFields implements DocumentProcessor {
     return new Document[]{document};
   }
 
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public String getName() {
     return name;
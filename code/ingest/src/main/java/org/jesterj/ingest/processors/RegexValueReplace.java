@@ -52,6 +52,11 @@ public class RegexValueReplace implements DocumentProcessor {
     return new Document[]{document};
   }
 
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public String getName() {
     return name;
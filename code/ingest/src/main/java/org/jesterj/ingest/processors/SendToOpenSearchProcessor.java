@@ -1,9 +1,11 @@
 package org.jesterj.ingest.processors;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.mizosoft.methanol.WritableBodyPublisher;
 import com.google.common.annotations.VisibleForTesting;
 import nl.altindag.ssl.SSLFactory;
@@ -21,7 +23,11 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
@@ -35,10 +41,17 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 public class SendToOpenSearchProcessor extends BatchProcessor<String> {
   private static final Logger log = LogManager.getLogger();
+  private static final int GZIP_BUFFER_SIZE = 8192;
+  private static final long MAPPING_RETRY_NANOS =
+      TimeUnit.MILLISECONDS.toNanos(Long.getLong("org.jesterj.opensearch.mapping_retry_ms", 30000));
+  private static final Set<String> BULK_OPERATIONS = Set.of("create", "index", "delete");
+  private static final TypeReference<Map<String, Object>> ITEM_TYPE = new TypeReference<>() {
+  };
   private URL opensearchUrl;
   private String indexName;
   private HttpClient client;
@@ -46,6 +59,13 @@ public class SendToOpenSearchProcessor extends BatchProcessor<String> {
   private final ObjectMapper mapper = new ObjectMapper();
   private String username;
   private String password;
+  private boolean compressingRequests;
+  private volatile Map<String, FieldType> fieldTypes = new HashMap<>();
+  private boolean typingFromMapping;
+  private volatile boolean mappingRead;
+  // visible for testing
+  long mappingRetryNanos = MAPPING_RETRY_NANOS;
+  private volatile long nextMappingReadNanos = System.nanoTime();
 
   @VisibleForTesting
   HttpClient getClient() {
@@ -59,8 +79,12 @@ public class SendToOpenSearchProcessor extends BatchProcessor<String> {
 
   @Override
   protected void perDocFailLogging(Exception e, Document doc) {
-    doc.setStatus(Status.ERROR, "Error response from Opensearch! Status=" +
-        getResponse((OpenSearchBatchFailureException) e).statusCode());
+    if (e instanceof OpenSearchBatchFailureException) {
+      doc.setStatus(Status.ERROR, "Error response from Opensearch! Status=" +
+          getResponse((OpenSearchBatchFailureException) e).statusCode());
+    } else {
+      doc.setStatus(Status.ERROR, "{} could not be sent by {} because of {}", doc.getId(), getName(), e.getMessage());
+    }
     doc.reportDocStatus();
   }
 
@@ -70,99 +94,240 @@ public class SendToOpenSearchProcessor extends BatchProcessor<String> {
     return true;
   }
 
+  /**
+   * Convert the document to the json for the bulk request. Fields with one value become json values, fields with
+   * several become json arrays. Values are strings unless the field has been given a type by
+   * {@link Builder#typingField(String, FieldType)} or by the index mapping (see
+   * {@link Builder#typingFieldsFromMapping()}).
+   *
+   * @param document the document to convert
+   * @return a json object
+   */
   @Override
   protected String convertDoc(Document document) {
     log.debug("Converting {}", document.getId());
-    ObjectNode root = getMapper().createObjectNode();
+    StringWriter json = new StringWriter();
+    try (JsonGenerator gen = getMapper().getFactory().createGenerator(json)) {
+      writeDocument(gen, document, getFieldTypes());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not convert " + document.getId(), e);
+    }
+    return json.toString();
+  }
+
+  private static void writeDocument(JsonGenerator gen, Document document, Map<String, FieldType> types)
+      throws IOException {
+    gen.writeStartObject();
     for (String key : document.keySet()) {
-      List<String> value = document.get(key);
-      root.put(key, Arrays.toString(value.toArray(new String[]{})));
+      List<String> values = document.get(key);
+      FieldType type = types.getOrDefault(key, FieldType.STRING);
+      gen.writeFieldName(key);
+      if (values.size() == 1) {
+        writeValue(gen, type, values.get(0));
+      } else {
+        gen.writeStartArray();
+        for (String value : values) {
+          writeValue(gen, type, value);
+        }
+        gen.writeEndArray();
+      }
+    }
+    gen.writeEndObject();
+  }
+
+  private static void writeValue(JsonGenerator gen, FieldType type, String value) throws IOException {
+    if (value == null) {
+      gen.writeNull();
+    } else {
+      type.write(gen, value);
+    }
+  }
+
+  private Map<String, FieldType> getFieldTypes() {
+    if (typingFromMapping && !mappingRead && System.nanoTime() - nextMappingReadNanos >= 0) {
+      synchronized (this) {
+        if (!mappingRead && System.nanoTime() - nextMappingReadNanos >= 0) {
+          Map<String, FieldType> mappingTypes = readMappingTypes();
+          if (mappingTypes == null) {
+            // try again with a later document, without holding up every document while the index is unavailable
+            nextMappingReadNanos = System.nanoTime() + mappingRetryNanos;
+          } else {
+            // types given explicitly take precedence over the mapping
+            Map<String, FieldType> types = new HashMap<>(mappingTypes);
+            types.putAll(fieldTypes);
+            fieldTypes = types;
+            mappingRead = true;
+          }
+        }
+      }
+    }
+    return fieldTypes;
+  }
+
+  // null if the mapping could not be read
+  private Map<String, FieldType> readMappingTypes() {
+    var request = HttpRequest.newBuilder()
+        .uri(URI.create(opensearchUrl.toString() + indexName + "/_mapping"))
+        .header("Authorization", basicAuth())
+        .GET()
+        .build();
+    try {
+      HttpResponse<InputStream> resp = getClient().send(request, HttpResponse.BodyHandlers.ofInputStream());
+      try (InputStream in = resp.body()) {
+        if (resp.statusCode() == 200) {
+          Map<String, FieldType> types = typesFromMapping(getMapper().readTree(in));
+          log.info("{} typing {} fields from the mapping of {}", getName(), types.size(), indexName);
+          return types;
+        }
+        log.warn("{} could not read the mapping of {} (status {}), untyped fields will be sent as strings " +
+            "until it can", getName(), indexName, resp.statusCode());
+      }
+    } catch (IOException e) {
+      log.warn("{} could not read the mapping of {}, untyped fields will be sent as strings until it can: {}",
+          getName(), indexName, e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return null;
+  }
+
+  /**
+   * Find the numeric, date and boolean fields in the response to a get mapping request. Fields of objects are
+   * named by their path, e.g. <code>author.born</code>.
+   *
+   * @param mappingResponse the response, keyed by index name (more than one if the index is an alias)
+   * @return the types of the fields that are not strings
+   */
+  @VisibleForTesting
+  static Map<String, FieldType> typesFromMapping(JsonNode mappingResponse) {
+    Map<String, FieldType> types = new HashMap<>();
+    for (JsonNode index : mappingResponse) {
+      collectTypes("", index.path("mappings").path("properties"), types);
     }
-    return root.toString();
+    return types;
+  }
+
+  private static void collectTypes(String prefix, JsonNode properties, Map<String, FieldType> types) {
+    properties.fields().forEachRemaining(field -> {
+      String name = prefix + field.getKey();
+      JsonNode mapping = field.getValue();
+      if (mapping.has("properties")) {
+        collectTypes(name + ".", mapping.get("properties"), types);
+      }
+      FieldType type = FieldType.forMappingType(mapping.path("type").asText());
+      if (type != FieldType.STRING) {
+        types.put(name, type);
+      }
+    });
+  }
+
+  private String basicAuth() {
+    return "Basic " +
+        Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.US_ASCII));
+  }
+
+  @Override
+  protected long estimateSize(Document document, String converted) {
+    // the converted form is the json we will send
+    return converted.length();
   }
 
   @Override
   protected void batchOperation(SynchronizedLinkedBimap<Document, String> batch) throws Exception {
     var publisher = WritableBodyPublisher.create();
 
-    var request = HttpRequest.newBuilder()
+    var requestBuilder = HttpRequest.newBuilder()
         .uri(URI.create(opensearchUrl.toString() + "_bulk"))
         .header("Content-Type", "application/json")
-        .header("Authorization", "Basic " +
-            Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.US_ASCII)))
-        .POST(publisher)
-        .build();
+        .header("Authorization", basicAuth());
+    if (compressingRequests) {
+      requestBuilder.header("Content-Encoding", "gzip");
+    }
+    var request = requestBuilder.POST(publisher).build();
 
     log.trace(request);
     log.trace(request.headers());
 
-    // If I've done this right, the batch will be streamed, and we won't be building a huge string
-    // of json to send all at once.
-    var responseAsync = getClient().sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    // The batch is streamed, so we won't be building a huge string of json to send all at once, and the
+    // response is parsed as it arrives rather than being read into a string first.
+    var responseAsync = getClient().sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
 
-    try (var writer = new PrintWriter(publisher.outputStream())) {
+    OutputStream body = publisher.outputStream();
+    if (compressingRequests) {
+      body = new GZIPOutputStream(body, GZIP_BUFFER_SIZE);
+    }
+    // one generator writes every envelope in the batch, bulk format wants one json object per line
+    try (JsonGenerator gen = getMapper().getFactory().createGenerator(body)) {
+      gen.setRootValueSeparator(null);
       for (Map.Entry<Document, String> entry : batch.entrySet()) {
-        ObjectNode crazyBulk2LineFormat = getMapper().createObjectNode();
         Document doc = entry.getKey();
-        crazyBulk2LineFormat.put("_id", doc.getId()); // id for document, not in document json?
-        crazyBulk2LineFormat.put("_index", indexName); // redundant specification of index??
-        ObjectNode crazyBulkEnvelope = getMapper().createObjectNode();
-
+        String action;
         switch (doc.getOperation()) {
           case UPDATE:
             doc.setStatus(Status.INDEXING, "{} is being updated in opensearch in a batch of {} documents",
                 doc.getId(), batch.size());
-            crazyBulkEnvelope.set("index", crazyBulk2LineFormat);
-            writer.println(crazyBulkEnvelope);
-            writer.println(entry.getValue()); // data next to envelope, rather than within it?
-            log.trace(crazyBulkEnvelope.toString());
-            log.trace(entry.getValue());
+            action = "index";
             break;
           case DELETE:
             doc.setStatus(Status.INDEXING, "{} is being deleted from opensearch in a batch of {} documents",
                 doc.getId(), batch.size());
-            crazyBulkEnvelope.set("delete", crazyBulk2LineFormat);
-            writer.println(crazyBulkEnvelope);
-            log.trace(crazyBulkEnvelope.toString());
-            // no doc to send
+            action = "delete";
             break;
           case NEW:
             doc.setStatus(Status.INDEXING, "{} is being created in opensearch in a batch of {} documents",
                 doc.getId(), batch.size());
-            crazyBulkEnvelope.set("create", crazyBulk2LineFormat);
-            writer.println(crazyBulkEnvelope);
-            writer.println(entry.getValue()); // data next to envelope, rather than within it?
-            log.trace(crazyBulkEnvelope.toString());
-            log.trace(entry.getValue());
+            action = "create";
+            break;
+          default:
+            throw new IllegalStateException("Unknown operation " + doc.getOperation());
+        }
+        gen.writeStartObject();
+        gen.writeObjectFieldStart(action);
+        gen.writeStringField("_id", doc.getId()); // id for document, not in document json?
+        gen.writeStringField("_index", indexName); // redundant specification of index??
+        gen.writeEndObject();
+        gen.writeEndObject();
+        gen.writeRaw('\n');
+        log.trace("{} {}", action, doc.getId());
+        if (!"delete".equals(action)) {
+          // data next to envelope, rather than within it? (no doc to send for deletes)
+          gen.writeRaw(entry.getValue());
+          gen.writeRaw('\n');
+          log.trace(entry.getValue());
         }
         doc.reportDocStatus();
       }
     }
 
     // should block till batch processed on server side and response received
-    HttpResponse<String> resp = responseAsync.get();
-    Map<String, Object> respJson = null;
+    HttpResponse<InputStream> resp = responseAsync.get();
+    BulkResponse bulk = null;
     int statusCode = resp.statusCode();
-    if (statusCode != 200 || (respJson = responseAsMap(resp)) == null || respContainsErrors(respJson)) {
-      log.trace("response Uri:{}", resp::uri);
-      log.debug("response Status:{}", statusCode);
-      log.trace("response headers:{}", resp::headers);
-      log.trace("response body:\n{}", resp::body);
-      log.trace(respJson);
-      throw new OpenSearchBatchFailureException(
-          "Opensearch batch contains failures. Status=" + statusCode, resp);
-    } else {
-      // with opensearch single document failures do not fail the whole batch
-      for (Document document : batch.keySet()) {
-        document.setStatus(Status.INDEXED, "{} Successfully indexed.", document.getId());
-        document.reportDocStatus();
+    try (InputStream in = resp.body()) {
+      if (statusCode != 200 || (bulk = readBulkResponse(in)) == null || bulk.errors) {
+        log.trace("response Uri:{}", resp::uri);
+        log.debug("response Status:{}", statusCode);
+        log.trace("response headers:{}", resp::headers);
+        if (statusCode != 200) {
+          log.trace("response body:\n{}", () -> bodyText(in));
+        }
+        throw new OpenSearchBatchFailureException(
+            "Opensearch batch contains failures. Status=" + statusCode, resp, bulk);
       }
     }
+    // with opensearch single document failures do not fail the whole batch
+    for (Document document : batch.keySet()) {
+      document.setStatus(Status.INDEXED, "{} Successfully indexed.", document.getId());
+      document.reportDocStatus();
+    }
   }
 
-  private static boolean respContainsErrors(Map<String, Object> respJson) {
-    Object errors = respJson.get("errors");
-    return "true".equals(String.valueOf(errors));
+  private static String bodyText(InputStream in) {
+    try {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      return "(unreadable: " + e.getMessage() + ")";
+    }
   }
 
   @Override
@@ -185,14 +350,13 @@ public class SendToOpenSearchProcessor extends BatchProcessor<String> {
 
     int statusCode = ex.response.statusCode();
     if (statusCode == 200) {
-      Map<String, Object> respMap = responseAsMap(ex.response);
-      if (respMap != null) {
+      BulkResponse bulk = ex.bulkResponse;
+      if (bulk != null) {
         Map<String, Map.Entry<Document, String>> lookupDoc = new HashMap<>();
         for (Map.Entry<Document, String> item : batch.entrySet()) {
           lookupDoc.put(item.getKey().getId(), item);
         }
-        List<Map<String, Object>> items = extractItemList(respMap);
-        for (Map<String, Object> item : items) {
+        for (Map<String, Object> item : bulk.items) {
           // With opensearch they don't have batch all or nothing functionality. We just have to hope that
           // none of the operations in the batch were on the same document (i.e. no delete, create sequence
           // on the same id where an error could cause re-ordering) The inability to guard against
@@ -217,33 +381,84 @@ public class SendToOpenSearchProcessor extends BatchProcessor<String> {
   }
 
   /**
-   * Extract a list of items from the relatively inconvenient response format. This is isolated to it's own method
-   * in hopes of insulating any changes, especially in the event that this format diverges in Opensearch vs Elastic.
+   * Read the response to a bulk request as it arrives. Parsing stops as soon as the response reports that there
+   * were no errors, otherwise the result of each operation is collected, one at a time. Whatever is not parsed
+   * is still read, so that the connection can be reused. The result of an operation is listed under its type
+   * (create, index or delete) but we don't care what type of operation it was. This is isolated to its own
+   * method in hopes of insulating any changes, especially in the event that this format diverges in Opensearch
+   * vs Elastic.
    *
-   * @param respMap The {@code Map<String,Object>} form of Elastic's json response.
-   * @return a list of map objects
+   * @param body the json response
+   * @return the errors flag and the results of any operations read, or null if the response was not a json object
    */
-  @SuppressWarnings("unchecked")
   @VisibleForTesting
-  List<Map<String, Object>> extractItemList(Map<String, Object> respMap) {
-    List<Map<String, Object>> items = (List<Map<String, Object>>) respMap.get("items");
-    items = items.stream()
-        .map(i -> {
-          // try the several possibilities
-          Map<String, Object> create = (Map<String, Object>) i.get("create");
-          Map<String, Object> index = (Map<String, Object>) i.get("index");
-          Map<String, Object> delete = (Map<String, Object>) i.get("delete");
-          // return whichever hits as an item in the list. We won't care what
-          // type of operation it was anyway.
-          Map<String, Object> listItem = create != null ? create : delete != null ? delete : index;
-          if (listItem == null) {
-            throw new IllegalArgumentException("Unknown element type, expected one of 'create','index'," +
-                "'delete'! available keys were " + i.keySet());
-          }
-          return listItem;
-        })
-        .collect(Collectors.toList());
-    return items;
+  BulkResponse readBulkResponse(InputStream body) {
+    try (JsonParser parser = getMapper().getFactory().createParser(body)) {
+      BulkResponse bulk = parseBulkResponse(parser);
+      drain(body);
+      return bulk;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private BulkResponse parseBulkResponse(JsonParser parser) throws IOException {
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      return null;
+    }
+    BulkResponse bulk = new BulkResponse();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if ("errors".equals(field)) {
+        bulk.errors = value == JsonToken.VALUE_TRUE;
+        if (!bulk.errors) {
+          // nothing else we need to know
+          return bulk;
+        }
+      } else if ("items".equals(field) && value == JsonToken.START_ARRAY) {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+          bulk.items.add(readItem(parser));
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return bulk;
+  }
+
+  private static void drain(InputStream body) {
+    try {
+      body.transferTo(OutputStream.nullOutputStream());
+    } catch (IOException e) {
+      // the response was already understood, the connection just won't be reused
+      log.debug("Could not read the rest of a bulk response: {}", e.getMessage());
+    }
+  }
+
+  private Map<String, Object> readItem(JsonParser parser) throws IOException {
+    Map<String, Object> item = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String operation = parser.getCurrentName();
+      if (!BULK_OPERATIONS.contains(operation)) {
+        throw new IllegalArgumentException("Unknown element type, expected one of 'create','index'," +
+            "'delete'! found " + operation);
+      }
+      parser.nextToken();
+      item = parser.readValueAs(ITEM_TYPE);
+    }
+    if (item == null) {
+      throw new IllegalArgumentException("Empty item in bulk response!");
+    }
+    return item;
+  }
+
+  /**
+   * The parts of a bulk response we care about.
+   */
+  static class BulkResponse {
+    boolean errors;
+    final List<Map<String, Object>> items = new ArrayList<>();
   }
 
   @VisibleForTesting
@@ -260,30 +475,17 @@ public class SendToOpenSearchProcessor extends BatchProcessor<String> {
   void fallbackHttpNotOk(SynchronizedLinkedBimap<Document, String> batch, int statusCode, OpenSearchBatchFailureException ex) {
     log.debug("Error response from opensearch (status {})", statusCode);
     log.trace("response headers:{}", getResponse(ex)::headers);
-    log.trace("response body:\n{}", getResponse(ex)::body);
     for (Document document : batch.keySet()) {
       perDocFailLogging(ex, document);
     }
   }
 
-  @VisibleForTesting
-  Map<String, Object> responseAsMap(HttpResponse<String> response) {
-    try {
-      String body = response.body();
-      TypeReference<Map<String, Object>> valueTypeRef = new TypeReference<>() {
-      };
-      return getMapper().readValue(body, valueTypeRef);
-    } catch (JsonProcessingException e) {
-      return null;
-    }
-  }
-
   @VisibleForTesting
   ObjectMapper getMapper() {
     return mapper;
   }
 
-  private static HttpResponse<String> getResponse(OpenSearchBatchFailureException ex) {
+  private static HttpResponse<?> getResponse(OpenSearchBatchFailureException ex) {
     return ex.response;
   }
 
@@ -292,6 +494,79 @@ public class SendToOpenSearchProcessor extends BatchProcessor<String> {
     return name;
   }
 
+  /**
+   * How the values of a field are written to json. Values that cannot be written as the field's type are
+   * written as strings, leaving it to OpenSearch to coerce or reject them.
+   */
+  public enum FieldType {
+    STRING {
+      @Override
+      void write(JsonGenerator gen, String value) throws IOException {
+        gen.writeString(value);
+      }
+    },
+    NUMBER {
+      @Override
+      void write(JsonGenerator gen, String value) throws IOException {
+        String trimmed = value.trim();
+        try {
+          gen.writeNumber(Long.parseLong(trimmed));
+        } catch (NumberFormatException notLong) {
+          try {
+            gen.writeNumber(new BigDecimal(trimmed));
+          } catch (NumberFormatException notNumber) {
+            gen.writeString(value);
+          }
+        }
+      }
+    },
+    /**
+     * Dates are sent as strings for OpenSearch to parse with the field's format, or as epoch milliseconds if the
+     * value is a whole number.
+     */
+    DATE {
+      @Override
+      void write(JsonGenerator gen, String value) throws IOException {
+        try {
+          gen.writeNumber(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+          gen.writeString(value);
+        }
+      }
+    },
+    BOOLEAN {
+      @Override
+      void write(JsonGenerator gen, String value) throws IOException {
+        String trimmed = value.trim();
+        if ("true".equalsIgnoreCase(trimmed) || "false".equalsIgnoreCase(trimmed)) {
+          gen.writeBoolean(Boolean.parseBoolean(trimmed));
+        } else {
+          gen.writeString(value);
+        }
+      }
+    };
+
+    private static final Set<String> NUMERIC_MAPPINGS = Set.of("long", "integer", "short", "byte", "double",
+        "float", "half_float", "scaled_float", "unsigned_long");
+
+    abstract void write(JsonGenerator gen, String value) throws IOException;
+
+    static FieldType forMappingType(String mappingType) {
+      if (NUMERIC_MAPPINGS.contains(mappingType)) {
+        return NUMBER;
+      }
+      switch (mappingType) {
+        case "date":
+        case "date_nanos":
+          return DATE;
+        case "boolean":
+          return BOOLEAN;
+        default:
+          return STRING;
+      }
+    }
+  }
+
   @SuppressWarnings("unused")
   public static class Builder extends BatchProcessor.Builder<String> {
 
@@ -319,6 +594,21 @@ public class SendToOpenSearchProcessor extends BatchProcessor<String> {
       return this;
     }
 
+    public Builder withMaxInFlightBatches(int maxInFlight) {
+      super.withMaxInFlightBatches(maxInFlight);
+      return this;
+    }
+
+    public Builder limitingBatchesToBytes(long maxBytes) {
+      super.limitingBatchesToBytes(maxBytes);
+      return this;
+    }
+
+    public Builder adaptingBatchSize(int minBatchSize, int maxBatchSize, int targetLatencyMs, long targetBytes) {
+      super.adaptingBatchSize(minBatchSize, maxBatchSize, targetLatencyMs, targetBytes);
+      return this;
+    }
+
     @SuppressWarnings("UnusedReturnValue")
     public Builder openSearchAt(String url) throws MalformedURLException {
       getObj().opensearchUrl = new URL(url);
@@ -340,6 +630,44 @@ public class SendToOpenSearchProcessor extends BatchProcessor<String> {
       return this;
     }
 
+    /**
+     * Whether to gzip the body of bulk requests. Compression is off by default. Bulk requests compress well, so
+     * this may greatly reduce the bytes sent, but requires that the server accepts compressed requests
+     * (<code>http.compression</code>, on by default in OpenSearch).
+     *
+     * @param compress true to send gzipped json
+     * @return this builder for ongoing configuration
+     */
+    public Builder compressingRequests(boolean compress) {
+      getObj().compressingRequests = compress;
+      return this;
+    }
+
+    /**
+     * Send the values of a field as json of the given type rather than as strings.
+     *
+     * @param field the name of the field
+     * @param type  the type of its values
+     * @return this builder for ongoing configuration
+     */
+    public Builder typingField(String field, FieldType type) {
+      getObj().fieldTypes.put(field, type);
+      return this;
+    }
+
+    /**
+     * Send the values of numeric, date and boolean fields in the index mapping as json of that type rather
+     * than as strings. The mapping is read when the first document is converted, and types given by
+     * {@link #typingField(String, FieldType)} take precedence. If the mapping cannot be read (e.g. the index
+     * does not exist yet) only those types are used, and reading the mapping is tried again with a document
+     * converted <code>org.jesterj.opensearch.mapping_retry_ms</code> (30 seconds) or more later.
+     *
+     * @return this builder for ongoing configuration
+     */
+    public Builder typingFieldsFromMapping() {
+      getObj().typingFromMapping = true;
+      return this;
+    }
 
     /**
      * This enables a trust on first connect (in)security model. Https connections will be trusted
@@ -46,7 +46,6 @@ public class SendToSolrCloudHttpUrlProcessor extends SendToSolrProcessor {
     return solrClient;
   }
 
-  @Override
   void setSolrClient(SolrClient solrClient) {
     this.solrClient = solrClient;
   }
@@ -98,12 +97,48 @@ public class SendToSolrCloudHttpUrlProcessor extends SendToSolrProcessor {
       return this;
     }
 
+    @Override
+    public SendToSolrCloudHttpUrlProcessor.Builder bisectingFailedBatchesTo(int depth) {
+      super.bisectingFailedBatchesTo(depth);
+      return this;
+    }
+
+    @Override
+    public SendToSolrCloudHttpUrlProcessor.Builder streamingUpdates(boolean streaming) {
+      super.streamingUpdates(streaming);
+      return this;
+    }
+
+    @Override
+    public SendToSolrCloudHttpUrlProcessor.Builder routingToShards(boolean routing) {
+      super.routingToShards(routing);
+      return this;
+    }
+
     @Override
     public SendToSolrCloudHttpUrlProcessor.Builder named(String name) {
       super.named(name);
       return this;
     }
 
+    @Override
+    public SendToSolrCloudHttpUrlProcessor.Builder withMaxInFlightBatches(int maxInFlight) {
+      super.withMaxInFlightBatches(maxInFlight);
+      return this;
+    }
+
+    @Override
+    public SendToSolrCloudHttpUrlProcessor.Builder adaptingBatchSize(int minBatchSize, int maxBatchSize, int targetLatencyMs, long targetBytes) {
+      super.adaptingBatchSize(minBatchSize, maxBatchSize, targetLatencyMs, targetBytes);
+      return this;
+    }
+
+    @Override
+    public SendToSolrCloudHttpUrlProcessor.Builder limitingBatchesToBytes(long maxBytes) {
+      super.limitingBatchesToBytes(maxBytes);
+      return this;
+    }
+
     protected SendToSolrCloudHttpUrlProcessor getObj() {
       return obj;
     }
@@ -113,6 +148,7 @@ public class SendToSolrCloudHttpUrlProcessor extends SendToSolrProcessor {
     }
 
     public SendToSolrCloudHttpUrlProcessor build() {
+      validate();
       SendToSolrCloudHttpUrlProcessor tmp = getObj();
       setObj(new SendToSolrCloudHttpUrlProcessor());
       CloudHttp2SolrClient built = new CloudSolrClient.Builder(urls).build();
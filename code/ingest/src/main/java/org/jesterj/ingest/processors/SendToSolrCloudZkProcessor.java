@@ -47,7 +47,6 @@ public class SendToSolrCloudZkProcessor extends SendToSolrProcessor {
     return solrClient;
   }
 
-  @Override
   @VisibleForTesting
   void setSolrClient(SolrClient solrClient) {
     this.solrClient = solrClient;
@@ -111,6 +110,24 @@ public class SendToSolrCloudZkProcessor extends SendToSolrProcessor {
       return this;
     }
 
+    @Override
+    public SendToSolrCloudZkProcessor.Builder bisectingFailedBatchesTo(int depth) {
+      super.bisectingFailedBatchesTo(depth);
+      return this;
+    }
+
+    @Override
+    public SendToSolrCloudZkProcessor.Builder streamingUpdates(boolean streaming) {
+      super.streamingUpdates(streaming);
+      return this;
+    }
+
+    @Override
+    public SendToSolrCloudZkProcessor.Builder routingToShards(boolean routing) {
+      super.routingToShards(routing);
+      return this;
+    }
+
     @Override
     public SendToSolrCloudZkProcessor.Builder named(String name) {
       super.named(name);
@@ -129,6 +146,24 @@ public class SendToSolrCloudZkProcessor extends SendToSolrProcessor {
       return this;
     }
 
+    @Override
+    public SendToSolrCloudZkProcessor.Builder withMaxInFlightBatches(int maxInFlight) {
+      super.withMaxInFlightBatches(maxInFlight);
+      return this;
+    }
+
+    @Override
+    public SendToSolrCloudZkProcessor.Builder adaptingBatchSize(int minBatchSize, int maxBatchSize, int targetLatencyMs, long targetBytes) {
+      super.adaptingBatchSize(minBatchSize, maxBatchSize, targetLatencyMs, targetBytes);
+      return this;
+    }
+
+    @Override
+    public SendToSolrCloudZkProcessor.Builder limitingBatchesToBytes(long maxBytes) {
+      super.limitingBatchesToBytes(maxBytes);
+      return this;
+    }
+
     protected SendToSolrCloudZkProcessor getObj() {
       return obj;
     }
@@ -138,6 +173,7 @@ public class SendToSolrCloudZkProcessor extends SendToSolrProcessor {
     }
 
     public SendToSolrCloudZkProcessor build() {
+      validate();
       SendToSolrCloudZkProcessor tmp = getObj();
       setObj(new SendToSolrCloudZkProcessor());
       CloudSolrClient built = new CloudSolrClient.Builder(this.zkList, Optional.ofNullable(chroot))
@@ -18,10 +18,16 @@ package org.jesterj.ingest.processors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
 import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Slice;
 import org.jesterj.ingest.model.Document;
 import org.jesterj.ingest.model.DocumentProcessor;
 import org.jesterj.ingest.model.Status;
@@ -29,21 +35,45 @@ import org.jesterj.ingest.utils.SynchronizedLinkedBimap;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
-public abstract class SendToSolrProcessor extends BatchProcessor<SolrInputDocument> implements DocumentProcessor {
+public abstract class SendToSolrProcessor extends BatchProcessor<SolrInputDocument>
+    implements DocumentProcessor, SendToSolrProcessorMBean {
   private static final Logger log = LogManager.getLogger();
+  private static final int DEF_MAX_BISECTION_DEPTH = Integer.getInteger("org.jesterj.solr.max_bisection_depth", 10);
+  private static final long CLUSTER_STATE_TTL_NANOS =
+      TimeUnit.MILLISECONDS.toNanos(Long.getLong("org.jesterj.solr.cluster_state_ttl_ms", 30000));
+  // documents that cannot be routed (e.g. the collection is not yet known) are sent through this lane
+  private static final String UNROUTED = "unrouted";
+  private static final int SHARD_QUEUE_SIZE = Integer.getInteger("org.jesterj.solr.shard_queue_size", 1000);
   protected String collection;
   protected String textContentField = "content";
   protected String fieldsField;
   protected Map<String, String> params;
   protected String name;
   protected Function<String, Object> idTransformer;
+  protected int maxBisectionDepth = DEF_MAX_BISECTION_DEPTH;
+  protected boolean streamingUpdates;
+  protected boolean routingToShards;
+
+  private final Map<String, ShardLane> shardLanes = new ConcurrentHashMap<>();
+  private volatile DocCollection collectionState;
+  private volatile long collectionStateNanos;
+
+  private final AtomicLong fallbackBatches = new AtomicLong();
+  private final AtomicLong fallbackRequests = new AtomicLong();
 
   private static void markIndexing(Collection<Document> documents, int size) {
     for (Document document : documents) {
@@ -52,6 +82,84 @@ public abstract class SendToSolrProcessor extends BatchProcessor<SolrInputDocume
     }
   }
 
+  /**
+   * When routing to shards, queue the document for the processor batching documents for its shard, otherwise
+   * batch it as usual.
+   */
+  @Override
+  public Document[] processDocument(Document document) {
+    if (!routingToShards) {
+      return super.processDocument(document);
+    }
+    shardLanes.computeIfAbsent(shardFor(document), (shard) -> new ShardLane(this, shard)).enqueue(document);
+    return new Document[0];
+  }
+
+  String shardFor(Document document) {
+    DocCollection state = getCollectionState();
+    if (state == null) {
+      return UNROUTED;
+    }
+    String idField = document.getIdField();
+    Function<String, Object> idTransformer = getIdTransformer();
+    String id = idTransformer == null ? document.getFirstValue(idField) :
+        String.valueOf(idTransformer.apply(document.getFirstValue(idField)));
+    // routers configured with router.field route on that field's value rather than the id
+    SolrInputDocument routed = new SolrInputDocument();
+    routed.setField(idField, id);
+    String routeField = state.getRouter().getRouteField(state);
+    if (routeField != null) {
+      String route = document.getFirstValue(routeField);
+      if (route == null) {
+        return UNROUTED;
+      }
+      routed.setField(routeField, route);
+    }
+    try {
+      Slice slice = state.getRouter().getTargetSlice(id, routed, null, null, state);
+      return slice == null ? UNROUTED : slice.getName();
+    } catch (RuntimeException e) {
+      // e.g. the implicit router with no route for the document
+      log.debug("Could not route {} in {}: {}", id, collection, e.getMessage());
+      return UNROUTED;
+    }
+  }
+
+  private DocCollection getCollectionState() {
+    long now = System.nanoTime();
+    DocCollection state = collectionState;
+    if (state == null || now - collectionStateNanos > CLUSTER_STATE_TTL_NANOS) {
+      SolrClient client = getSolrClient();
+      if (client instanceof CloudSolrClient) {
+        try {
+          ClusterState.CollectionRef ref = ((CloudSolrClient) client).getClusterStateProvider().getState(collection);
+          state = ref == null ? null : ref.get();
+        } catch (RuntimeException e) {
+          log.warn("{} could not read the state of {}, documents will not be routed to shards until it can: {}",
+              getName(), collection, e.getMessage());
+        }
+      }
+      collectionState = state;
+      collectionStateNanos = now;
+    }
+    return state;
+  }
+
+  @Override
+  public long getDocsReceived() {
+    return super.getDocsReceived() + shardLanes.values().stream().mapToLong(BatchProcessor::getDocsReceived).sum();
+  }
+
+  @Override
+  public long getDocsAttempted() {
+    return super.getDocsAttempted() + shardLanes.values().stream().mapToLong(BatchProcessor::getDocsAttempted).sum();
+  }
+
+  @Override
+  public long getDocsSucceeded() {
+    return super.getDocsSucceeded() + shardLanes.values().stream().mapToLong(BatchProcessor::getDocsSucceeded).sum();
+  }
+
   // in this class logging is important, so encapsulate it for tests.
   public Logger log() {
     return log;
@@ -68,14 +176,84 @@ public abstract class SendToSolrProcessor extends BatchProcessor<SolrInputDocume
     return true;
   }
 
+  /**
+   * Find the documents that failed a batch by resending it in halves, and only dividing the halves that fail
+   * further, until single documents are sent individually. One bad document in a batch of N thus costs about
+   * 2 log2(N) requests rather than N. Beyond the maximum depth of bisection, the remaining documents are sent
+   * individually.
+   */
   @Override
   protected int individualFallbackOperation(SynchronizedLinkedBimap<Document, SolrInputDocument> oldBatch, Exception e) {
     AtomicInteger succeeded = new AtomicInteger();
-    // TODO: send in bisected batches to avoid massive traffic due to one doc when batches are large
-    for (Document document : oldBatch.keySet()) {
+    long requestsBefore = fallbackRequests.get();
+    bisect(oldBatch, new ArrayList<>(oldBatch.keySet()), 0, succeeded);
+    fallbackBatches.incrementAndGet();
+    log.info("{} isolated failures in a batch of {} with {} requests, {} documents succeeded", getName(),
+        oldBatch.size(), fallbackRequests.get() - requestsBefore, succeeded.get());
+    return succeeded.get();
+  }
+
+  /**
+   * Resend documents known to include at least one failure.
+   */
+  private void bisect(SynchronizedLinkedBimap<Document, SolrInputDocument> oldBatch, List<Document> failed,
+                      int depth, AtomicInteger succeeded) {
+    if (failed.size() == 1 || depth >= maxBisectionDepth) {
+      sendIndividually(oldBatch, failed, succeeded);
+      return;
+    }
+    int middle = failed.size() / 2;
+    List<Document> first = failed.subList(0, middle);
+    List<Document> second = failed.subList(middle, failed.size());
+    if (resend(oldBatch, first, depth, succeeded)) {
+      // the failure must be in the second half, no need to send it whole again
+      bisect(oldBatch, second, depth + 1, succeeded);
+    } else {
+      resend(oldBatch, second, depth, succeeded);
+    }
+  }
+
+  /**
+   * Send part of a failed batch, bisecting it further if it fails.
+   *
+   * @return true if the part was sent successfully as a whole
+   */
+  private boolean resend(SynchronizedLinkedBimap<Document, SolrInputDocument> oldBatch, List<Document> part,
+                         int depth, AtomicInteger succeeded) {
+    if (part.size() == 1) {
+      return sendIndividually(oldBatch, part, succeeded) == 1;
+    }
+    SynchronizedLinkedBimap<Document, SolrInputDocument> partBatch = new SynchronizedLinkedBimap<>();
+    for (Document document : part) {
+      partBatch.put(document, oldBatch.get(document));
+    }
+    try {
+      fallbackRequests.incrementAndGet();
+      batchOperation(partBatch);
+      succeeded.addAndGet(part.size());
+      return true;
+    } catch (Exception ex) {
+      if (exceptionIndicatesDocumentIssue(ex)) {
+        log.debug("{} failed to resend {} documents at depth {}", getName(), part.size(), depth + 1);
+        bisect(oldBatch, part, depth + 1, succeeded);
+      } else {
+        entireBatchFailure(partBatch, ex);
+      }
+      return false;
+    }
+  }
+
+  private int sendIndividually(SynchronizedLinkedBimap<Document, SolrInputDocument> oldBatch, List<Document> documents,
+                               AtomicInteger succeeded) {
+    int before = succeeded.get();
+    for (Document document : documents) {
+      fallbackRequests.incrementAndGet();
       createDocContext(document).run(() -> {
         try {
           SolrInputDocument doc = oldBatch.get(document);
+          if (doc instanceof Deferred) {
+            doc = toSolrDoc(document);
+          }
           if (doc instanceof Delete) {
             document.setStatus(Status.INDEXING, "{} processing delete for {}", getName(), document.getId());
             document.reportDocStatus();
@@ -88,14 +266,30 @@ public abstract class SendToSolrProcessor extends BatchProcessor<SolrInputDocume
             // relying on add to throw if not successful
             document.setStatus(Status.INDEXED, "{} sent by {} successfully", document.getId(), getName());
           }
-          docsSucceeded.incrementAndGet();
+          succeeded.incrementAndGet();
           document.reportDocStatus();
         } catch (IOException | SolrServerException e1) {
           perDocFailLogging(e1,document); // contains reportstatus call
         }
       });
     }
-    return succeeded.get();
+    return succeeded.get() - before;
+  }
+
+  @Override
+  public long getFallbackBatches() {
+    return fallbackBatches.get();
+  }
+
+  @Override
+  public long getFallbackRequests() {
+    return fallbackRequests.get();
+  }
+
+  @Override
+  public double getFallbackAmplification() {
+    long batches = fallbackBatches.get();
+    return batches == 0 ? 0 : (double) fallbackRequests.get() / batches;
   }
 
   @Override
@@ -107,7 +301,16 @@ public abstract class SendToSolrProcessor extends BatchProcessor<SolrInputDocume
         .collect(Collectors.toList());
     if (!adds.isEmpty()) {
       Map<String, String> params = getParams();
-      if (params == null) {
+      if (streamingUpdates) {
+        UpdateRequest req = new StreamingUpdateRequest(documentsToAdd);
+        if (params != null) {
+          for (String s : params.keySet()) {
+            req.setParam(s, params.get(s));
+          }
+        }
+        SendToSolrProcessor.markIndexing(documentsToAdd, oldBatch.size());
+        getSolrClient().request(req);
+      } else if (params == null) {
         SendToSolrProcessor.markIndexing(documentsToAdd, oldBatch.size()); // not factoring out to minimize delay before request to solr
         getSolrClient().add(adds);
       } else {
@@ -150,6 +353,14 @@ public abstract class SendToSolrProcessor extends BatchProcessor<SolrInputDocume
 
   @Override
   protected SolrInputDocument convertDoc(Document document) {
+    if (streamingUpdates) {
+      // placeholders, the real conversion happens as the request is written (the batch needs distinct values)
+      return document.getOperation() == Document.Operation.DELETE ? new Delete() : new Deferred();
+    }
+    return toSolrDoc(document);
+  }
+
+  private SolrInputDocument toSolrDoc(Document document) {
     SolrInputDocument doc;
     if (document.getOperation() == Document.Operation.DELETE) {
       doc = new Delete();
@@ -180,6 +391,22 @@ public abstract class SendToSolrProcessor extends BatchProcessor<SolrInputDocume
     return doc;
   }
 
+  @Override
+  protected long estimateSize(Document document, SolrInputDocument converted) {
+    if (streamingUpdates) {
+      return super.estimateSize(document, converted);
+    }
+    // the converted form already holds the text content, so measure that rather than the document
+    long size = 0;
+    for (SolrInputField field : converted) {
+      size += field.getName().length();
+      for (Object value : field) {
+        size += String.valueOf(value).length();
+      }
+    }
+    return size;
+  }
+
   // visible for testing
   String getFieldsField() {
     return fieldsField;
@@ -196,8 +423,6 @@ public abstract class SendToSolrProcessor extends BatchProcessor<SolrInputDocume
 
   abstract SolrClient getSolrClient();
 
-  abstract void setSolrClient(SolrClient solrClient);
-
   // for testing
   Function<String, Object> getIdTransformer() {
     return this.idTransformer;
@@ -206,6 +431,98 @@ public abstract class SendToSolrProcessor extends BatchProcessor<SolrInputDocume
   private static class Delete extends SolrInputDocument {
   }
 
+  // Stands in for a document that is converted only when it is sent, visible for testing
+  static class Deferred extends SolrInputDocument {
+  }
+
+  /**
+   * Queues, batches and sends the documents for one shard on threads of its own, configured like the
+   * processor that routed the documents to it, and sharing its client, which it has no way to replace. A batch
+   * for one shard thus contains only documents the client sends to that shard's leader, and a slow shard does
+   * not hold up the sending of batches for other shards. Named for the routing processor and the shard, e.g.
+   * for JMX.
+   */
+  private static class ShardLane extends SendToSolrProcessor {
+    private final SendToSolrProcessor router;
+    private final BlockingQueue<Document> queue = new LinkedBlockingQueue<>(Math.max(1, SHARD_QUEUE_SIZE));
+
+    ShardLane(SendToSolrProcessor router, String shard) {
+      this.router = router;
+      router.copyBatchingTo(this);
+      this.name = router.getName() + "_" + shard;
+      this.collection = router.collection;
+      this.textContentField = router.textContentField;
+      this.fieldsField = router.fieldsField;
+      this.params = router.params;
+      this.idTransformer = router.idTransformer;
+      this.maxBisectionDepth = router.maxBisectionDepth;
+      this.streamingUpdates = router.streamingUpdates;
+      log.info("{} sending to shard {} as {}", router.getName(), shard, this.name);
+      Map<String, String> logContext = ThreadContext.getImmutableContext();
+      Thread batcher = new Thread(() -> {
+        ThreadContext.putAll(logContext);
+        batchQueued();
+      }, this.name + "-queue");
+      // waiting for documents must not keep the JVM alive
+      batcher.setDaemon(true);
+      batcher.start();
+    }
+
+    /**
+     * Queue a document to be batched on this lane's own thread, so that the step thread only waits when the
+     * queue is full, not while this lane waits for a batch to complete.
+     */
+    void enqueue(Document document) {
+      try {
+        queue.put(document);
+      } catch (InterruptedException e) {
+        log.info("{} could not queue {} due to system shutdown", getName(), document.getId());
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void batchQueued() {
+      try {
+        while (!Thread.currentThread().isInterrupted()) {
+          Document document = queue.take();
+          try {
+            processDocument(document);
+          } catch (RuntimeException e) {
+            // the step thread has moved on, so the failure is only recorded in the document's status
+            perDocFailLogging(e, document);
+          }
+        }
+      } catch (InterruptedException e) {
+        log.debug("{} stopped batching queued documents", getName());
+      }
+    }
+
+    @Override
+    SolrClient getSolrClient() {
+      return router.getSolrClient();
+    }
+  }
+
+  /**
+   * An update request that converts documents as the request body is written, so that only the document
+   * being written is held in converted form. A fresh iterator is supplied each time the request is written, so
+   * the request can be retried. Note that CloudSolrClient does not route streamed documents to shard leaders
+   * itself, the node receiving the request forwards them. Hence streaming is not allowed when routing to shards.
+   */
+  private class StreamingUpdateRequest extends UpdateRequest {
+    private final List<Document> documents;
+
+    StreamingUpdateRequest(List<Document> documents) {
+      this.documents = documents;
+      setDocIterator(getDocIterator());
+    }
+
+    @Override
+    public Iterator<SolrInputDocument> getDocIterator() {
+      return documents.stream().map(SendToSolrProcessor.this::toSolrDoc).iterator();
+    }
+  }
+
   @Override
   public String getName() {
     return name;
@@ -248,11 +565,93 @@ public abstract class SendToSolrProcessor extends BatchProcessor<SolrInputDocume
       return this;
     }
 
+    /**
+     * Limit how many times a failed batch is divided in half to find the documents at fault, after which the
+     * remaining documents are sent one at a time. Defaults to the
+     * <code>org.jesterj.solr.max_bisection_depth</code> system property, or 10, enough to reach single
+     * documents in batches of 1024. Zero sends every document of a failed batch individually.
+     *
+     * @param depth the maximum depth
+     * @return this builder for additional configuration
+     */
+    public Builder bisectingFailedBatchesTo(int depth) {
+      if (depth < 0) {
+        throw new IllegalArgumentException("Bisection depth must not be negative, got " + depth);
+      }
+      getObj().maxBisectionDepth = depth;
+      return this;
+    }
+
+    /**
+     * Divide documents by the shard of the collection they belong to as they arrive, and batch and send
+     * each shard's documents separately, each on its own sender thread. Routing uses the collection's router
+     * and the cluster state known to the client, refreshed every
+     * <code>org.jesterj.solr.cluster_state_ttl_ms</code> (30 seconds), including the route field if the
+     * collection has one. Documents that cannot be routed, e.g. with no value in the route field, are batched
+     * together. Batch size and other batching settings apply to each shard.
+     * <p>
+     * The step's thread queues each document for its shard, and each shard batches its queue on a thread of its
+     * own, so a shard that has as many batches in flight as allowed does not hold up documents for other shards.
+     * The step thread only waits when a shard's queue is full, which bounds the documents held for a slow shard
+     * to <code>org.jesterj.solr.shard_queue_size</code> (1000) beyond those in its batches. Can't be combined
+     * with {@link #streamingUpdates(boolean)}, since the client does not route streamed updates.
+     *
+     * @param routing true to batch by shard
+     * @return this builder for additional configuration
+     */
+    public Builder routingToShards(boolean routing) {
+      getObj().routingToShards = routing;
+      return this;
+    }
+
+    /**
+     * Convert documents to Solr's form only while the request sending them is being written, rather than
+     * when they are added to a batch. A batch of large documents, e.g. text extracted by Tika, is then held
+     * only once rather than both as documents and as converted copies. Additions are sent with
+     * <code>request()</code> rather than <code>add()</code>, which the client sends to any node of the
+     * collection rather than the shard leaders, so this can't be combined with {@link #routingToShards(boolean)}.
+     *
+     * @param streaming true to convert documents as they are sent
+     * @return this builder for additional configuration
+     */
+    public Builder streamingUpdates(boolean streaming) {
+      getObj().streamingUpdates = streaming;
+      return this;
+    }
+
     public Builder named(String name) {
       getObj().name = name;
       return this;
     }
 
+    @Override
+    public Builder withMaxInFlightBatches(int maxInFlight) {
+      super.withMaxInFlightBatches(maxInFlight);
+      return this;
+    }
+
+    @Override
+    public Builder adaptingBatchSize(int minBatchSize, int maxBatchSize, int targetLatencyMs, long targetBytes) {
+      super.adaptingBatchSize(minBatchSize, maxBatchSize, targetLatencyMs, targetBytes);
+      return this;
+    }
+
+    @Override
+    public Builder limitingBatchesToBytes(long maxBytes) {
+      super.limitingBatchesToBytes(maxBytes);
+      return this;
+    }
+
+    /**
+     * Reject settings that can't be used together. Subclasses call this before building.
+     */
+    protected void validate() {
+      if (getObj().streamingUpdates && getObj().routingToShards) {
+        throw new IllegalStateException("Streamed updates are not routed to shard leaders by the client, so " +
+            "streamingUpdates and routingToShards can't be used together");
+      }
+    }
+
     protected abstract SendToSolrProcessor getObj() ;
 
     public abstract SendToSolrProcessor build() ;
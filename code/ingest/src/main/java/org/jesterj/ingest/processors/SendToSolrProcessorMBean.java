@@ -0,0 +1,41 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jesterj.ingest.processors;
+
+/**
+ * JMX view of a Solr sending processor, adding the cost of isolating the documents that caused a batch to
+ * fail to the attributes of {@link BatchProcessorMBean}.
+ */
+public interface SendToSolrProcessorMBean extends BatchProcessorMBean {
+
+  /**
+   * @return the number of failed batches that were resent in parts to find the documents at fault
+   */
+  long getFallbackBatches();
+
+  /**
+   * @return the number of requests made while resending failed batches in parts
+   */
+  long getFallbackRequests();
+
+  /**
+   * @return the average number of requests needed to resend a failed batch, 1 for each document if every
+   * document were sent individually
+   */
+  double getFallbackAmplification();
+}
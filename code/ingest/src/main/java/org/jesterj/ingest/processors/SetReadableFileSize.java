@@ -88,6 +88,11 @@ public class SetReadableFileSize implements DocumentProcessor {
     return numericField;
   }
 
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public String getName() {
     return name;
@@ -42,6 +42,11 @@ public class SetStaticValue implements DocumentProcessor {
     return new Document[]{document};
   }
 
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public String getName() {
     return this.name;
@@ -77,6 +77,11 @@ public class SimpleDateTimeReformatter implements DocumentProcessor {
     return new Document[]{document};
   }
 
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public String getName() {
     return name;
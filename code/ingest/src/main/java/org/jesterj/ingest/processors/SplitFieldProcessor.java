@@ -33,6 +33,11 @@ public class SplitFieldProcessor implements DocumentProcessor {
   private boolean trim;
   private static final Logger log = LogManager.getLogger();
 
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public String getName() {
     return this.name;
@@ -4,17 +4,25 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.codehaus.stax2.XMLInputFactory2;
 import org.codehaus.stax2.XMLStreamReader2;
+import org.codehaus.stax2.io.Stax2ByteArraySource;
+import org.jesterj.ingest.model.ContentSource;
 import org.jesterj.ingest.model.Document;
 import org.jesterj.ingest.model.DocumentProcessor;
+import org.jesterj.ingest.model.Status;
+import org.jesterj.ingest.model.impl.ByteArrayContentSource;
+import org.jesterj.ingest.model.impl.DocumentImpl;
 import org.jesterj.ingest.model.impl.NamedBuilder;
 import org.jesterj.ingest.trie.PatriciaTrie;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.XMLEvent;
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.regex.Pattern;
 
@@ -30,6 +38,8 @@ public class StaxExtractingProcessor implements DocumentProcessor {
   private boolean failOnLongPath = false; // default
   private XMLResolver resolver;
   private boolean supportExternalEntities;
+  private String splitPath;
+  private volatile XMLInputFactory2 inputFactory;
 
 
   @Override
@@ -37,24 +47,17 @@ public class StaxExtractingProcessor implements DocumentProcessor {
     List<LimitedStaxHandler> handlers = new ArrayList<>();
     CharBuffer path = CharBuffer.allocate(this.capacity);
     path.flip();
-    if (log.isTraceEnabled()) {
-      log.trace(new String(document.getRawData()));
-    }
-    String trim = new String(document.getRawData()).trim();
-    byte[] buf = trim.getBytes();
-    InputStream xmlInputStream = new ByteArrayInputStream(buf);
-    XMLInputFactory2 xmlInputFactory = (XMLInputFactory2) XMLInputFactory
-        .newFactory("javax.xml.stream.XMLInputFactory", Thread.currentThread().getContextClassLoader());
-    if (supportExternalEntities) {
-      if (!xmlInputFactory.isPropertySupported("javax.xml.stream.isSupportingExternalEntities")) {
-        throw new RuntimeException(xmlInputFactory + " doesn't support javax.xml.stream.isSupportingExternalEntities");
-      }
-      xmlInputFactory.setProperty("javax.xml.stream.isSupportingExternalEntities", true);
-    }
-    xmlInputFactory.setXMLResolver(resolver);
-    XMLStreamReader2 xmlStreamReader;
+    ContentSource content = document.getRawContent();
+    if (content == null) {
+      content = new ByteArrayContentSource(new byte[0]);
+    }
+    final ContentSource xml = content;
+    log.trace("{}", () -> describe(xml));
+    List<Document> children = splitPath == null ? null : new ArrayList<>();
+    Document target = document;
+    XMLStreamReader2 xmlStreamReader = null;
     try {
-      xmlStreamReader = (XMLStreamReader2) xmlInputFactory.createXMLStreamReader(xmlInputStream);
+      xmlStreamReader = openReader(xml);
       while (xmlStreamReader.hasNext()) {
         int eventType = xmlStreamReader.next();
         switch (eventType) {
@@ -65,6 +68,10 @@ public class StaxExtractingProcessor implements DocumentProcessor {
                   "Builder.withPathBuffer(int), or turn off errors for long paths with Builder.failOnLongPath(false)");
             }
             log.trace("Starting {}", path.toString());
+            if (children != null && target == document && splitPath.contentEquals(path)) {
+              target = makeChild(document, children.size());
+              log.trace("{} starting child {}", document::getId, target::getId);
+            }
             List<ElementSpec> specList = extractMapping.get(path);
             if (specList != null) {
               for (ElementSpec spec : specList) {
@@ -90,7 +97,7 @@ public class StaxExtractingProcessor implements DocumentProcessor {
                     log.trace("{} calling onEndElement for {} ({})", document::getId, path::toString, () -> handler.getSpec().getDestField());
                     handler.onEndElement(xmlStreamReader);
                     log.trace("{} putting field {} for path {}", document::getId, elementSpec::getDestField, () -> path);
-                    document.put(elementSpec.getDestField(), handler.toString());
+                    target.put(elementSpec.getDestField(), handler.toString());
                     handler.reset();
                   }
                 }
@@ -101,6 +108,10 @@ public class StaxExtractingProcessor implements DocumentProcessor {
               log.trace("{} calling onEndElement for {} ({})", document::getId, path::toString, () -> handler.getSpec().getDestField());
               handler.onEndElement(xmlStreamReader);
             }
+            if (target != document && splitPath.contentEquals(path)) {
+              children.add(target);
+              target = document;
+            }
             decrementPath(path);
             break;
           case XMLEvent.CHARACTERS:
@@ -116,15 +127,104 @@ public class StaxExtractingProcessor implements DocumentProcessor {
       }
     } catch (Throwable e) {
       log.error("Exception Processing XML in StaxExtractingProcessor:", e);
-      log.trace("Offending XML:\n{}", trim);
+      log.trace("Offending XML:\n{}", () -> describe(xml));
       log.error(e);
       if (e instanceof Error) {
         throw (Error) e;
       } else {
         throw new RuntimeException(e);
       }
+    } finally {
+      closeQuietly(xmlStreamReader);
+    }
+    if (children == null) {
+      return new Document[]{document};
     }
-    return new Document[]{document};
+    document.setStatus(Status.DROPPED, "Split into {} child documents by {} at {}", children.size(), getName(), splitPath);
+    children.add(document);
+    return children.toArray(new Document[0]);
+  }
+
+  /**
+   * Create a reader positioned after any leading whitespace. Content already on the heap is parsed in place,
+   * and other content is streamed, so that large documents need never be loaded into memory as a whole.
+   */
+  private XMLStreamReader2 openReader(ContentSource content) throws IOException, XMLStreamException {
+    if (content instanceof ByteArrayContentSource) {
+      byte[] xml = ((ByteArrayContentSource) content).getBytes();
+      int start = 0;
+      while (start < xml.length && xml[start] <= ' ' && xml[start] >= 0) {
+        start++;
+      }
+      return (XMLStreamReader2) getInputFactory()
+          .createXMLStreamReader(new Stax2ByteArraySource(xml, start, xml.length - start));
+    }
+    InputStream in = new BufferedInputStream(content.open());
+    try {
+      int b;
+      do {
+        in.mark(1);
+        b = in.read();
+      } while (b >= 0 && b <= ' ');
+      in.reset();
+      return (XMLStreamReader2) getInputFactory().createXMLStreamReader(in);
+    } catch (IOException | XMLStreamException | RuntimeException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  private static String describe(ContentSource content) {
+    if (content instanceof ByteArrayContentSource) {
+      return new String(((ByteArrayContentSource) content).getBytes(), StandardCharsets.UTF_8);
+    }
+    return String.valueOf(content);
+  }
+
+  private Document makeChild(Document parent, int childNum) {
+    if (!(parent instanceof DocumentImpl)) {
+      throw new IllegalStateException("Splitting requires a DocumentImpl, but found " + parent.getClass());
+    }
+    return new DocumentImpl(null, parent.getId() + DocumentImpl.CHILD_SEP + childNum, parent.getOperation(),
+        (DocumentImpl) parent);
+  }
+
+  private static void closeQuietly(XMLStreamReader2 reader) {
+    if (reader != null) {
+      try {
+        reader.closeCompletely();
+      } catch (XMLStreamException e) {
+        log.warn("Failed to close xml stream reader", e);
+      }
+    }
+  }
+
+  /**
+   * The factory is configured once and then shared by all threads, since Woodstox factories are
+   * thread safe after configuration and expensive to look up and create for each document.
+   *
+   * @return the configured input factory for this processor
+   */
+  XMLInputFactory2 getInputFactory() {
+    XMLInputFactory2 factory = inputFactory;
+    if (factory == null) {
+      synchronized (this) {
+        factory = inputFactory;
+        if (factory == null) {
+          factory = (XMLInputFactory2) XMLInputFactory
+              .newFactory("javax.xml.stream.XMLInputFactory", Thread.currentThread().getContextClassLoader());
+          if (supportExternalEntities) {
+            if (!factory.isPropertySupported("javax.xml.stream.isSupportingExternalEntities")) {
+              throw new RuntimeException(factory + " doesn't support javax.xml.stream.isSupportingExternalEntities");
+            }
+            factory.setProperty("javax.xml.stream.isSupportingExternalEntities", true);
+          }
+          factory.setXMLResolver(resolver);
+          inputFactory = factory;
+        }
+      }
+    }
+    return factory;
   }
 
   private void decrementPath(CharBuffer path) {
@@ -165,6 +265,11 @@ public class StaxExtractingProcessor implements DocumentProcessor {
     return name;
   }
 
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @SuppressWarnings("WeakerAccess")
   public static class Builder extends NamedBuilder<StaxExtractingProcessor> {
 
@@ -207,6 +312,20 @@ public class StaxExtractingProcessor implements DocumentProcessor {
       return this;
     }
 
+    /**
+     * Emit a child document for each element found at the supplied path. Fields extracted within such an
+     * element are placed on the child rather than the original document, and the original document is
+     * marked as dropped once it has been split. Fields found outside the split elements are discarded
+     * with the parent. Child documents carry no raw data of their own.
+     *
+     * @param path the path of the elements that delimit child documents, e.g. /feed/entry
+     * @return this builder for further configuration
+     */
+    public Builder splittingOn(String path) {
+      getObj().splitPath = path;
+      return this;
+    }
+
     @Override
     protected StaxExtractingProcessor getObj() {
       return obj;
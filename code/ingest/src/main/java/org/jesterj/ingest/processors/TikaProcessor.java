@@ -18,18 +18,34 @@ package org.jesterj.ingest.processors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
 import org.apache.tika.Tika;
 import org.apache.tika.config.TikaConfig;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.metadata.Metadata;
+import org.jesterj.ingest.model.ContentSource;
 import org.jesterj.ingest.model.Document;
 import org.jesterj.ingest.model.DocumentProcessor;
 import org.jesterj.ingest.model.impl.NamedBuilder;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.AccessControlException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 /*
  * Created with IntelliJ IDEA.
@@ -45,20 +61,30 @@ public class TikaProcessor implements DocumentProcessor {
   private TikaConfig tikaConfig = TikaConfig.getDefaultConfig();
   private boolean replaceRaw = true;
   private String destField = null;
+  private long parseTimeoutMs = -1;
+  private int parseThreads;
+  private long parseMemoryLimit = -1;
+
+  // The facade (and the parsers it holds) is thread safe, and expensive enough to build that it is created once
+  private volatile Tika tika;
+  private volatile ExecutorService parsePool;
+  private long parseMemoryInUse;
+  private final Map<String, ParseStats> parseStats = new ConcurrentHashMap<>();
 
   @Override
   public Document[]   processDocument(Document document) {
     try {
-      byte[] rawData = document.getRawData();
-      if (rawData == null) {
+      ContentSource content = document.getRawContent();
+      if (content == null) {
         log.debug("Skipping document without data in " + getName());
         return new Document[]{document};
       }
-      Tika tika = new Tika(tikaConfig);
-      tika.setMaxStringLength(document.getRawData().length);
       Metadata metadata = new Metadata();
-      try (ByteArrayInputStream bais = new ByteArrayInputStream(rawData)) {
-        String textContent = tika.parseToString(bais, metadata, maxLength);
+      long start = System.nanoTime();
+      long parseNanos = -1;
+      try {
+        String textContent = parse(document, content, metadata);
+        parseNanos = System.nanoTime() - start;
         if (replaceRaw) {
           document.setRawData(textContent.getBytes(StandardCharsets.UTF_8));
         }
@@ -72,6 +98,8 @@ public class TikaProcessor implements DocumentProcessor {
         log.debug("Tika processing failure!", e);
         // if tika can't parse it we certainly don't want random binary crap in the index
         throw new RuntimeException(e); // causes error statuses for appropriate destinations
+      } finally {
+        recordParse(metadata, parseNanos);
       }
     } catch (Throwable t) {
       boolean isAccessControl = t instanceof AccessControlException;
@@ -83,6 +111,217 @@ public class TikaProcessor implements DocumentProcessor {
     return new Document[]{document};
   }
 
+  private String parse(Document document, ContentSource content, Metadata metadata) throws IOException, TikaException {
+    Tika tika = getTika();
+    long memory = acquireParseMemory(document, content.length());
+    if (parseTimeoutMs < 0) {
+      try (InputStream in = content.open()) {
+        return tika.parseToString(in, metadata, maxLength);
+      } finally {
+        releaseParseMemory(memory);
+      }
+    }
+    // The parse fills its own metadata, which is copied back only once the parse has finished, so that a parse
+    // abandoned after a timeout can't race with the caller's use of the metadata. Whoever sets claimed first decides if the parse
+    // runs, so that the memory of a parse abandoned before it started is released exactly once.
+    AtomicBoolean claimed = new AtomicBoolean();
+    CountDownLatch started = new CountDownLatch(1);
+    Metadata parsed = new Metadata();
+    Future<String> result;
+    try {
+      result = getParsePool().submit(() -> {
+        if (!claimed.compareAndSet(false, true)) {
+          return null;
+        }
+        started.countDown();
+        try (InputStream in = content.open()) {
+          return tika.parseToString(in, parsed, maxLength);
+        } finally {
+          // not released until the parse really ends, even if it has been abandoned
+          releaseParseMemory(memory);
+        }
+      });
+    } catch (RuntimeException e) {
+      releaseParseMemory(memory);
+      throw e;
+    }
+    try {
+      // time spent waiting for a free parse thread doesn't count against the parse, but is limited in the same
+      // way, in case every thread is held by a parser that ignores interruption
+      if (!started.await(parseTimeoutMs, TimeUnit.MILLISECONDS) && abandon(result, claimed, memory)) {
+        throw new RuntimeException("No Tika parse thread became free for " + document.getId() + " within " +
+            parseTimeoutMs + "ms");
+      }
+      started.await();
+      String text = result.get(parseTimeoutMs, TimeUnit.MILLISECONDS);
+      copyMetadata(parsed, metadata);
+      return text;
+    } catch (TimeoutException e) {
+      abandon(result, claimed, memory);
+      statsFor(metadata).timeouts.increment();
+      throw new RuntimeException("Tika parse of " + document.getId() + " cancelled after " + parseTimeoutMs + "ms");
+    } catch (InterruptedException e) {
+      abandon(result, claimed, memory);
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      // the detected type is still wanted for the failure statistics
+      copyMetadata(parsed, metadata);
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof TikaException) {
+        throw (TikaException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  private static void copyMetadata(Metadata from, Metadata to) {
+    for (String name : from.names()) {
+      for (String value : from.getValues(name)) {
+        to.add(name, value);
+      }
+    }
+  }
+
+  /**
+   * Stop a parse that is no longer wanted.
+   *
+   * @return true if the parse had not started, and now never will
+   */
+  private boolean abandon(Future<?> result, AtomicBoolean claimed, long memory) {
+    boolean unstarted = claimed.compareAndSet(false, true);
+    if (unstarted) {
+      releaseParseMemory(memory);
+    }
+    result.cancel(true);
+    return unstarted;
+  }
+
+  private Tika getTika() {
+    Tika result = tika;
+    if (result == null) {
+      synchronized (this) {
+        result = tika;
+        if (result == null) {
+          tika = result = new Tika(tikaConfig);
+        }
+      }
+    }
+    return result;
+  }
+
+  private ExecutorService getParsePool() {
+    ExecutorService result = parsePool;
+    if (result == null) {
+      synchronized (this) {
+        result = parsePool;
+        if (result == null) {
+          AtomicInteger count = new AtomicInteger();
+          Map<String, String> context = ThreadContext.getImmutableContext();
+          parsePool = result = Executors.newFixedThreadPool(parseThreads, r -> {
+            Thread t = new Thread(() -> {
+              ThreadContext.putAll(context);
+              r.run();
+            }, getName() + "-tika-" + count.incrementAndGet());
+            // a parse that ignores interruption must not keep the JVM alive
+            t.setDaemon(true);
+            return t;
+          });
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Wait until the content can be parsed without the content being parsed exceeding the memory limit. Content
+   * larger than the whole limit is parsed once nothing else is being parsed. When parsing with a timeout,
+   * the wait is limited by the timeout too, since parses that ignore interruption may hold memory indefinitely.
+   *
+   * @return the amount to release once parsing is complete
+   */
+  private long acquireParseMemory(Document document, long length) {
+    if (parseMemoryLimit < 0) {
+      return 0;
+    }
+    long needed = Math.min(length, parseMemoryLimit);
+    synchronized (parseStats) {
+      try {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(parseTimeoutMs);
+        while (parseMemoryInUse + needed > parseMemoryLimit) {
+          if (parseTimeoutMs < 0) {
+            parseStats.wait();
+            continue;
+          }
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            throw new RuntimeException("No Tika parse memory became free for " + document.getId() + " within " +
+                parseTimeoutMs + "ms");
+          }
+          TimeUnit.NANOSECONDS.timedWait(parseStats, remaining);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+      parseMemoryInUse += needed;
+    }
+    return needed;
+  }
+
+  private void releaseParseMemory(long memory) {
+    if (memory == 0) {
+      return;
+    }
+    synchronized (parseStats) {
+      parseMemoryInUse -= memory;
+      parseStats.notifyAll();
+    }
+  }
+
+  // nanos is negative if the parse failed
+  private void recordParse(Metadata metadata, long nanos) {
+    ParseStats stats = statsFor(metadata);
+    if (nanos >= 0) {
+      stats.parsed.increment();
+      stats.totalNanos.add(nanos);
+      stats.maxNanos.accumulate(nanos);
+    } else {
+      stats.failed.increment();
+    }
+  }
+
+  private ParseStats statsFor(Metadata metadata) {
+    String type = metadata.get(Metadata.CONTENT_TYPE);
+    if (type == null) {
+      type = "unknown";
+    } else {
+      int params = type.indexOf(';');
+      type = (params < 0 ? type : type.substring(0, params)).trim();
+    }
+    return parseStats.computeIfAbsent(type, (k) -> new ParseStats());
+  }
+
+  /**
+   * Parse statistics for this processor, keyed by the MIME type Tika detected (without parameters such as
+   * charset), or "unknown" when the type was not detected before the parse failed. Parses that time out are
+   * always counted as "unknown", since their metadata is discarded.
+   *
+   * @return a live, unmodifiable view of the statistics
+   */
+  public Map<String, ParseStats> getParseStats() {
+    return Collections.unmodifiableMap(parseStats);
+  }
+
   private String plusSuffix() {
     return suffix == null ? "" : suffix;
   }
@@ -100,11 +339,55 @@ public class TikaProcessor implements DocumentProcessor {
   }
 
 
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public String getName() {
     return name;
   }
 
+  /**
+   * Counts and timings for the documents of one MIME type. Time spent waiting for memory or a parsing thread
+   * is included, and failed parses (including timeouts) are counted but not timed.
+   */
+  public static class ParseStats {
+    private final LongAdder parsed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public long getParsed() {
+      return parsed.sum();
+    }
+
+    public long getFailed() {
+      return failed.sum();
+    }
+
+    public long getTimeouts() {
+      return timeouts.sum();
+    }
+
+    public double getAverageMillis() {
+      long count = parsed.sum();
+      return count == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / count;
+    }
+
+    public double getMaxMillis() {
+      return maxNanos.get() / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+      return "ParseStats{parsed=" + getParsed() + ", failed=" + getFailed() + ", timeouts=" + getTimeouts() +
+          ", averageMillis=" + getAverageMillis() + ", maxMillis=" + getMaxMillis() + '}';
+    }
+  }
+
   @SuppressWarnings("WeakerAccess")
   public static class Builder extends NamedBuilder<TikaProcessor> {
 
@@ -179,6 +462,41 @@ public class TikaProcessor implements DocumentProcessor {
       return this;
     }
 
+    /**
+     * Parse on a separate pool of threads, and give up on parses that take too long. A document that cannot be
+     * parsed in time has an error status, and its parse is interrupted so that a parser stuck in a
+     * pathological document does not hold up the step. The time allowed starts when a parse thread picks up
+     * the document, and a document that waits as long again for a free thread also has an error status.
+     * Parsers that ignore interruption keep their thread busy until they finish, so allow a few more threads
+     * than the step's own.
+     *
+     * @param millis  the time to allow each document
+     * @param threads the number of documents to parse at once
+     * @return This builder for further configuration
+     */
+    public Builder parsingWithTimeout(long millis, int threads) {
+      if (millis < 1 || threads < 1) {
+        throw new IllegalArgumentException("Parse timeout and thread count must be positive");
+      }
+      getObj().parseTimeoutMs = millis;
+      getObj().parseThreads = threads;
+      return this;
+    }
+
+    /**
+     * Bound the total size of the content being parsed at once. Parsers typically need memory in
+     * proportion to their input, so this bounds the memory used by parsing large documents concurrently.
+     * Documents wait for earlier parses to finish rather than exceed the limit. With
+     * {@link #parsingWithTimeout(long, int)}, a document that waits longer than the timeout has an error status.
+     *
+     * @param bytes the limit, or -1 for no limit, the default
+     * @return This builder for further configuration
+     */
+    public Builder limitingParseMemoryTo(long bytes) {
+      getObj().parseMemoryLimit = bytes;
+      return this;
+    }
+
     private void setObj(TikaProcessor obj) {
       this.obj = obj;
     }
@@ -30,6 +30,11 @@ public class UrlEncodeFieldProcessor implements DocumentProcessor {
   private String fieldToEncode;
   private String charset;
 
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public String getName() {
     return name;
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jesterj.ingest.scanners;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches a directory tree for changes with a {@link WatchService}, registering each directory in the tree,
+ * and any directory created later. Events are collected until the tree has been quiet for a short time (or
+ * many events are waiting) and then handed to the listener together, so that the several events produced
+ * by writing one file are reported once. Files found in newly created directories are reported as changed,
+ * since they may have been created before the directory could be registered.
+ * <p>
+ * If the watch service loses events, the listener is told so that it can fall back to a full walk of the
+ * tree. Deleting a directory is reported only for the directory itself, not for the files it held.
+ */
+class DirectoryWatcher implements Closeable {
+  private static final Logger log = LogManager.getLogger();
+
+  static final long QUIET_MS = Long.getLong("org.jesterj.scanner.watch_quiet_ms", 200);
+  static final int MAX_PENDING = Integer.getInteger("org.jesterj.scanner.watch_max_pending", 1000);
+
+  interface Listener {
+    /**
+     * Handle a group of changes.
+     *
+     * @param changed files that were created or modified
+     * @param deleted paths that were deleted
+     */
+    void changes(Collection<Path> changed, Collection<Path> deleted);
+
+    /**
+     * Handle the loss of events. Changes may have been missed anywhere in the tree.
+     */
+    void overflowed();
+  }
+
+  private final Path root;
+  private final Listener listener;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> dirs = new ConcurrentHashMap<>();
+  // the kind of the latest event for each path, in the order they were last seen
+  private final Map<Path, WatchEvent.Kind<?>> pending = new LinkedHashMap<>();
+  private boolean overflow;
+  private volatile Thread thread;
+
+  DirectoryWatcher(Path root, Listener listener) throws IOException {
+    this.root = root;
+    this.listener = listener;
+    this.watchService = root.getFileSystem().newWatchService();
+  }
+
+  /**
+   * Register the tree and begin watching it on a new daemon thread.
+   *
+   * @param name       a name for the thread
+   * @param logContext the logging context for the thread
+   */
+  synchronized void start(String name, Map<String, String> logContext) {
+    thread = new Thread(() -> {
+      ThreadContext.putAll(logContext);
+      try {
+        registerTree(root, false);
+        log.info("Watching {} directories under {}", dirs.size(), root);
+        watch();
+      } catch (IOException e) {
+        log.error("Could not watch {}", root, e);
+      }
+    }, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void watch() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        WatchKey key = pending.isEmpty() && !overflow ?
+            watchService.take() :
+            watchService.poll(QUIET_MS, TimeUnit.MILLISECONDS);
+        if (key == null) {
+          flush();
+          continue;
+        }
+        Path dir = dirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == OVERFLOW) {
+            overflow = true;
+          } else if (dir != null) {
+            Path child = dir.resolve((Path) event.context());
+            // remove first so that the order reflects the latest event
+            WatchEvent.Kind<?> previous = pending.remove(child);
+            // a modification does not hide a creation that has not been handled yet
+            boolean created = previous == ENTRY_CREATE && event.kind() == ENTRY_MODIFY;
+            pending.put(child, created ? ENTRY_CREATE : event.kind());
+          }
+        }
+        if (!key.reset()) {
+          dirs.remove(key);
+        }
+        if (pending.size() >= MAX_PENDING) {
+          flush();
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      log.debug("Stopped watching {}", root);
+    } catch (RuntimeException e) {
+      log.error("Watching {} failed, changes will be found by full walks only", root, e);
+      listener.overflowed();
+    }
+  }
+
+  private void flush() {
+    if (overflow) {
+      log.warn("Events were lost while watching {}", root);
+      overflow = false;
+      listener.overflowed();
+    }
+    if (pending.isEmpty()) {
+      return;
+    }
+    List<Path> changed = new ArrayList<>();
+    List<Path> deleted = new ArrayList<>();
+    for (Map.Entry<Path, WatchEvent.Kind<?>> entry : pending.entrySet()) {
+      Path path = entry.getKey();
+      WatchEvent.Kind<?> kind = entry.getValue();
+      if (kind == ENTRY_DELETE) {
+        dirs.values().remove(path);
+        deleted.add(path);
+      } else if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+        // a modified directory is already registered, and its changed files have their own events
+        if (kind != ENTRY_CREATE) {
+          continue;
+        }
+        try {
+          changed.addAll(registerTree(path, true));
+        } catch (IOException e) {
+          log.warn("Could not watch new directory {}", path, e);
+        }
+      } else if (Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+        changed.add(path);
+      }
+    }
+    pending.clear();
+    listener.changes(changed, deleted);
+  }
+
+  /**
+   * Register a directory and all directories below it.
+   *
+   * @param top          the directory to register
+   * @param collectFiles true to return the files found in the tree
+   * @return the files found, if collected
+   */
+  private List<Path> registerTree(Path top, boolean collectFiles) throws IOException {
+    List<Path> files = new ArrayList<>();
+    Files.walkFileTree(top, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        dirs.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (collectFiles && attrs.isRegularFile()) {
+          files.add(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException exc) {
+        log.warn("unable to watch " + file, exc);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return files;
+  }
+
+  boolean isRunning() {
+    Thread t = thread;
+    return t != null && t.isAlive();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    watchService.close();
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+}
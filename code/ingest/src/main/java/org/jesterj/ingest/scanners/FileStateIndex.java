@@ -0,0 +1,253 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jesterj.ingest.scanners;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A record of the modification time and size of each file a scanner has found, so that files that have not
+ * changed since the last walk can be skipped without reading their content, and so that the documents for files
+ * can be deleted when a watched file or directory is deleted. Entries for files that were not
+ * seen during a complete walk are dropped at the end of the walk. If a walk does not complete, the entries it
+ * recorded are forgotten, so that files found by a failed walk are always read again by the next one. Likewise
+ * the scanner invalidates a file when a document from it reports an error, so that the file is not skipped by
+ * later walks even when the scanner is not remembering documents in the FTI.
+ * <p>
+ * The index may optionally be saved to and loaded from a snapshot file so that it survives restarts. Note that
+ * a file modified without changing its size within the resolution of the file system's timestamps will not be
+ * noticed.
+ */
+class FileStateIndex {
+  private static final Logger log = LogManager.getLogger();
+
+  private static final int MAGIC = 0x4A4A4649; // "JJFI"
+  private static final int VERSION = 2;
+
+  private final Map<String, State> states = new ConcurrentHashMap<>();
+  private final Path snapshot;
+  private volatile int walk;
+
+  private static class State {
+    final long modified;
+    final long size;
+    // the walk that recorded this state, and the last walk that saw it
+    final int recorded;
+    volatile int seen;
+    // the number of documents made from the lines of the file, or -1 if it was not split into lines
+    volatile long lines = -1;
+
+    State(long modified, long size, int recorded) {
+      this.modified = modified;
+      this.size = size;
+      this.recorded = recorded;
+      this.seen = recorded;
+    }
+  }
+
+  /**
+   * Create an index.
+   *
+   * @param snapshot a file to save and load the index from, or null for no persistence
+   */
+  FileStateIndex(Path snapshot) {
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * Check if a file is unchanged since it was last recorded, and if so note that it has been seen by
+   * the current walk.
+   *
+   * @param key   the file's key, typically its path
+   * @param attrs the file's current attributes
+   * @return true if the file has the same modification time and size as when last recorded
+   */
+  boolean isUnchanged(String key, BasicFileAttributes attrs) {
+    State state = states.get(key);
+    if (state == null || state.modified != attrs.lastModifiedTime().toMillis() || state.size != attrs.size()) {
+      return false;
+    }
+    state.seen = walk;
+    return true;
+  }
+
+  /**
+   * Record the state of a file that has been found by the current walk.
+   *
+   * @param key   the file's key, typically its path
+   * @param attrs the file's attributes at the time it was read
+   */
+  void record(String key, BasicFileAttributes attrs) {
+    states.put(key, new State(attrs.lastModifiedTime().toMillis(), attrs.size(), walk));
+  }
+
+  /**
+   * Note the number of documents made from the lines of a file recorded by the current walk, so that they can
+   * all be deleted if the file is.
+   *
+   * @param key   the file's key, typically its path
+   * @param lines the number of line documents
+   */
+  void recordLines(String key, long lines) {
+    State state = states.get(key);
+    if (state != null) {
+      state.lines = lines;
+    }
+  }
+
+  /**
+   * Treat a file as changed on the next walk whatever its attributes, for example because its documents failed.
+   * The file is still recorded, so that its documents can be deleted if it is.
+   *
+   * @param key the file's key, typically its path
+   */
+  void invalidate(String key) {
+    states.computeIfPresent(key, (k, state) -> {
+      State invalid = new State(Long.MIN_VALUE, state.size, state.recorded);
+      invalid.seen = state.seen;
+      invalid.lines = state.lines;
+      return invalid;
+    });
+  }
+
+  /**
+   * Forget a path that has been deleted, which may have been a file, or a directory containing any number of
+   * recorded files.
+   *
+   * @param key       the path's key, typically its path
+   * @param separator the separator between names in keys
+   * @return the keys of the forgotten files, mapped to their number of line documents (-1 if not split into lines)
+   */
+  Map<String, Long> forgetTree(String key, String separator) {
+    Map<String, Long> forgotten = new TreeMap<>();
+    String dirPrefix = key.endsWith(separator) ? key : key + separator;
+    states.entrySet().removeIf(entry -> {
+      String k = entry.getKey();
+      if (k.equals(key) || k.startsWith(dirPrefix)) {
+        forgotten.put(k, entry.getValue().lines);
+        return true;
+      }
+      return false;
+    });
+    return forgotten;
+  }
+
+  void startWalk() {
+    walk++;
+  }
+
+  /**
+   * Conclude the current walk, dropping entries for files that were not seen if it completed, or forgetting
+   * what it recorded if not, and save the snapshot.
+   *
+   * @param complete true if every directory was walked successfully
+   */
+  void finishWalk(boolean complete) {
+    int current = walk;
+    if (complete) {
+      states.values().removeIf(state -> state.seen != current);
+    } else {
+      states.values().removeIf(state -> state.recorded == current);
+    }
+    save();
+  }
+
+  int size() {
+    return states.size();
+  }
+
+  /**
+   * Load the snapshot file if one is configured and exists. Problems reading the snapshot are logged and
+   * result in an empty index, which simply means that every file is read on the next walk.
+   */
+  void load() {
+    if (snapshot == null || !Files.isRegularFile(snapshot)) {
+      return;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+      int version;
+      if (in.readInt() != MAGIC || (version = in.readInt()) < 1 || version > VERSION) {
+        log.warn("Ignoring file state snapshot {} with unrecognized format", snapshot);
+        return;
+      }
+      long count = 0;
+      while (in.readBoolean()) {
+        byte[] key = new byte[in.readInt()];
+        in.readFully(key);
+        State state = new State(in.readLong(), in.readLong(), walk);
+        if (version > 1) {
+          state.lines = in.readLong();
+        }
+        states.put(new String(key, StandardCharsets.UTF_8), state);
+        count++;
+      }
+      log.info("Loaded the state of {} files from {}", count, snapshot);
+    } catch (IOException e) {
+      log.warn("Could not read file state snapshot {}, all files will be read on the next walk", snapshot, e);
+      states.clear();
+    }
+  }
+
+  /**
+   * Write the snapshot file if one is configured. The file is written beside the target and moved into place
+   * so that a crash mid-write cannot leave a truncated snapshot.
+   */
+  void save() {
+    if (snapshot == null) {
+      return;
+    }
+    Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+    long count = 0;
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        // the map may change while it is written, so mark each entry rather than writing a count up front
+        for (Map.Entry<String, State> entry : states.entrySet()) {
+          out.writeBoolean(true);
+          byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+          out.writeInt(key.length);
+          out.write(key);
+          out.writeLong(entry.getValue().modified);
+          out.writeLong(entry.getValue().size);
+          out.writeLong(entry.getValue().lines);
+          count++;
+        }
+        out.writeBoolean(false);
+      }
+      Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      log.debug("Saved the state of {} files to {}", count, snapshot);
+    } catch (IOException e) {
+      log.warn("Could not write file state snapshot {}", snapshot, e);
+    }
+  }
+}
@@ -23,7 +23,9 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
 import org.jesterj.ingest.model.ConfiguredBuildable;
+import org.jesterj.ingest.model.ContentSource;
 import org.jesterj.ingest.model.Document;
 import org.jesterj.ingest.model.DocumentProcessor;
 import org.jesterj.ingest.model.Router;
@@ -31,6 +33,7 @@ import org.jesterj.ingest.model.exception.ConfigurationException;
 import org.jesterj.ingest.model.exception.PersistenceException;
 import org.jesterj.ingest.model.impl.DocumentImpl;
 import org.jesterj.ingest.model.impl.ScannerImpl;
+import org.jesterj.ingest.model.impl.SpooledContentSource;
 import org.jesterj.ingest.model.impl.StepImpl;
 import org.jesterj.ingest.routers.RouterBase;
 import org.jesterj.ingest.utils.SqlUtils;
@@ -39,6 +42,8 @@ import org.jetbrains.annotations.NotNull;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.sql.Blob;
 import java.sql.Clob;
 import java.sql.Connection;
@@ -49,8 +54,25 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
  * Scans a JDBC source such as an RDBMS (e.g. MySQL). Obtains a connection through the specified
@@ -88,6 +110,31 @@ public class JdbcScanner extends ScannerImpl {
   // The (optional) name for the column that contains the document content
   private String contentColumn;
 
+  // limits on the memory used by large values, -1 for no limit
+  private long lobSpoolThreshold = -1;
+  private Path lobSpoolDir;
+  private boolean mapSpooledLobs;
+  private long maxContentLength = -1;
+  private int maxFieldLength = -1;
+
+  // incremental scans
+  static final String WATERMARK_STATE = "watermark";
+  private String watermarkColumn;
+  private String incrementalSqlStatement;
+  private Object watermark;
+  private boolean watermarkLoaded;
+
+  // keys per query when fetching documents in bulk
+  static final int FETCH_IN_LIST_SIZE = Integer.getInteger("org.jesterj.scanner.jdbc.fetch_in_list_size", 100);
+
+  // partitioned scans
+  static final String PASS_DONE = "pass.done";
+  static final String PASS_BOUNDS = "pass.bounds";
+  static final String PASS_MARK = "pass.mark";
+  private int partitions = 1;
+  private String partitionExpression;
+  private int partitionThreads;
+
   private final SqlUtils sqlUtils = new SqlUtils();
 
   // Use the ISO 8601 date format supported by Lucene, e.g. 2011-12-03T10:15:30Z
@@ -126,49 +173,278 @@ public class JdbcScanner extends ScannerImpl {
         setReady(false); // ensure initial walk completes before new scans are started.
         // Remainder of operation is implemented here instead of relying on DefaultOp to avoid spamming the DB with
         // queries for individual rows.
-        int count = 0;
-        int reqIndexing = 0;
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger sent = new AtomicInteger();
         try {
-          log.info("{} connecting to database {}", getName(), jdbcUrl);
-          if (!isConnected()) {
-            connection = sqlUtils.createJdbcConnection(jdbcDriver, jdbcUrl, jdbcUser, jdbcPassword, autoCommit);
-          }
-          try (Statement statement = createStatement(connection);
-               ResultSet rs = statement.executeQuery(sqlStatement)) {
-            log.info("{} successfully queried database {}", getName(), jdbcUrl);
-
-            String[] columnNames = getColumnNames(rs);
-            int docIdColumnIdx = getDocIdColumnIndex(columnNames, getDatabasePkColumnName());
-
-            // For each row
-            while (rs.next() && isActive()) {
-              if (count == 0) {
-                log.debug("{} beginning processing of result set", getName());
-              }
-              String docId = rs.getString(docIdColumnIdx);
-              docId = docIdFromPkVal(docId);
-              Document doc = makeDoc(rs, columnNames, docId);
-              if (JdbcScanner.this.docFound(doc)) {
-                reqIndexing++;
-              }
-              count++;
-            }
-
-          } catch (PersistenceException | SQLException ex) {
-            log.error(getName() + " JDBC scanner error, rows processed=" + count, ex);
+          Object mark = isIncremental() ? currentWatermark() : null;
+          if (partitions > 1 && mark == null) {
+            scanPartitions(count, sent);
+          } else {
+            scanResult(mark, count, sent);
           }
           processDirty();
         } catch (Exception e) {
           log.error("JDBC operation for {} failed.", getName());
           log.error(e);
         } finally {
-          log.info("{} Database rows read by {}, of which {} resulted in documents submitted for processing", count, getName(), reqIndexing);
+          log.info("{} Database rows read by {}, of which {} resulted in documents submitted for processing", count, getName(), sent);
           setReady(true);
         }
       }
     }, this);
   }
 
+  private void scanResult(Object mark, AtomicInteger count, AtomicInteger sent) throws ConfigurationException, PersistenceException {
+    log.info("{} connecting to database {}", getName(), jdbcUrl);
+    if (!isConnected()) {
+      connection = sqlUtils.createJdbcConnection(jdbcDriver, jdbcUrl, jdbcUser, jdbcPassword, autoCommit);
+    }
+    FoundDocs found = new FoundDocs();
+    Object highest = null;
+    boolean complete = false;
+    try (Statement statement = mark == null ? createStatement(connection) : prepareIncremental(connection, mark);
+         ResultSet rs = mark == null ? statement.executeQuery(sqlStatement) : ((PreparedStatement) statement).executeQuery()) {
+      log.info("{} successfully queried database {}{}", getName(), jdbcUrl, mark == null ? "" : " for rows after " + mark);
+      highest = readRows(rs, found, count);
+      complete = isActive();
+    } catch (PersistenceException | SQLException ex) {
+      log.error(getName() + " JDBC scanner error, rows processed=" + count, ex);
+    } finally {
+      // rows already read are submitted even if the result set failed part way through
+      found.flush();
+      sent.addAndGet(found.getSent());
+    }
+    // but the mark only advances past a complete result, since rows need not arrive in order
+    if (complete && highest != null) {
+      advanceWatermark(highest);
+    }
+  }
+
+  /**
+   * Turn each row of a result into a document.
+   *
+   * @return the highest watermark seen, or null if not incremental or there were no rows
+   */
+  private Object readRows(ResultSet rs, FoundDocs found, AtomicInteger count) throws SQLException, PersistenceException {
+    String[] columnNames = getColumnNames(rs);
+    int docIdColumnIdx = getDocIdColumnIndex(columnNames, getDatabasePkColumnName());
+    Object highest = null;
+
+    // For each row
+    while (rs.next() && isActive()) {
+      if (count.get() == 0) {
+        log.debug("{} beginning processing of result set", getName());
+      }
+      String docId = rs.getString(docIdColumnIdx);
+      docId = docIdFromPkVal(docId);
+      Document doc = makeDoc(rs, columnNames, docId);
+      found.found(doc);
+      if (isIncremental()) {
+        highest = JdbcWatermark.max(highest, JdbcWatermark.normalize(rs.getObject(watermarkColumn)));
+      }
+      count.incrementAndGet();
+    }
+    return highest;
+  }
+
+  /**
+   * Read the full statement as several partitions at once, each over its own connection. Partitions are
+   * either ranges of an integer primary key, or the values of a partition expression. Each partition is
+   * recorded in the scanner's keyspace when it completes, and a pass over all partitions that does not
+   * complete is resumed by the next scan, which reads only the partitions that did not complete.
+   */
+  void scanPartitions(AtomicInteger count, AtomicInteger sent) throws Exception {
+    Set<Integer> done = loadScannerState(PASS_DONE)
+        .filter(StringUtils::isNotBlank)
+        .map(str -> Arrays.stream(str.split(",")).map(Integer::valueOf).collect(Collectors.toCollection(TreeSet::new)))
+        .orElseGet(TreeSet::new);
+    List<Object[]> params = partitionParams(!done.isEmpty());
+    String sql = partitionSql();
+    List<Integer> todo = new ArrayList<>();
+    for (int i = 0; i < partitions; i++) {
+      if (!done.contains(i)) {
+        todo.add(i);
+      }
+    }
+    log.info("{} reading {} of {} partitions of {} with {}", getName(), todo.size(), partitions, table, sql);
+    BlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+    Map<String, String> logContext = ThreadContext.getImmutableContext();
+    AtomicInteger threads = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(partitionThreads, todo.size())), r -> {
+      Thread t = new Thread(() -> {
+        ThreadContext.putAll(logContext);
+        r.run();
+      }, getName() + "-partition-" + threads.incrementAndGet());
+      // a read blocked in the driver must not keep the JVM alive
+      t.setDaemon(true);
+      return t;
+    });
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int partition : todo) {
+        results.add(pool.submit(() -> {
+          readPartition(partition, sql, params.get(partition), idle, done, count, sent);
+          return null;
+        }));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        try {
+          results.get(i).get();
+        } catch (ExecutionException e) {
+          log.error("{} partition {} failed, it will be read again by the next scan", getName(), todo.get(i), e.getCause());
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+      for (Connection conn : idle) {
+        try {
+          conn.close();
+        } catch (SQLException e) {
+          log.warn("Could not close connection for partition", e);
+        }
+      }
+    }
+    synchronized (done) {
+      if (done.size() == partitions) {
+        log.info("{} completed reading all {} partitions", getName(), partitions);
+        Object highest = loadScannerState(PASS_MARK).filter(StringUtils::isNotBlank).map(JdbcWatermark::decode).orElse(null);
+        if (highest != null) {
+          advanceWatermark(highest);
+        }
+        saveScannerState(PASS_DONE, "");
+        saveScannerState(PASS_BOUNDS, "");
+        saveScannerState(PASS_MARK, "");
+      }
+    }
+  }
+
+  private void readPartition(int partition, String sql, Object[] params, BlockingQueue<Connection> idle,
+                             Set<Integer> done, AtomicInteger count, AtomicInteger sent) throws Exception {
+    Connection conn = idle.poll();
+    if (conn == null) {
+      conn = sqlUtils.createJdbcConnection(jdbcDriver, jdbcUrl, jdbcUser, jdbcPassword, autoCommit);
+    }
+    FoundDocs found = new FoundDocs();
+    AtomicInteger rows = new AtomicInteger();
+    Object highest;
+    boolean read = false;
+    try (PreparedStatement statement = conn.prepareStatement(sql,
+        java.sql.ResultSet.TYPE_FORWARD_ONLY, java.sql.ResultSet.CONCUR_READ_ONLY)) {
+      configure(statement);
+      for (int i = 0; i < params.length; i++) {
+        statement.setObject(i + 1, params[i]);
+      }
+      log.debug("{} reading partition {} {}", getName(), partition, Arrays.toString(params));
+      try (ResultSet rs = statement.executeQuery()) {
+        highest = readRows(rs, found, rows);
+      }
+      read = true;
+    } finally {
+      if (read) {
+        idle.offer(conn);
+      } else {
+        // the connection may be broken, or left mid transaction, so don't reuse it for another partition
+        try {
+          conn.close();
+        } catch (SQLException e) {
+          log.warn("Could not close connection for failed partition {}", partition, e);
+        }
+      }
+      found.flush();
+      count.addAndGet(rows.get());
+      sent.addAndGet(found.getSent());
+    }
+    if (!isActive()) {
+      log.info("{} stopped reading partition {} after {} rows", getName(), partition, rows);
+      return;
+    }
+    synchronized (done) {
+      if (highest != null) {
+        Object passMark = loadScannerState(PASS_MARK).filter(StringUtils::isNotBlank).map(JdbcWatermark::decode).orElse(null);
+        saveScannerState(PASS_MARK, JdbcWatermark.encode(JdbcWatermark.max(passMark, highest)));
+      }
+      done.add(partition);
+      saveScannerState(PASS_DONE, done.stream().map(String::valueOf).collect(Collectors.joining(",")));
+      log.info("{} completed partition {} ({} of {}) with {} rows", getName(), partition, done.size(), partitions, rows);
+    }
+  }
+
+  String partitionSql() {
+    String where = partitionExpression != null ?
+        partitionExpression + " = ?" :
+        getDatabasePkColumnName() + " BETWEEN ? AND ?";
+    return "SELECT * FROM (" + sqlStatement + ") jj_partition WHERE " + where;
+  }
+
+  /**
+   * The parameters for each partition. Key ranges are divided evenly between the lowest and highest key,
+   * and kept for the rest of a pass so that resumed partitions cover the same rows.
+   */
+  List<Object[]> partitionParams(boolean resuming) throws ConfigurationException, PersistenceException, SQLException {
+    List<Object[]> params = new ArrayList<>();
+    if (partitionExpression != null) {
+      for (int i = 0; i < partitions; i++) {
+        params.add(new Object[]{i});
+      }
+      return params;
+    }
+    long lo;
+    long hi;
+    Optional<String> bounds = resuming ? loadScannerState(PASS_BOUNDS).filter(StringUtils::isNotBlank) : Optional.empty();
+    if (bounds.isPresent()) {
+      String[] loHi = bounds.get().split(":");
+      lo = Long.parseLong(loHi[0]);
+      hi = Long.parseLong(loHi[1]);
+    } else {
+      String pk = getDatabasePkColumnName();
+      String sql = "SELECT MIN(" + pk + "), MAX(" + pk + ") FROM (" + sqlStatement + ") jj_partition";
+      try (Statement statement = createStatement(getConnection());
+           ResultSet rs = statement.executeQuery(sql)) {
+        rs.next();
+        lo = rs.getLong(1);
+        hi = rs.getLong(2);
+      }
+      saveScannerState(PASS_BOUNDS, lo + ":" + hi);
+    }
+    long size = (hi - lo) / partitions + 1;
+    for (int i = 0; i < partitions; i++) {
+      long start = lo + i * size;
+      params.add(new Object[]{start, Math.min(hi, start + size - 1)});
+    }
+    return params;
+  }
+
+  private boolean isIncremental() {
+    return watermarkColumn != null;
+  }
+
+  private Object currentWatermark() {
+    if (!watermarkLoaded) {
+      watermark = loadScannerState(WATERMARK_STATE).map(JdbcWatermark::decode).orElse(null);
+      watermarkLoaded = true;
+      log.info("{} loaded high water mark {}", getName(), watermark);
+    }
+    return watermark;
+  }
+
+  private void advanceWatermark(Object highest) {
+    String encoded = JdbcWatermark.encode(highest);
+    if (watermark != null && encoded.equals(JdbcWatermark.encode(watermark))) {
+      return;
+    }
+    saveScannerState(WATERMARK_STATE, encoded);
+    watermark = highest;
+    log.info("{} advanced high water mark to {}", getName(), highest);
+  }
+
+  private PreparedStatement prepareIncremental(Connection conn, Object mark) throws SQLException {
+    PreparedStatement statement = conn.prepareStatement(incrementalSqlStatement,
+        java.sql.ResultSet.TYPE_FORWARD_ONLY, java.sql.ResultSet.CONCUR_READ_ONLY);
+    configure(statement);
+    statement.setObject(1, mark);
+    return statement;
+  }
+
   private void setReady(boolean b) {
     this.ready = b;
   }
@@ -214,7 +490,10 @@ public class JdbcScanner extends ScannerImpl {
     // TODO - deletion tracking. Configure a separate query to identify soft deletes.
     // TODO - query Cassandra for whether the ID is in it, if so then it's an update
 
-    byte[] rawBytes = getContentBytes(rs);
+    // If the content column was specified, get its value (only once, some drivers can't read a column twice)
+    Object content = StringUtils.isNotBlank(contentColumn) ? rs.getObject(contentColumn) : null;
+    ContentSource spooled = spoolContent(content);
+    byte[] rawBytes = spooled == null ? getContentBytes(content) : null;
 
     DocumentImpl doc = new DocumentImpl(
         rawBytes,
@@ -222,6 +501,10 @@ public class JdbcScanner extends ScannerImpl {
         getPlan(),
         Document.Operation.NEW,
         this, SCAN_ORIGIN);
+    if (spooled != null) {
+      doc.setRawContent(spooled);
+      doc.put(Document.DOC_RAW_SIZE, String.valueOf(spooled.length()));
+    }
 
     // For each column value
     for (int i = 1; i <= columnNames.length; i++) {
@@ -230,21 +513,8 @@ public class JdbcScanner extends ScannerImpl {
       String columnName = columnNames[i - 1];
       if (!columnName.equalsIgnoreCase(contentColumn) && !columnName.equalsIgnoreCase(doc.getIdField())) {
         Object value = rs.getObject(i);
-        String strValue;
         if (value != null) {
-          // Take care of java.sql.Date, java.sql.Time, and java.sql.Timestamp
-          if (value instanceof Date) {
-            strValue = convertDateToString(value);
-          } else if (value instanceof Clob){
-            try {
-              strValue = IOUtils.toString(((Clob)value).getCharacterStream());
-            } catch (IOException e) {
-              throw new RuntimeException("Error reading clob for " + columnName,e);
-            }
-          } else {
-            strValue = value.toString();
-          }
-          doc.put(columnName, strValue);
+          doc.put(columnName, fieldValue(columnName, value, docId));
         }
       }
     }
@@ -252,28 +522,64 @@ public class JdbcScanner extends ScannerImpl {
     return doc;
   }
 
-  private byte[] getContentBytes(ResultSet rs) throws SQLException {
-    byte[] rawBytes = null;
+  /**
+   * Convert the value of a column other than the content column to a string, truncated to the maximum field
+   * length if there is one.
+   */
+  String fieldValue(String columnName, Object value, String docId) throws SQLException {
+    String strValue;
+    // Take care of java.sql.Date, java.sql.Time, and java.sql.Timestamp
+    if (value instanceof Date) {
+      strValue = convertDateToString(value);
+    } else if (value instanceof Clob){
+      Clob clob = (Clob) value;
+      if (maxFieldLength >= 0) {
+        strValue = clob.getSubString(1, (int) Math.min(clob.length(), maxFieldLength));
+      } else {
+        try {
+          strValue = IOUtils.toString(clob.getCharacterStream());
+        } catch (IOException e) {
+          throw new RuntimeException("Error reading clob for " + columnName,e);
+        }
+      }
+    } else {
+      strValue = value.toString();
+    }
+    if (maxFieldLength >= 0 && strValue.length() > maxFieldLength) {
+      log.trace("Truncating {} of {} from {} to {} characters", columnName, docId, strValue.length(), maxFieldLength);
+      strValue = strValue.substring(0, maxFieldLength);
+    }
+    return strValue;
+  }
 
-    // If the content column was specified
-    if (StringUtils.isNotBlank(contentColumn)) {
-      // Get its value.
-      Object content = rs.getObject(contentColumn);
+  /**
+   * Read the value of the content column onto the heap. Character values are encoded as UTF-8, as they are
+   * when spooled.
+   */
+  byte[] getContentBytes(Object content) throws SQLException {
+    byte[] rawBytes = null;
 
-      if (content != null) {
-        // Clob
-        if (content instanceof Clob) {
-          Clob clob = (Clob) content;
+    if (content != null) {
+      // Clob
+      if (content instanceof Clob) {
+        Clob clob = (Clob) content;
+        if (maxContentLength >= 0) {
+          rawBytes = clob.getSubString(1, heapLength(clob.length())).getBytes(StandardCharsets.UTF_8);
+        } else {
           try (Reader reader = clob.getCharacterStream()) {
-            rawBytes = CharStreams.toString(reader).getBytes();
+            rawBytes = CharStreams.toString(reader).getBytes(StandardCharsets.UTF_8);
           } catch (IOException ex) {
             String msg = String.format("I/O error while reading value of content column '%s'.", contentColumn);
             log.error(msg, ex);
           }
         }
-        // Blob
-        else if (content instanceof Blob) {
-          Blob blob = (Blob) content;
+      }
+      // Blob
+      else if (content instanceof Blob) {
+        Blob blob = (Blob) content;
+        if (maxContentLength >= 0) {
+          rawBytes = blob.getBytes(1, heapLength(blob.length()));
+        } else {
           try (InputStream stream = blob.getBinaryStream()) {
             rawBytes = IOUtils.toByteArray(stream);
           } catch (IOException ex) {
@@ -281,17 +587,61 @@ public class JdbcScanner extends ScannerImpl {
             log.error(msg, ex);
           }
         }
-        // Date (unlikely, but)
-        else if (content instanceof Date) {
-          rawBytes = convertDateToString(content).getBytes();
+      }
+      // Date (unlikely, but)
+      else if (content instanceof Date) {
+        rawBytes = convertDateToString(content).getBytes(StandardCharsets.UTF_8);
+      }
+      // Anything else
+      else {
+        rawBytes = content.toString().getBytes(StandardCharsets.UTF_8);
+      }
+    }
+    return rawBytes;
+  }
+
+  /**
+   * The number of bytes or characters of a LOB to read onto the heap, which must fit in an array however large
+   * the content length limit.
+   */
+  private int heapLength(long lobLength) {
+    return (int) Math.min(Math.min(lobLength, maxContentLength), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Copy a LOB content value larger than the spool threshold to a temporary file rather than the heap.
+   *
+   * @return the spooled content, or null if the content should be read onto the heap
+   */
+  ContentSource spoolContent(Object content) throws SQLException {
+    if (lobSpoolThreshold < 0 || !(content instanceof Clob || content instanceof Blob)) {
+      return null;
+    }
+    long limit = maxContentLength >= 0 ? maxContentLength : Long.MAX_VALUE;
+    try {
+      if (content instanceof Clob) {
+        Clob clob = (Clob) content;
+        if (clob.length() <= lobSpoolThreshold) {
+          return null;
+        }
+        try (Reader reader = clob.getCharacterStream()) {
+          return SpooledContentSource.spool(reader, limit, lobSpoolDir, mapSpooledLobs);
         }
-        // Anything else
-        else {
-          rawBytes = content.toString().getBytes();
+      } else {
+        Blob blob = (Blob) content;
+        if (blob.length() <= lobSpoolThreshold) {
+          return null;
+        }
+        try (InputStream stream = blob.getBinaryStream()) {
+          return SpooledContentSource.spool(stream, limit, lobSpoolDir, mapSpooledLobs);
         }
       }
+    } catch (IOException ex) {
+      // fall back to reading onto the heap
+      String msg = String.format("I/O error while spooling value of content column '%s'.", contentColumn);
+      log.error(msg, ex);
+      return null;
     }
-    return rawBytes;
   }
 
   private static String convertDateToString(Object value) {
@@ -302,13 +652,17 @@ public class JdbcScanner extends ScannerImpl {
   // Creates a statement to execute
   private Statement createStatement(Connection conn) throws SQLException {
     Statement statement = conn.createStatement(java.sql.ResultSet.TYPE_FORWARD_ONLY, java.sql.ResultSet.CONCUR_READ_ONLY);
+    configure(statement);
+    return statement;
+  }
+
+  private void configure(Statement statement) throws SQLException {
     if (fetchSize != -1) {
       statement.setFetchSize(fetchSize);
     }
     if (queryTimeout > 0) {
       statement.setQueryTimeout(queryTimeout);
     }
-    return statement;
   }
 
   // Gets the list of columns from the result set
@@ -352,11 +706,7 @@ public class JdbcScanner extends ScannerImpl {
   public Optional<Document> fetchById(String id, String origination) {
     String sql = "select * from " + this.table + " where " + this.getDatabasePkColumnName() + " = ?";
 
-    int slash = id.lastIndexOf("/") + 1;
-    int hash = id.indexOf('#');
-    int endOfParentDocId = hash < 0 ? id.length() : hash;
-    // theoretically could be some other unique indexed column, but usually it's the PK
-    String pkValue = id.substring(slash, endOfParentDocId);
+    String pkValue = pkValFromDocId(id);
     try (PreparedStatement preparedStatement = getConnection().prepareStatement(sql)) {
       preparedStatement.setString(1, pkValue);
       ResultSet resultSet = preparedStatement.executeQuery();
@@ -380,6 +730,63 @@ public class JdbcScanner extends ScannerImpl {
     return Optional.empty();
   }
 
+  /**
+   * Fetch documents with <code>IN (...)</code> queries of up to {@link #FETCH_IN_LIST_SIZE} keys. Every query
+   * uses the same prepared statement, the last chunk being padded by repeating its final key.
+   */
+  @Override
+  public Map<String, Document> fetchByIds(Collection<String> ids, String origination) {
+    // documents split from a row share its key, so one row may satisfy several ids
+    Map<String, List<String>> idsByPk = new LinkedHashMap<>();
+    for (String id : ids) {
+      idsByPk.computeIfAbsent(pkValFromDocId(id), (pk) -> new ArrayList<>()).add(id);
+    }
+    List<String> pkValues = new ArrayList<>(idsByPk.keySet());
+    int inSize = Math.min(FETCH_IN_LIST_SIZE, pkValues.size());
+    Map<String, Document> found = new LinkedHashMap<>();
+    if (inSize == 0) {
+      return found;
+    }
+    String sql = "select * from " + this.table + " where " + this.getDatabasePkColumnName() +
+        " in (" + String.join(",", Collections.nCopies(inSize, "?")) + ")";
+    try (PreparedStatement preparedStatement = getConnection().prepareStatement(sql)) {
+      for (int start = 0; start < pkValues.size(); start += inSize) {
+        List<String> chunk = pkValues.subList(start, Math.min(pkValues.size(), start + inSize));
+        for (int i = 0; i < inSize; i++) {
+          preparedStatement.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+        }
+        try (ResultSet resultSet = preparedStatement.executeQuery()) {
+          String[] columnNames = getColumnNames(resultSet);
+          int pkIdx = getDocIdColumnIndex(columnNames, getDatabasePkColumnName());
+          while (resultSet.next()) {
+            String pkValue = resultSet.getString(pkIdx);
+            for (String id : idsByPk.getOrDefault(pkValue, List.of())) {
+              found.put(id, makeDoc(resultSet, columnNames, docIdFromPkVal(pkValue)));
+            }
+          }
+        }
+      }
+    } catch (SQLException e) {
+      log.error("Error in sql to fetch documents:[{}] for {} ids", sql, ids.size());
+      log.error("Exception was:", e);
+    } catch (ConfigurationException | PersistenceException e) {
+      log.error("JDBC operation for {} failed in fetchByIds", getName());
+      log.error(e);
+    }
+    if (found.size() < ids.size()) {
+      log.warn("Did not find {} of {} requested documents", ids.size() - found.size(), ids.size());
+    }
+    return found;
+  }
+
+  // theoretically could be some other unique indexed column, but usually it's the PK
+  private static String pkValFromDocId(String id) {
+    int slash = id.lastIndexOf("/") + 1;
+    int hash = id.indexOf('#');
+    int endOfParentDocId = hash < 0 ? id.length() : hash;
+    return id.substring(slash, endOfParentDocId);
+  }
+
   private Connection getConnection() throws ConfigurationException, PersistenceException {
     if (!isConnected()) {
       connection = sqlUtils.createJdbcConnection(jdbcDriver, jdbcUrl, jdbcUser, jdbcPassword, autoCommit);
@@ -421,6 +828,30 @@ public class JdbcScanner extends ScannerImpl {
        return this;
     }
 
+    @Override
+    public JdbcScanner.Builder hashingWith(String algorithm) {
+      super.hashingWith(algorithm);
+      return this;
+    }
+
+    @Override
+    public JdbcScanner.Builder cachingHashes(int maxEntries, long maxBytes) {
+      super.cachingHashes(maxEntries, maxBytes);
+      return this;
+    }
+
+    @Override
+    public JdbcScanner.Builder snapshottingHashCacheTo(Path snapshot) {
+      super.snapshottingHashCacheTo(snapshot);
+      return this;
+    }
+
+    @Override
+    public JdbcScanner.Builder checkingMemoryInChunksOf(int size) {
+      super.checkingMemoryInChunksOf(size);
+      return this;
+    }
+
     @Override
     public StepImpl.Builder withShutdownWait(int millis) {
        super.withShutdownWait(millis);
@@ -468,6 +899,74 @@ public class JdbcScanner extends ScannerImpl {
       return this;
     }
 
+    /**
+     * Copy Blob or Clob values of the content column larger than a threshold to temporary files, and supply
+     * them to the document as lazily read content (see {@link Document#getRawContent()}) rather than as a byte
+     * array. Clobs are spooled as UTF-8. The files are deleted once the document is no longer reachable.
+     *
+     * @param length the largest value in bytes (Blob) or characters (Clob) to read onto the heap, or -1 to
+     *               never spool, the default
+     * @return this builder for additional configuration
+     */
+    public JdbcScanner.Builder spoolingLobsAbove(long length) {
+      getObj().lobSpoolThreshold = length;
+      return this;
+    }
+
+    /**
+     * The directory for spooled LOB content, by default the system temporary directory.
+     *
+     * @param dir the directory
+     * @return this builder for additional configuration
+     * @see #spoolingLobsAbove(long)
+     */
+    public JdbcScanner.Builder spoolingLobsTo(Path dir) {
+      getObj().lobSpoolDir = dir;
+      return this;
+    }
+
+    /**
+     * Memory map spooled LOB content rather than reading it through a stream.
+     *
+     * @param map true to memory map spooled content
+     * @return this builder for additional configuration
+     * @see #spoolingLobsAbove(long)
+     */
+    public JdbcScanner.Builder memoryMappingSpooledLobs(boolean map) {
+      getObj().mapSpooledLobs = map;
+      return this;
+    }
+
+    /**
+     * Truncate Blob or Clob values of the content column, so that no more than this is read from the
+     * database.
+     *
+     * @param length the number of bytes (Blob) or characters (Clob) to keep, or -1 for no limit, the default
+     * @return this builder for additional configuration
+     */
+    public JdbcScanner.Builder limitingContentLength(long length) {
+      if (length < -1) {
+        throw new IllegalArgumentException("Content length limit must be -1 (no limit) or more, got " + length);
+      }
+      getObj().maxContentLength = length;
+      return this;
+    }
+
+    /**
+     * Truncate the values of columns other than the content column, so that no more than this is read from
+     * Clob columns.
+     *
+     * @param length the number of characters to keep, or -1 for no limit, the default
+     * @return this builder for additional configuration
+     */
+    public JdbcScanner.Builder limitingFieldLength(int length) {
+      if (length < -1) {
+        throw new IllegalArgumentException("Field length limit must be -1 (no limit) or more, got " + length);
+      }
+      getObj().maxFieldLength = length;
+      return this;
+    }
+
     public JdbcScanner.Builder withPKColumn(String pkCol) {
       getObj().pkColumn = pkCol;
       return this;
@@ -479,6 +978,63 @@ public class JdbcScanner extends ScannerImpl {
       return this;
     }
 
+    /**
+     * Scan incrementally, reading only rows changed since the last scan. The first scan (and any scan before
+     * a mark has been recorded) uses the statement supplied to {@link #withSqlStatement(String)}. Afterwards
+     * the highest value of the watermark column seen in a complete scan is saved in the scanner's keyspace,
+     * and later scans execute the incremental statement with that value bound to its single parameter,
+     * e.g. <code>SELECT * FROM employee WHERE updated &gt;= ?</code>. The column must increase whenever a row
+     * changes (an update timestamp, a sequence or a rowversion), and must appear in the result set.
+     * <p>
+     * Prefer <code>&gt;=</code> to <code>&gt;</code> so that rows committed later with the same value as the
+     * mark are not missed. Rows at the mark are then read again on the next scan, which is harmless when
+     * remembering, and cheap. Deleted rows are not detected.
+     *
+     * @param column         the watermark column as labeled in the result set
+     * @param incrementalSql the statement for later scans, with one parameter for the mark
+     * @return this builder for additional configuration
+     */
+    public JdbcScanner.Builder incrementallyBy(String column, String incrementalSql) {
+      getObj().watermarkColumn = column;
+      getObj().incrementalSqlStatement = incrementalSql;
+      return this;
+    }
+
+    /**
+     * Read the table as several ranges of an integer primary key concurrently, each over its own connection.
+     * The range between the lowest and highest key selected by the statement is divided evenly, so keys
+     * should be spread fairly evenly across it. Partitions that complete are recorded, and if a scan fails to
+     * read some partitions, the next scan reads only those. When scanning incrementally (see
+     * {@link #incrementallyBy(String, String)}) only scans without a mark are partitioned.
+     *
+     * @param partitions the number of ranges
+     * @param threads    the number of ranges to read at once (and connections to open)
+     * @return this builder for additional configuration
+     */
+    public JdbcScanner.Builder partitioningByKeyRange(int partitions, int threads) {
+      return partitioningBy(null, partitions, threads);
+    }
+
+    /**
+     * Read the table as several partitions concurrently, each over its own connection, with partitions defined
+     * by an expression over the columns selected by the statement that yields an integer from 0 to
+     * partitions - 1, e.g. <code>MOD(ID, 8)</code>. Otherwise, as {@link #partitioningByKeyRange(int, int)}.
+     *
+     * @param expression the partition expression, or null to partition by ranges of the primary key
+     * @param partitions the number of partitions
+     * @param threads    the number of partitions to read at once (and connections to open)
+     * @return this builder for additional configuration
+     */
+    public JdbcScanner.Builder partitioningBy(String expression, int partitions, int threads) {
+      if (partitions < 1 || threads < 1) {
+        throw new IllegalArgumentException("partitions and threads must be positive");
+      }
+      getObj().partitionExpression = expression;
+      getObj().partitions = partitions;
+      getObj().partitionThreads = threads;
+      return this;
+    }
+
     public JdbcScanner.Builder withFetchSize(int fetchSize) {
       getObj().fetchSize = fetchSize;
       return this;
@@ -528,6 +1084,9 @@ public class JdbcScanner extends ScannerImpl {
         throw new IllegalStateException("jdbc driver, password, user, url, and the table being represented " +
             "must be supplied");
       }
+      if (obj.watermarkColumn != null && obj.incrementalSqlStatement == null) {
+        throw new IllegalStateException("incremental scans require a statement to select changed rows");
+      }
       super.build();
       JdbcScanner tmp = getObj();
       this.obj = new JdbcScanner();
@@ -584,4 +1143,39 @@ public class JdbcScanner extends ScannerImpl {
   public String getContentColumn() {
     return contentColumn;
   }
+
+  @SimpleProperty
+  public long getLobSpoolThreshold() {
+    return lobSpoolThreshold;
+  }
+
+  @SimpleProperty
+  public long getMaxContentLength() {
+    return maxContentLength;
+  }
+
+  @SimpleProperty
+  public int getMaxFieldLength() {
+    return maxFieldLength;
+  }
+
+  @SimpleProperty
+  public String getWatermarkColumn() {
+    return watermarkColumn;
+  }
+
+  @SimpleProperty
+  public String getIncrementalSqlStatement() {
+    return incrementalSqlStatement;
+  }
+
+  @SimpleProperty
+  public int getPartitions() {
+    return partitions;
+  }
+
+  @SimpleProperty
+  public String getPartitionExpression() {
+    return partitionExpression;
+  }
 }
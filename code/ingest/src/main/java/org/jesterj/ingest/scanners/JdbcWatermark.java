@@ -0,0 +1,137 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jesterj.ingest.scanners;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+
+/**
+ * Conversions for the high water mark of an incremental JDBC scan. Marks are compared in the form the driver
+ * returns them (with integer types widened so that values read before and after a restart compare equal),
+ * and persisted as a string tagged with the type needed to bind them as a query parameter again.
+ */
+final class JdbcWatermark {
+
+  private JdbcWatermark() {
+  }
+
+  /**
+   * Widen integer types so that marks of one column always have a single type.
+   *
+   * @param value a value from a result set
+   * @return the value in the form used for comparison and binding
+   */
+  static Object normalize(Object value) {
+    if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      return ((Number) value).longValue();
+    }
+    if (value instanceof BigInteger) {
+      return new BigDecimal((BigInteger) value);
+    }
+    return value;
+  }
+
+  /**
+   * The greater of two marks, either of which may be null.
+   *
+   * @param a a normalized mark
+   * @param b another normalized mark of the same column
+   * @return the greater mark, or null if both are null
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  static Object max(Object a, Object b) {
+    if (a == null) {
+      return b;
+    }
+    if (b == null) {
+      return a;
+    }
+    if (a instanceof byte[] && b instanceof byte[]) {
+      return Arrays.compareUnsigned((byte[]) a, (byte[]) b) >= 0 ? a : b;
+    }
+    return ((Comparable) a).compareTo(b) >= 0 ? a : b;
+  }
+
+  static String encode(Object value) {
+    if (value instanceof Timestamp) {
+      return "T:" + value;
+    }
+    if (value instanceof java.sql.Date) {
+      return "D:" + value;
+    }
+    if (value instanceof Long) {
+      return "L:" + value;
+    }
+    if (value instanceof BigDecimal) {
+      return "N:" + ((BigDecimal) value).toPlainString();
+    }
+    if (value instanceof LocalDateTime) {
+      return "LDT:" + value;
+    }
+    if (value instanceof OffsetDateTime) {
+      return "ODT:" + value;
+    }
+    if (value instanceof byte[]) {
+      return "B:" + Hex.encodeHexString((byte[]) value);
+    }
+    if (value instanceof String) {
+      return "S:" + value;
+    }
+    throw new IllegalArgumentException("Unsupported watermark type " + value.getClass().getName() +
+        ", use a timestamp, date, number, string or binary (rowversion) column");
+  }
+
+  static Object decode(String encoded) {
+    int colon = encoded.indexOf(':');
+    if (colon < 0) {
+      throw new IllegalArgumentException("Not a watermark: " + encoded);
+    }
+    String value = encoded.substring(colon + 1);
+    switch (encoded.substring(0, colon)) {
+      case "T":
+        return Timestamp.valueOf(value);
+      case "D":
+        return java.sql.Date.valueOf(value);
+      case "L":
+        return Long.valueOf(value);
+      case "N":
+        return new BigDecimal(value);
+      case "LDT":
+        return LocalDateTime.parse(value);
+      case "ODT":
+        return OffsetDateTime.parse(value);
+      case "B":
+        try {
+          return Hex.decodeHex(value);
+        } catch (DecoderException e) {
+          throw new IllegalArgumentException("Not a watermark: " + encoded, e);
+        }
+      case "S":
+        return value;
+      default:
+        throw new IllegalArgumentException("Not a watermark: " + encoded);
+    }
+  }
+}
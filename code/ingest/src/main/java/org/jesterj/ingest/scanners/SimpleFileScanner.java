@@ -18,9 +18,12 @@ package org.jesterj.ingest.scanners;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import org.jesterj.ingest.forkjoin.JesterJForkJoinThreadFactory;
 import org.jesterj.ingest.model.Document;
 import org.jesterj.ingest.model.Router;
 import org.jesterj.ingest.model.impl.DocumentImpl;
+import org.jesterj.ingest.model.impl.FileContentSource;
 import org.jesterj.ingest.model.impl.ScannerImpl;
 import org.jesterj.ingest.routers.RouterBase;
 import org.jetbrains.annotations.NotNull;
@@ -31,12 +34,21 @@ import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryUsage;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -45,7 +57,8 @@ import java.util.concurrent.atomic.AtomicInteger;
  * so it is highly recommended to use this with the remembering option turned on unless a regular full re-index is
  * desired. If walking the filesystem takes longer than the scan interval, the time to walk will determine
  * the index latency instead. This scanner will not start a new scan until the current one completes.
- * Files to be processed must fit in JVM memory.
+ * Files to be processed must fit in JVM memory, unless they are large enough to be read lazily (see
+ * {@link Builder#readingLazilyAbove(long)}), in which case their content is streamed from disk as needed.
  */
 @SuppressWarnings("SameParameterValue")
 public class SimpleFileScanner extends ScannerImpl implements FileScanner {
@@ -60,6 +73,15 @@ public class SimpleFileScanner extends ScannerImpl implements FileScanner {
   private final MemoryUsage heapMemoryUsage;
   private int memWaitTimeout;
   private boolean includeAccessTime = false; // by default
+  private long lazyContentThreshold = -1; // always read files onto the heap by default
+  private boolean mapLazyContent = false;
+  private int walkParallelism = 1;
+  private boolean skipUnchanged = false;
+  private Path fileStateSnapshot;
+  private volatile FileStateIndex fileStates;
+  private boolean watching = false;
+  private volatile DirectoryWatcher watcher;
+  private final AtomicBoolean fullWalkNeeded = new AtomicBoolean(true);
 
   @SuppressWarnings("WeakerAccess")
   protected SimpleFileScanner() {
@@ -75,14 +97,38 @@ public class SimpleFileScanner extends ScannerImpl implements FileScanner {
       synchronized (SimpleFileScanner.SCAN_LOCK) {
         log.trace("Acquired lock on " + SimpleFileScanner.this);
         setScanning(true); // ensure initial walk completes before new scans are started.
+        if (watching && !startWatching()) {
+          log.trace("Watching for changes, no walk needed");
+          try {
+            processDirty();
+          } finally {
+            setScanning(false);
+          }
+          return;
+        }
+        FileStateIndex states = fileStateIndex();
+        if (states != null) {
+          states.startWalk();
+        }
+        boolean complete = false;
         try {
           log.trace("About to walk");
-          Files.walkFileTree(rootDir.toPath(), new RootWalker());
+          if (walkParallelism > 1) {
+            walkInParallel();
+          } else {
+            FoundDocs found = new FoundDocs();
+            Files.walkFileTree(rootDir.toPath(), new RootWalker(found));
+            found.flush();
+          }
+          complete = true;
           log.trace("FileWalk complete");
         } catch (IOException e) {
           log.error("failed to walk filesystem!", e);
           throw new RuntimeException(e);
         } finally {
+          if (states != null) {
+            states.finishWalk(complete);
+          }
           processDirty();
           setScanning(false);
         }
@@ -157,6 +203,12 @@ public class SimpleFileScanner extends ScannerImpl implements FileScanner {
   }
 
   private class RootWalker extends SimpleFileVisitor<Path> {
+    private final FoundDocs found;
+
+    RootWalker(FoundDocs found) {
+      this.found = found;
+    }
+
     @Override
     public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
       return FileVisitResult.CONTINUE;
@@ -164,17 +216,7 @@ public class SimpleFileScanner extends ScannerImpl implements FileScanner {
 
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-      log.trace("found file {}", file);
-      File asFile = file.toFile();
-      if (includes == null || includes.accept(asFile)) {
-        if (docPerLine != null && docPerLine.accept(asFile)) {
-          makeLineDocs(file, Document.Operation.NEW, attrs, SCAN_ORIGIN);
-        } else {
-          Optional<Document> document = makeDoc(file, Document.Operation.NEW, attrs, SCAN_ORIGIN);
-          log.trace("Created:{}", document::get);
-          document.ifPresent(SimpleFileScanner.this::docFound);
-        }
-      }
+      SimpleFileScanner.this.visitFile(file, attrs, found);
       return FileVisitResult.CONTINUE;
     }
 
@@ -190,7 +232,228 @@ public class SimpleFileScanner extends ScannerImpl implements FileScanner {
     }
   }
 
-  private void makeLineDocs(Path file, Document.Operation operation, BasicFileAttributes attributes, String origination) {
+  private void visitFile(Path file, BasicFileAttributes attrs, FoundDocs found) {
+    log.trace("found file {}", file);
+    File asFile = file.toFile();
+    if (includes == null || includes.accept(asFile)) {
+      FileStateIndex states = fileStates;
+      String key = file.toString();
+      if (skipUnchanged && states != null && states.isUnchanged(key, attrs)) {
+        log.trace("Skipping unchanged file {}", file);
+        return;
+      }
+      if (states != null) {
+        // recorded before the documents are sent, so that an error reported for them (see docErrored) is not
+        // overwritten
+        states.record(key, attrs);
+      }
+      if (docPerLine != null && docPerLine.accept(asFile)) {
+        makeLineDocs(file, Document.Operation.NEW, attrs, SCAN_ORIGIN, found);
+      } else {
+        Optional<Document> document = makeDoc(file, Document.Operation.NEW, attrs, SCAN_ORIGIN);
+        log.trace("Created:{}", document::get);
+        document.ifPresent(found::found);
+      }
+    }
+  }
+
+  /**
+   * Invalidate the recorded state of the file a failed document came from, so that the next walk reads it again
+   * rather than skipping it as unchanged.
+   *
+   * @param doc the document that errored
+   */
+  @Override
+  protected void docErrored(Document doc) {
+    FileStateIndex states = fileStates;
+    if (states == null) {
+      return;
+    }
+    // the original id is the real path of the file (plus a line fragment) before any id function was applied
+    String id = doc.getOrignalParentId();
+    int fragment = id.indexOf('#');
+    try {
+      Path file = new File(new URI(fragment < 0 ? id : id.substring(0, fragment))).toPath();
+      Path root = rootDir.toPath();
+      states.invalidate(root.resolve(root.toRealPath().relativize(file)).toString());
+      log.debug("Invalidated the state of {} so that it will be read again", file);
+    } catch (URISyntaxException | IllegalArgumentException | IOException e) {
+      log.warn("Could not find the file for errored document {}, it will not be read again until it changes", id, e);
+    }
+  }
+
+  private void walkInParallel() {
+    ForkJoinPool pool = new ForkJoinPool(walkParallelism, new JesterJForkJoinThreadFactory(), null, false);
+    try {
+      pool.invoke(new DirectoryWalk(rootDir.toPath(), ThreadContext.getImmutableContext()));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Walks one directory, forking a task for each subdirectory, so that large trees are listed, filtered and
+   * read by several threads. Each task hands its files to the scanner in chunks of its own.
+   */
+  private class DirectoryWalk extends RecursiveAction {
+    private final Path dir;
+    private final Map<String, String> logContext;
+
+    DirectoryWalk(Path dir, Map<String, String> logContext) {
+      this.dir = dir;
+      this.logContext = logContext;
+    }
+
+    @Override
+    protected void compute() {
+      ThreadContext.putAll(logContext);
+      List<DirectoryWalk> subdirs = new ArrayList<>();
+      FoundDocs found = new FoundDocs();
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+        for (Path entry : entries) {
+          BasicFileAttributes attrs;
+          try {
+            attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+          } catch (IOException e) {
+            log.warn("unable to scan file " + entry, e);
+            continue;
+          }
+          if (attrs.isDirectory()) {
+            DirectoryWalk walk = new DirectoryWalk(entry, logContext);
+            walk.fork();
+            subdirs.add(walk);
+          } else {
+            visitFile(entry, attrs, found);
+          }
+        }
+      } catch (IOException e) {
+        log.warn("unable to scan directory " + dir, e);
+      }
+      found.flush();
+      for (DirectoryWalk walk : subdirs) {
+        walk.join();
+      }
+    }
+  }
+
+  /**
+   * Start the watcher if it is not running, and decide if a full walk is required. A walk is required when
+   * watching begins, since changes made while not watching are unknown, and after the watcher loses events.
+   *
+   * @return true if a full walk is required
+   */
+  private boolean startWatching() {
+    DirectoryWatcher current = watcher;
+    if (current != null && current.isRunning()) {
+      return fullWalkNeeded.getAndSet(false);
+    }
+    try {
+      if (current != null) {
+        current.close();
+      }
+      Path root = rootDir.toPath();
+      Path realRoot = root.toRealPath();
+      DirectoryWatcher started = new DirectoryWatcher(root, new DirectoryWatcher.Listener() {
+        @Override
+        public void changes(Collection<Path> changed, Collection<Path> deleted) {
+          changesFound(changed, deleted, root, realRoot);
+        }
+
+        @Override
+        public void overflowed() {
+          fullWalkNeeded.set(true);
+        }
+      });
+      started.start(getName() + "-watcher", ThreadContext.getImmutableContext());
+      watcher = started;
+    } catch (IOException e) {
+      log.error("Could not watch {}, changes will be found by walking at each scan", rootDir, e);
+    }
+    fullWalkNeeded.set(false);
+    return true;
+  }
+
+  private void changesFound(Collection<Path> changed, Collection<Path> deleted, Path root, Path realRoot) {
+    log.debug("Watcher found {} changed and {} deleted files", changed.size(), deleted.size());
+    FoundDocs found = new FoundDocs();
+    for (Path file : changed) {
+      try {
+        visitFile(file, Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS), found);
+      } catch (IOException e) {
+        // most likely deleted again already, in which case we will hear about it.
+        log.debug("unable to scan changed file " + file, e);
+      }
+    }
+    for (String id : deletedIds(deleted, root, realRoot)) {
+      DocumentImpl doc = docWithAttrs(Document.Operation.DELETE, null, SCAN_ORIGIN, null, id);
+      // a deletion must be sent even if this id has been seen before (which it almost always has)
+      doc.setForceReprocess(true);
+      found.found(doc);
+    }
+    found.flush();
+  }
+
+  /**
+   * Determine the ids of the documents to delete for deleted paths. A deleted path may have been a file or a
+   * directory, so the files found within it are looked up in the record of files found, which is kept
+   * whenever watching. Only files accepted by {@link Builder#acceptOnly(FileFilter)} are recorded, and files
+   * split by {@link Builder#docPerLineIfMatches(FileFilter)} produce an id for each line. Deleted paths are
+   * forgotten.
+   *
+   * @param deleted  the deleted paths, as reported by the watcher
+   * @param root     the root of the walk
+   * @param realRoot the real path of the root
+   * @return the ids of the documents to delete
+   */
+  List<String> deletedIds(Collection<Path> deleted, Path root, Path realRoot) {
+    FileStateIndex states = fileStateIndex();
+    List<String> ids = new ArrayList<>();
+    for (Path path : deleted) {
+      Map<String, Long> files = states.forgetTree(path.toString(), path.getFileSystem().getSeparator());
+      for (Map.Entry<String, Long> file : files.entrySet()) {
+        // the file no longer exists, so its real path must be derived from the root's
+        Path filePath = path.getFileSystem().getPath(file.getKey());
+        String id = realRoot.resolve(root.relativize(filePath)).toUri().toASCIIString();
+        long lines = file.getValue();
+        if (lines >= 0) {
+          for (long line = 1; line <= lines; line++) {
+            ids.add(id + "#L" + line);
+          }
+        } else if (docPerLine != null && docPerLine.accept(filePath.toFile())) {
+          log.warn("Number of lines in deleted file {} is not known, its documents can not be deleted", file.getKey());
+        } else {
+          ids.add(id);
+        }
+      }
+    }
+    return ids;
+  }
+
+  @Override
+  public void deactivate() {
+    super.deactivate();
+    DirectoryWatcher current = watcher;
+    if (current != null) {
+      try {
+        current.close();
+      } catch (IOException e) {
+        log.warn("Could not stop watching {}", rootDir, e);
+      }
+      watcher = null;
+    }
+  }
+
+  FileStateIndex fileStateIndex() {
+    // watching needs to know which files were found, in order to delete the contents of deleted directories
+    if ((skipUnchanged || watching) && fileStates == null) {
+      FileStateIndex index = new FileStateIndex(fileStateSnapshot);
+      index.load();
+      fileStates = index;
+    }
+    return fileStates;
+  }
+
+  private void makeLineDocs(Path file, Document.Operation operation, BasicFileAttributes attributes, String origination, FoundDocs found) {
     try (LineNumberReader reader = new LineNumberReader(new FileReader(file.toFile()))) {
       long bytesRead = 0;
       while (true) {
@@ -207,7 +470,11 @@ public class SimpleFileScanner extends ScannerImpl implements FileScanner {
         DocumentImpl doc = docWithAttrs(operation, attributes, origination, rawData, id);
         doc.put("__LINE_NUMBER__", String.valueOf(reader.getLineNumber()));
         log.trace("Bytes Read:{}", rawData.length);
-        docFound(doc);
+        found.found(doc);
+      }
+      FileStateIndex states = fileStates;
+      if (states != null) {
+        states.recordLines(file.toString(), reader.getLineNumber());
       }
     } catch (IOException e) {
       log.error("Could not read bytes from file:" + file, e);
@@ -232,9 +499,12 @@ public class SimpleFileScanner extends ScannerImpl implements FileScanner {
   }
 
   private Optional<Document> makeDoc(Path file, Document.Operation operation, BasicFileAttributes attributes, String origination) {
+    long size = attributes.size();
+    if (lazyContentThreshold >= 0 && size > lazyContentThreshold) {
+      return makeLazyDoc(file, operation, attributes, origination, size);
+    }
     byte[] rawData = new byte[0];
     try {
-      long size = attributes.size();
       memThrottle(size, "Timed out waiting for available memory to process file (" + size + " bytes):" + file);
       rawData = Files.readAllBytes(file);
       log.trace("Bytes Read:{}", rawData.length);
@@ -255,6 +525,20 @@ public class SimpleFileScanner extends ScannerImpl implements FileScanner {
     }
   }
 
+  private Optional<Document> makeLazyDoc(Path file, Document.Operation operation, BasicFileAttributes attributes, String origination, long size) {
+    try {
+      String id = file.toRealPath().toUri().toASCIIString();
+      DocumentImpl doc = docWithAttrs(operation, attributes, origination, null, id);
+      doc.setRawContent(new FileContentSource(file, size, mapLazyContent));
+      doc.put(Document.DOC_RAW_SIZE, String.valueOf(size));
+      log.trace("Deferred reading {} bytes from {}", size, file);
+      return Optional.of(doc);
+    } catch (IOException e) {
+      log.error("Could not resolve file path. Skipping:" + file, e);
+      return Optional.empty();
+    }
+  }
+
   private void memThrottle(long size, String message) throws InterruptedException {
     long memWaitStart = System.currentTimeMillis();
     int count = 0;
@@ -335,6 +619,12 @@ public class SimpleFileScanner extends ScannerImpl implements FileScanner {
       return this;
     }
 
+    @Override
+    public SimpleFileScanner.Builder checkingMemoryInChunksOf(int size) {
+      super.checkingMemoryInChunksOf(size);
+      return this;
+    }
+
     public SimpleFileScanner.Builder memoryAvailabilityTimeout(int ms) {
       getObj().memWaitTimeout = ms;
       return this;
@@ -355,6 +645,95 @@ public class SimpleFileScanner extends ScannerImpl implements FileScanner {
       return this;
     }
 
+    /**
+     * Find changes as they happen with a {@link java.nio.file.WatchService} rather than by walking the file
+     * system at each scan. The file system is walked in full when the scanner starts, and afterwards only if
+     * the watch service reports that events were lost, which is checked at the scan interval. Created and
+     * modified files are sent on within a fraction of a second, and deleted files are sent on as deletions,
+     * including the files within a deleted directory and the documents for each line of files split by
+     * {@link #docPerLineIfMatches(FileFilter)}. To do so, the modification time and size of each file found are
+     * kept in memory, as they are for {@link #skippingUnchangedFiles(boolean)}. Note that some operating systems
+     * and most network file systems do not support watching efficiently or at all.
+     *
+     * @param watch true to watch for changes
+     * @return this builder for additional configuration
+     */
+    public SimpleFileScanner.Builder watchingForChanges(boolean watch) {
+      getObj().watching = watch;
+      return this;
+    }
+
+    /**
+     * Walk the file system with several threads, each listing a directory and reading the files in it, with
+     * subdirectories shared among the threads as they are found. Useful for very large trees, or storage
+     * with high latency such as network shares. Note that documents will no longer be found in the order of
+     * a depth first walk.
+     *
+     * @param threads the number of threads to walk with, values less than 2 walk with the scan thread alone
+     *                (the default)
+     * @return this builder for additional configuration
+     */
+    public SimpleFileScanner.Builder walkingWithThreads(int threads) {
+      getObj().walkParallelism = threads;
+      return this;
+    }
+
+    /**
+     * Skip files whose modification time and size are unchanged since the last walk found them, without
+     * reading their content. Unlike remembering, which hashes or looks up each file found, this avoids
+     * all work on unchanged files, but will not notice a file rewritten with the same size and timestamp. The
+     * record of files is kept in memory, and may also be saved between runs with
+     * {@link #savingFileStateTo(Path)}.
+     *
+     * @param skip true to skip unchanged files
+     * @return this builder for additional configuration
+     */
+    public SimpleFileScanner.Builder skippingUnchangedFiles(boolean skip) {
+      getObj().skipUnchanged = skip;
+      return this;
+    }
+
+    /**
+     * Save the record of files kept by {@link #skippingUnchangedFiles(boolean)} to the supplied file after
+     * each walk, and load it when the scanner first runs, so that unchanged files are skipped after a restart.
+     *
+     * @param snapshot the file in which to keep the record
+     * @return this builder for additional configuration
+     */
+    public SimpleFileScanner.Builder savingFileStateTo(Path snapshot) {
+      getObj().fileStateSnapshot = snapshot;
+      return this;
+    }
+
+    /**
+     * Files larger than the supplied size are not read when they are found. Instead, documents for them carry
+     * a {@link FileContentSource} that is read when a processor asks for the content, so that processors
+     * able to stream the content (such as {@link org.jesterj.ingest.processors.TikaProcessor}) never need to
+     * hold it on the heap. Such files also bypass the wait for available memory. Content is read at the
+     * time of processing, not the time of the scan. Files in {@link #docPerLineIfMatches(FileFilter)} are
+     * not affected.
+     *
+     * @param bytes the size above which files are read lazily, or a negative number to always read files
+     *              when they are found (the default)
+     * @return this builder for additional configuration
+     */
+    public SimpleFileScanner.Builder readingLazilyAbove(long bytes) {
+      getObj().lazyContentThreshold = bytes;
+      return this;
+    }
+
+    /**
+     * Memory map files that are read lazily rather than reading them through a stream.
+     *
+     * @param map true to memory map lazy content
+     * @return this builder for additional configuration
+     * @see #readingLazilyAbove(long)
+     */
+    public SimpleFileScanner.Builder memoryMappingLazyContent(boolean map) {
+      getObj().mapLazyContent = map;
+      return this;
+    }
+
     @Override
     public ScannerImpl build() {
       SimpleFileScanner tmp = obj;
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jesterj.ingest.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Creates daemon threads for steps and scanners, using virtual threads when requested and available. Virtual
+ * threads are accessed reflectively so that JesterJ continues to run on JVMs that predate them.
+ */
+public class ThreadMaker {
+  private static final Logger log = LogManager.getLogger();
+
+  private static final Method OF_VIRTUAL;
+  private static final Method BUILDER_NAME;
+  private static final Method BUILDER_UNSTARTED;
+
+  static {
+    Method ofVirtual = null;
+    Method name = null;
+    Method unstarted = null;
+    try {
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      Class<?> builder = Class.forName("java.lang.Thread$Builder");
+      name = builder.getMethod("name", String.class);
+      unstarted = builder.getMethod("unstarted", Runnable.class);
+    } catch (NoSuchMethodException | ClassNotFoundException e) {
+      log.debug("Virtual threads not available in this JVM");
+    }
+    OF_VIRTUAL = ofVirtual;
+    BUILDER_NAME = name;
+    BUILDER_UNSTARTED = unstarted;
+  }
+
+  /**
+   * Test if this JVM can create virtual threads.
+   *
+   * @return true if virtual threads are available
+   */
+  public boolean isVirtualThreadSupported() {
+    return OF_VIRTUAL != null;
+  }
+
+  /**
+   * Create a new unstarted daemon thread.
+   *
+   * @param task    the runnable for the thread to execute
+   * @param name    the name for the thread
+   * @param virtual true if a virtual thread is desired. Ignored (with a warning) if virtual threads are not
+   *                supported by this JVM.
+   * @return a thread that has not yet been started
+   */
+  public Thread newThread(Runnable task, String name, boolean virtual) {
+    if (virtual) {
+      if (isVirtualThreadSupported()) {
+        try {
+          Object builder = OF_VIRTUAL.invoke(null);
+          builder = BUILDER_NAME.invoke(builder, name);
+          return (Thread) BUILDER_UNSTARTED.invoke(builder, task);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+          throw new RuntimeException("Unable to create virtual thread " + name, e);
+        }
+      }
+      log.warn("Virtual threads requested for {} but not supported by this JVM ({}), using a platform thread",
+          name, System.getProperty("java.version"));
+    }
+    Thread thread = new Thread(task);
+    thread.setName(name);
+    thread.setDaemon(true);
+    return thread;
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jesterj.ingest.logging;
+
+import com.copyright.easiertest.Mock;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import org.jesterj.ingest.model.exception.PersistenceException;
+import org.jesterj.ingest.persistence.CassandraSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.copyright.easiertest.EasierMocks.*;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.same;
+import static org.jesterj.ingest.logging.FtiStatusWriter.WRITE_RETRIES;
+import static org.junit.Assert.*;
+
+public class FtiStatusWriterTest {
+  @Mock private CassandraSupport cassandraMock;
+  @Mock private CqlSession sessionMock;
+  @Mock private BoundStatement statementA1;
+  @Mock private BoundStatement statementA2;
+  @Mock private BoundStatement statementB;
+  @Mock private AsyncResultSet resultMock;
+
+  public FtiStatusWriterTest() {
+    prepareMocks(this);
+  }
+
+  @Before
+  public void setUp() {
+    reset();
+  }
+
+  @After
+  public void tearDown() {
+    verify();
+  }
+
+  @Test
+  public void testFlushGroupsByPartition() throws Exception {
+    FtiStatusWriter writer = new FtiStatusWriter(cassandraMock, true);
+    expect(cassandraMock.getSession()).andReturn(sessionMock);
+    // both events for docA in one unlogged batch, docB on its own
+    expect(sessionMock.executeAsync(isA(BatchStatement.class))).andReturn(CompletableFuture.completedFuture(resultMock));
+    expect(sessionMock.executeAsync(same(statementB))).andReturn(CompletableFuture.completedFuture(resultMock));
+    replay();
+    writer.flush(List.of(
+        new FtiStatusWriter.PendingWrite(1, "ks", "docA", statementA1),
+        new FtiStatusWriter.PendingWrite(2, "ks", "docB", statementB),
+        new FtiStatusWriter.PendingWrite(3, "ks", "docA", statementA2)));
+    assertEquals(3, writer.getStatusesWritten());
+    assertEquals(0, writer.getWriteFailures());
+    assertEquals(1, writer.getFlushCount());
+  }
+
+  @Test
+  public void testFailedWriteIsRetried() throws Exception {
+    FtiStatusWriter writer = new FtiStatusWriter(cassandraMock, true);
+    expect(cassandraMock.getSession()).andReturn(sessionMock).times(2);
+    expect(sessionMock.executeAsync(same(statementA1)))
+        .andReturn(CompletableFuture.failedFuture(new RuntimeException("timeout")));
+    expect(sessionMock.executeAsync(same(statementA1))).andReturn(CompletableFuture.completedFuture(resultMock));
+    replay();
+    writer.write("ks", "docA", statementA1);
+    writer.awaitDurable(List.of("docA"));
+    assertEquals(1, writer.getStatusesWritten());
+    assertEquals(0, writer.getWriteFailures());
+    writer.shutdown();
+  }
+
+  @Test
+  public void testLostWriteFailsAwait() throws Exception {
+    FtiStatusWriter writer = new FtiStatusWriter(cassandraMock, true);
+    expect(cassandraMock.getSession()).andReturn(sessionMock).times(WRITE_RETRIES + 1);
+    expect(sessionMock.executeAsync(same(statementA1)))
+        .andReturn(CompletableFuture.failedFuture(new RuntimeException("unavailable"))).times(WRITE_RETRIES + 1);
+    replay();
+    writer.write("ks", "docA", statementA1);
+    // statuses for other documents are not affected
+    writer.awaitDurable(List.of("docB"));
+    try {
+      writer.awaitDurable(List.of("docB", "docA"));
+      fail("lost status for docA was reported as durable");
+    } catch (PersistenceException e) {
+      assertTrue(e.getMessage().contains("[docA]"));
+    }
+    // reported once
+    writer.awaitDurable(List.of("docA"));
+    assertEquals(0, writer.getStatusesWritten());
+    assertEquals(1, writer.getWriteFailures());
+    writer.shutdown();
+  }
+
+  @Test
+  public void testSynchronousWrite() throws Exception {
+    FtiStatusWriter writer = new FtiStatusWriter(cassandraMock, false);
+    expect(cassandraMock.getSession()).andReturn(sessionMock);
+    expect(sessionMock.execute(same(statementA1))).andReturn(null);
+    replay();
+    writer.write("ks", "docA", statementA1);
+    writer.awaitDurable(List.of("docA"));
+    assertEquals(0, writer.getQueueDepth());
+  }
+
+  @Test
+  public void testShutdownUnregistersMBean() throws Exception {
+    FtiStatusWriter writer = new FtiStatusWriter(cassandraMock, true);
+    expect(cassandraMock.getSession()).andReturn(sessionMock);
+    expect(sessionMock.executeAsync(same(statementA1))).andReturn(CompletableFuture.completedFuture(resultMock));
+    replay();
+    ObjectName name = new ObjectName(FtiStatusWriter.MBEAN_NAME);
+    writer.write("ks", "docA", statementA1);
+    writer.awaitDurable(List.of("docA"));
+    assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    writer.shutdown();
+    assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+  }
+
+  @Test
+  public void testShutdownReleasesWaiters() throws Exception {
+    FtiStatusWriter writer = new FtiStatusWriter(cassandraMock, true);
+    CompletableFuture<AsyncResultSet> hung = new CompletableFuture<>();
+    expect(cassandraMock.getSession()).andReturn(sessionMock).times(2);
+    expect(sessionMock.executeAsync(same(statementA1))).andReturn(hung);
+    expect(sessionMock.execute(same(statementB))).andReturn(null);
+    replay();
+    writer.write("ks", "docA", statementA1);
+    ExecutorService threads = Executors.newFixedThreadPool(2);
+    try {
+      Future<?> waiter = threads.submit(() -> {
+        writer.awaitDurable(List.of("docA"));
+        return null;
+      });
+      Thread.sleep(100);
+      assertFalse(waiter.isDone());
+      Future<?> shutdown = threads.submit(() -> {
+        writer.shutdown();
+        return null;
+      });
+      try {
+        waiter.get(5, TimeUnit.SECONDS);
+        fail("unwritten status was reported as durable");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof InterruptedException);
+      }
+      hung.complete(resultMock);
+      shutdown.get(5, TimeUnit.SECONDS);
+    } finally {
+      threads.shutdownNow();
+    }
+    assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(FtiStatusWriter.MBEAN_NAME)));
+    // written directly once the background thread is gone
+    writer.write("ks", "docB", statementB);
+    assertEquals(0, writer.getQueueDepth());
+  }
+}
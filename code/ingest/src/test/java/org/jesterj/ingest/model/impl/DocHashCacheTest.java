@@ -0,0 +1,122 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jesterj.ingest.model.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DocHashCacheTest {
+
+  private static final long DAY = 24 * 60 * 60 * 1000L;
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testOnlyMatchingHashIsUnchanged() {
+    DocHashCache cache = new DocHashCache(10, Long.MAX_VALUE, DAY, null);
+    assertFalse(cache.isUnchanged("a", "1"));
+    cache.put("a", "1");
+    assertTrue(cache.isUnchanged("a", "1"));
+    assertFalse(cache.isUnchanged("a", "2"));
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    DocHashCache cache = new DocHashCache(2, Long.MAX_VALUE, DAY, null);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    assertTrue(cache.isUnchanged("a", "1")); // touch a
+    cache.put("c", "3");
+    assertEquals(2, cache.size());
+    assertTrue(cache.isUnchanged("a", "1"));
+    assertFalse(cache.isUnchanged("b", "2"));
+    assertTrue(cache.isUnchanged("c", "3"));
+  }
+
+  @Test
+  public void testEvictsByBytes() {
+    // each entry is a bit over 96 bytes
+    DocHashCache cache = new DocHashCache(100, 250, DAY, null);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    cache.put("c", "3");
+    assertEquals(2, cache.size());
+    assertFalse(cache.isUnchanged("a", "1"));
+  }
+
+  @Test
+  public void testSnapshotRoundTrip() throws Exception {
+    Path file = tmp.getRoot().toPath().resolve("hashes.bin");
+    DocHashCache cache = new DocHashCache(10, Long.MAX_VALUE, DAY, file);
+    cache.put("file:///tmp/\u00e9t\u00e9.txt", "abc");
+    cache.put("b", "def");
+    cache.save();
+
+    DocHashCache reloaded = new DocHashCache(10, Long.MAX_VALUE, DAY, file);
+    reloaded.load();
+    assertEquals(2, reloaded.size());
+    assertTrue(reloaded.isUnchanged("file:///tmp/\u00e9t\u00e9.txt", "abc"));
+    assertTrue(reloaded.isUnchanged("b", "def"));
+  }
+
+  @Test
+  public void testExpiresFromStoredTime() {
+    DocHashCache cache = new DocHashCache(10, Long.MAX_VALUE, DAY, null);
+    long now = System.currentTimeMillis();
+    cache.put("a", "1", now - DAY / 2);
+    cache.put("b", "2", now - 2 * DAY);
+    assertTrue(cache.isUnchanged("a", "1"));
+    assertFalse(cache.isUnchanged("b", "2"));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testExpiredEntriesNotLoaded() {
+    Path file = tmp.getRoot().toPath().resolve("hashes.bin");
+    DocHashCache cache = new DocHashCache(10, Long.MAX_VALUE, DAY, file);
+    cache.put("a", "1");
+    cache.save();
+
+    DocHashCache reloaded = new DocHashCache(10, Long.MAX_VALUE, -1, file);
+    reloaded.load();
+    assertEquals(0, reloaded.size());
+  }
+
+  @Test
+  public void testCorruptSnapshotLoadsEmpty() throws Exception {
+    Path file = tmp.getRoot().toPath().resolve("hashes.bin");
+    for (int length : new int[]{-5, 1000}) {
+      ByteBuffer corrupt = ByteBuffer.allocate(28);
+      corrupt.putInt(0x4A4A4843).putInt(1).putInt(1).putLong(System.currentTimeMillis()).putInt(length).putInt(0);
+      Files.write(file, corrupt.array());
+
+      DocHashCache cache = new DocHashCache(10, Long.MAX_VALUE, DAY, file);
+      cache.load();
+      assertEquals(0, cache.size());
+    }
+  }
+}
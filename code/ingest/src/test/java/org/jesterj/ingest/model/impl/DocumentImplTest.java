@@ -27,14 +27,21 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static com.copyright.easiertest.EasierMocks.*;
+import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
 import static org.jesterj.ingest.model.Status.*;
 import static org.jesterj.ingest.model.impl.ScannerImpl.SCAN_ORIGIN;
 import static org.junit.Assert.*;
@@ -82,8 +89,9 @@ public class DocumentImplTest {
   @Test
   public void testHash() {
     expect(obj.getHashAlg()).andReturn("MD5");
-    expect(obj.getDelegateString()).andReturn("CAFE");
-    expect(obj.getRawData()).andReturn("BABE".getBytes(StandardCharsets.UTF_8)).anyTimes();
+    obj.hashDelegate(anyObject(DocHasher.class));
+    expectLastCall().andAnswer(() -> ((DocHasher) getCurrentArguments()[0]).update("CAFE"));
+    expect(obj.getRawContent()).andReturn(new ByteArrayContentSource("BABE".getBytes(StandardCharsets.UTF_8))).anyTimes();
     replay();
     assertEquals(DigestUtils.md5Hex("CAFEBABE".getBytes(StandardCharsets.UTF_8)).toUpperCase(), obj.getHash());
   }
@@ -91,12 +99,105 @@ public class DocumentImplTest {
   @Test
   public void testHashRawDataNull() {
     expect(obj.getHashAlg()).andReturn("MD5");
-    expect(obj.getDelegateString()).andReturn("CAFE");
-    expect(obj.getRawData()).andReturn(null).anyTimes();
+    obj.hashDelegate(anyObject(DocHasher.class));
+    expectLastCall().andAnswer(() -> ((DocHasher) getCurrentArguments()[0]).update("CAFE"));
+    expect(obj.getRawContent()).andReturn(null).anyTimes();
     replay();
     assertEquals(DigestUtils.md5Hex("CAFE".getBytes(StandardCharsets.UTF_8)).toUpperCase(), obj.getHash());
   }
 
+  @Test
+  public void testHashMatchesDelegateString() {
+    replay();
+    byte[] raw = "BABE".getBytes(StandardCharsets.UTF_8);
+    DocumentImpl doc = new DocumentImpl(raw, "fooId", "id", Document.Operation.NEW, "scannerFoo", null, "fooId", SCAN_ORIGIN);
+    doc.put("foo", "bar");
+    doc.put("foo", "baz");
+    doc.put("\u00fcmlaut", "\ud83d\ude00 " + "x".repeat(20000));
+    doc.put("empty", "");
+    String expected = doc.getDelegate().toString();
+    byte[] expectedBytes = (expected + "BABE").getBytes(StandardCharsets.UTF_8);
+    assertEquals(DigestUtils.md5Hex(expectedBytes).toUpperCase(), doc.getHash());
+  }
+
+  @Test
+  public void testLazyContentHashesAndLoadsLikeBytes() throws IOException {
+    replay();
+    byte[] raw = "BABE".getBytes(StandardCharsets.UTF_8);
+    Path file = Files.createTempFile("lazyContent", ".txt");
+    try {
+      Files.write(file, raw);
+      DocumentImpl eager = new DocumentImpl(raw, "fooId", "id", Document.Operation.NEW, "scannerFoo", null, "fooId", SCAN_ORIGIN);
+      eager.put("foo", "bar");
+      for (boolean mapped : new boolean[]{false, true}) {
+        DocumentImpl lazy = new DocumentImpl(null, "fooId", "id", Document.Operation.NEW, "scannerFoo", null, "fooId", SCAN_ORIGIN);
+        lazy.put("foo", "bar");
+        lazy.setRawContent(new FileContentSource(file, raw.length, mapped));
+        assertEquals(eager.getHash(), lazy.getHash());
+        assertEquals(4, lazy.getRawContent().length());
+        assertArrayEquals(raw, lazy.getRawData());
+        assertTrue(lazy.getRawContent() instanceof ByteArrayContentSource);
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testHashAlgorithmPluggable() {
+    replay();
+    DocumentImpl doc = new DocumentImpl(null, "fooId", "id", Document.Operation.NEW, "scannerFoo", null, "fooId", SCAN_ORIGIN);
+    doc.put("foo", "bar");
+    String md5 = doc.getHash();
+    doc.setHashAlg(DocHasher.MURMUR3_128);
+    String murmur = doc.getHash();
+    assertNotEquals(md5, murmur);
+    assertEquals(32, murmur.length());
+    DocumentImpl same = new DocumentImpl(null, "fooId", "id", Document.Operation.NEW, "scannerFoo", null, "fooId", SCAN_ORIGIN);
+    same.put("foo", "bar");
+    same.setHashAlg(DocHasher.MURMUR3_128);
+    assertEquals(murmur, same.getHash());
+  }
+
+  @Test
+  public void testCopyIsIndependent() {
+    expect(scannerMock.getName()).andReturn("scannerFoo");
+    expect(planMock.getDocIdField()).andReturn("id");
+    replay();
+    byte[] rawData = new byte[] {1,2};
+    DocumentImpl original = new DocumentImpl(rawData, "fooId", planMock, Document.Operation.NEW, scannerMock, SCAN_ORIGIN);
+    Map<String, DocDestinationStatus> dests = new HashMap<>();
+    dests.put("destination1",new DocDestinationStatus(PROCESSING,"destination1","Found by scanner"));
+    dests.put("destination2",new DocDestinationStatus(PROCESSING,"destination2","Found by scanner"));
+    original.setIncompleteOutputDestinations(dests);
+    original.put("foo","bar");
+    original.put("foo","baz");
+
+    DocumentImpl copy = original.copy();
+    assertEquals(original.getId(), copy.getId());
+    assertEquals(original.getDelegate(), copy.getDelegate());
+    // shared until handed out, then each document has its own array
+    assertNotSame(original.getRawData(), copy.getRawData());
+    assertArrayEquals(original.getRawData(), copy.getRawData());
+    assertEquals(original.getSourceScannerName(), copy.getSourceScannerName());
+    assertEquals(original.getOrigination(), copy.getOrigination());
+
+    copy.getRawData()[0] = 9;
+    assertArrayEquals(new byte[] {1,2}, original.getRawData());
+    original.getRawData()[1] = 8;
+    assertArrayEquals(new byte[] {9,2}, copy.getRawData());
+    assertSame(copy.getRawData(), copy.getRawData());
+
+    copy.put("foo", "qux");
+    copy.setRawData(new byte[] {3});
+    copy.removeAllOtherDestinationsQuietly(Set.of("destination1"));
+
+    assertEquals(List.of("bar", "baz"), original.get("foo"));
+    assertArrayEquals(new byte[] {1,8}, original.getRawData());
+    assertEquals(2, original.getIncompleteOutputDestinations().length);
+    assertArrayEquals(new String[] {"destination1"}, copy.getIncompleteOutputDestinations());
+  }
+
   @Test
   public void testBasicMethods() {
     expect(scannerMock.getName()).andReturn("scannerFoo");
@@ -35,6 +35,7 @@ import org.junit.Test;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import static com.copyright.easiertest.EasierMocks.prepareMocks;
 import static com.copyright.easiertest.EasierMocks.replay;
@@ -50,6 +51,7 @@ public class ScannerImplTest {
 
   @ObjectUnderTest ScannerImpl scanner;
   @Mock private DocumentImpl docMock;
+  @Mock private DocumentImpl docMock2;
   @Mock private BoundStatement bsMock;
   @Mock private CqlSession sessionMock;
   @Mock private ResultSet rsMock;
@@ -118,6 +120,48 @@ public class ScannerImplTest {
     scanner.docFound(docMock);
   }
 
+  @Test
+  public void testDocsFoundLooksUpChunk() {
+    String scannerName = "Dent, Aurthur Dent";
+    Set<String> dests = new HashSet<>();
+    dests.add("dest1");
+    expect(scanner.getName()).andReturn(scannerName).anyTimes();
+    expect(scanner.isRemembering()).andReturn(true).anyTimes();
+    expect(scanner.isHashing()).andReturn(false).anyTimes();
+    expect(scanner.getIdFunction()).andReturn((foo) -> foo).anyTimes();
+    expect(scanner.getCassandra()).andReturn(supportMock).anyTimes();
+    expect(supportMock.getSession()).andReturn(sessionMock);
+    expect(scanner.getOutputDestinationNames()).andReturn(dests).anyTimes();
+
+    // previously seen, not sent
+    docMock.stepStarted(scanner);
+    expect(docMock.getId()).andReturn("42").anyTimes();
+    expect(docMock.getIdField()).andReturn("id");
+    expect(docMock.removeAll("id")).andReturn(null);
+    expect(docMock.put("id", "42")).andReturn(true);
+    docMock.setStatus(PROCESSING,"{} found doc:{}", scannerName, "42" );
+    expect(docMock.isForceReprocess()).andReturn(false);
+    expect(docMock.getStatus("dest1")).andReturn(null);
+    expect(scanner.seenPreviouslyAsync(scannerName, "42", sessionMock)).andReturn(CompletableFuture.completedFuture(true));
+
+    // new, sent
+    docMock2.stepStarted(scanner);
+    expect(docMock2.getId()).andReturn("43").anyTimes();
+    expect(docMock2.getIdField()).andReturn("id");
+    expect(docMock2.removeAll("id")).andReturn(null);
+    expect(docMock2.put("id", "43")).andReturn(true);
+    docMock2.setStatus(PROCESSING,"{} found doc:{}", scannerName, "43" );
+    expect(docMock2.isForceReprocess()).andReturn(false);
+    expect(docMock2.getStatus("dest1")).andReturn(null);
+    expect(scanner.seenPreviouslyAsync(scannerName, "43", sessionMock)).andReturn(CompletableFuture.completedFuture(false));
+    expect(docMock2.alreadyHasIncompleteStepList()).andReturn(false);
+    docMock2.initDestinations(dests, scannerName);
+    scanner.sendToNext(docMock2);
+
+    replay();
+    assertEquals(1, scanner.docsFound(List.of(docMock, docMock2)));
+  }
+
   // FTI finds a doc marked dirty remembering but not hashing
   @Test
   public void testDocFoundDirtyStatus() {
@@ -414,9 +458,9 @@ public class ScannerImplTest {
     steps.add(stepMock1);
     expect(scanner.getDownstreamOutputSteps()).andReturn(steps).anyTimes();
     Set<String> sentAlready = new HashSet<>();
-    Capture<Map.Entry<String, Set<LatestStatus>>> c = newCapture();
+    Capture<Map<String, Set<LatestStatus>>> c = newCapture();
     //noinspection DataFlowIssue
-    scanner.process(eq(true),eq(sentAlready),capture(c), eq(FTI_ORIGIN));
+    scanner.processAll(eq(true),eq(sentAlready),capture(c), eq(FTI_ORIGIN));
     Set<String> dests = new HashSet<>();
     dests.add("outputStepName");
     expect(scanner.getOutputDestinationNames()).andReturn(dests);
@@ -424,10 +468,25 @@ public class ScannerImplTest {
     replay();
     FTIQueryContext src = new FTIQueryContext(sentAlready);
     scanner.processPendingDocs(src, List.of(PROCESSING, BATCHED, RESTART, FORCE), true);
-    Map.Entry<String, Set<LatestStatus>> captured = c.getValue();
-    assertEquals("foobarId", captured.getKey());
-    assertEquals(1,captured.getValue().size());
-    assertEquals(lstatMock,captured.getValue().iterator().next());
+    Map<String, Set<LatestStatus>> captured = c.getValue();
+    assertEquals(1, captured.size());
+    assertEquals(1,captured.get("foobarId").size());
+    assertEquals(lstatMock,captured.get("foobarId").iterator().next());
+  }
+
+  @Test
+  public void testProcessAll() {
+    Map<String, Set<LatestStatus>> toProcess = new LinkedHashMap<>();
+    toProcess.put("fooId", Set.of(lstatMock));
+    toProcess.put("barId", Set.of(lstatMock2));
+    Iterator<Map.Entry<String, Set<LatestStatus>>> entries = toProcess.entrySet().iterator();
+
+    expect(scanner.fetchByIds(List.of("fooId", "barId"), FTI_ORIGIN)).andReturn(Map.of("fooId", docMock));
+    scanner.process(true, null, entries.next(), Optional.of(docMock));
+    scanner.process(true, null, entries.next(), Optional.empty());
+
+    replay();
+    scanner.processAll(true, null, toProcess, FTI_ORIGIN);
   }
 
   @Test
@@ -436,7 +495,6 @@ public class ScannerImplTest {
     Map.Entry<String, Set<LatestStatus>> toProcess = entryMock;
 
     expect(entryMock.getKey()).andReturn("fooId");
-    expect(scanner.fetchById("fooId",FTI_ORIGIN)).andReturn(Optional.of(docMock));
     docMock.setForceReprocess(true);
     Capture<Map<String, DocDestinationStatus>> downstream = newCapture();
     docMock.setIncompleteOutputDestinations(capture(downstream));
@@ -453,7 +511,7 @@ public class ScannerImplTest {
     expect(scanner.docFound(docMock)).andReturn(true);
 
     replay();
-    scanner.process(true, sentAlready, toProcess, FTI_ORIGIN);
+    scanner.process(true, sentAlready, toProcess, Optional.of(docMock));
 
     assertEquals(1, sentAlready.size() );
     assertEquals("fooId", sentAlready.iterator().next() );
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jesterj.ingest.model.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpooledContentSourceTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testSpoolBytes() throws IOException {
+    byte[] bytes = {1, 2, 3, 4};
+    SpooledContentSource source = SpooledContentSource.spool(new ByteArrayInputStream(bytes), Long.MAX_VALUE,
+        tmp.getRoot().toPath(), false);
+    assertEquals(4, source.length());
+    assertTrue(Files.exists(Paths.get(source.getPath())));
+    try (InputStream in = source.open()) {
+      assertArrayEquals(bytes, in.readAllBytes());
+    }
+  }
+
+  @Test
+  public void testSpoolCharsAsUtf8WithLimit() throws IOException {
+    SpooledContentSource source = SpooledContentSource.spool(new StringReader("\u00e9t\u00e9 long"), 3,
+        tmp.getRoot().toPath(), true);
+    assertEquals(5, source.length());
+    try (InputStream in = source.open()) {
+      assertEquals("\u00e9t\u00e9", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+  }
+}
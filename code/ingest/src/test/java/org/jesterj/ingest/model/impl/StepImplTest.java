@@ -27,6 +27,7 @@ import org.jesterj.ingest.model.*;
 import org.jesterj.ingest.processors.*;
 import org.jesterj.ingest.routers.DuplicateToAll;
 import org.jesterj.ingest.scanners.SimpleFileScanner;
+import org.jesterj.ingest.utils.ThreadMaker;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -35,8 +36,16 @@ import java.io.File;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static com.copyright.easiertest.EasierMocks.*;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
 import static org.junit.Assert.*;
 
@@ -57,6 +66,8 @@ public class StepImplTest {
   @Mock private DocumentProcessor mockProcessor;
   @Mock private Document dockMock;
   @Mock private DocStatusChange changeMock;
+  @Mock private Plan planMock;
+  @Mock private ThreadMaker threadMakerMock;
 
   public StepImplTest() {
     prepareMocks(this);
@@ -158,6 +169,129 @@ public class StepImplTest {
     }
   }
 
+  @Test
+  public void testWorkersLimitedForNonThreadSafeProcessor() {
+    replay();
+    StepImpl notSafe = new StepImpl.Builder()
+        .named("not_safe")
+        .withWorkers(4)
+        .withProcessor(new NoOpProcessor.Builder().named("noop"))
+        .build();
+    assertEquals(4, notSafe.getWorkerCount());
+    assertEquals(1, notSafe.getEffectiveWorkerCount());
+
+    StepImpl safe = new StepImpl.Builder()
+        .named("safe")
+        .withWorkers(4)
+        .withProcessor(new CopyField.Builder().named("copy").from("a").into("b"))
+        .build();
+    assertEquals(4, safe.getEffectiveWorkerCount());
+  }
+
+  @Test
+  public void testPlatformThreadsByDefault() {
+    expect(step.getPlan()).andReturn(planMock).anyTimes();
+    expect(planMock.getExecutionMode()).andReturn(ExecutionMode.PLATFORM_THREADS).anyTimes();
+    replay();
+    assertFalse(step.isUsingVirtualThreads());
+  }
+
+  @Test
+  public void testVirtualThreadsWhenSupported() {
+    expect(step.getPlan()).andReturn(planMock).anyTimes();
+    expect(planMock.getExecutionMode()).andReturn(ExecutionMode.VIRTUAL_THREADS).anyTimes();
+    expect(step.getThreadMaker()).andReturn(threadMakerMock);
+    expect(threadMakerMock.isVirtualThreadSupported()).andReturn(true);
+    replay();
+    assertTrue(step.isUsingVirtualThreads());
+  }
+
+  @Test
+  public void testVirtualThreadsFallBackWhenUnsupported() {
+    expect(step.getPlan()).andReturn(planMock).anyTimes();
+    expect(planMock.getExecutionMode()).andReturn(ExecutionMode.VIRTUAL_THREADS).anyTimes();
+    expect(step.getThreadMaker()).andReturn(threadMakerMock);
+    expect(threadMakerMock.isVirtualThreadSupported()).andReturn(false);
+    replay();
+    assertFalse(step.isUsingVirtualThreads());
+  }
+
+  @Test
+  public void testActivateFallsBackToPlatformThreads() {
+    expect(planMock.getExecutionMode()).andReturn(ExecutionMode.VIRTUAL_THREADS).anyTimes();
+    expect(planMock.getName()).andReturn("virtual_plan").anyTimes();
+    expect(threadMakerMock.isVirtualThreadSupported()).andReturn(false).anyTimes();
+    expect(threadMakerMock.newThread(anyObject(Runnable.class), anyString(), eq(false))).andReturn(new Thread(() -> {
+    }));
+    replay();
+    StepImpl fallback = build(new StepImpl() {
+      @Override
+      public Plan getPlan() {
+        return planMock;
+      }
+
+      @Override
+      ThreadMaker getThreadMaker() {
+        return threadMakerMock;
+      }
+    }, "fallback_step");
+    fallback.activate();
+    fallback.deactivate();
+  }
+
+  @Test
+  public void testVirtualThreadWorkerWakesForDocumentsAndDeactivation() throws Exception {
+    expect(dockMock.getId()).andReturn("42").anyTimes();
+    replay();
+    StepImpl waiting = build(new StepImpl() {
+      @Override
+      boolean isUsingVirtualThreads() {
+        return true;
+      }
+
+      @Override
+      public void run() {
+        // leave the queue to the test
+      }
+    }, "virtual_step");
+    waiting.activate();
+    ExecutorService taker = Executors.newSingleThreadExecutor();
+    try {
+      Future<Document> next = taker.submit(waiting::nextDocument);
+      Thread.sleep(100);
+      assertFalse(next.isDone()); // waiting on the queue, not polling it
+      waiting.put(dockMock);
+      assertSame(dockMock, next.get(5, TimeUnit.SECONDS));
+
+      Future<Document> idle = taker.submit(waiting::nextDocument);
+      Thread.sleep(100);
+      waiting.deactivate();
+      try {
+        // woken by deactivation rather than waiting forever for a document
+        assertNull(idle.get(5, TimeUnit.SECONDS));
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof InterruptedException);
+      }
+    } finally {
+      taker.shutdownNow();
+    }
+  }
+
+  private static StepImpl build(StepImpl step, String name) {
+    return new StepImpl.Builder() {
+      @Override
+      protected StepImpl getObj() {
+        return step;
+      }
+    }.named(name).build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWorkersMustBePositive() {
+    replay();
+    new StepImpl.Builder().withWorkers(0);
+  }
+
   @Test
   public void testShakespearePlan() {
     replay();
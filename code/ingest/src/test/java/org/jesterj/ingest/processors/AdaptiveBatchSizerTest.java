@@ -0,0 +1,87 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jesterj.ingest.processors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveBatchSizerTest {
+
+  private static final long MS = 1_000_000L;
+
+  @Test
+  public void testGrowsWhenFast() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 10, 1000, 1000, Long.MAX_VALUE);
+    for (int i = 0; i < 20; i++) {
+      int size = sizer.getBatchSize();
+      // 1ms per doc, so 1000 docs fits the target latency
+      sizer.recordSend(size, size * 100L, size * MS);
+    }
+    assertEquals(1000, sizer.getBatchSize());
+  }
+
+  @Test
+  public void testShrinksWhenSlow() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(500, 10, 1000, 1000, Long.MAX_VALUE);
+    for (int i = 0; i < 20; i++) {
+      int size = sizer.getBatchSize();
+      // 20ms per doc, so 50 docs fits the target latency
+      sizer.recordSend(size, size * 100L, size * 20 * MS);
+    }
+    assertTrue(Math.abs(sizer.getBatchSize() - 50) <= 1);
+  }
+
+  @Test
+  public void testByteBudgetLimits() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 1, 1000, 10_000, 1024 * 1024);
+    for (int i = 0; i < 20; i++) {
+      int size = sizer.getBatchSize();
+      // fast, but 64k per doc so 16 docs fits the byte budget
+      sizer.recordSend(size, size * 64 * 1024L, size * MS / 10);
+    }
+    assertTrue(Math.abs(sizer.getBatchSize() - 16) <= 1);
+  }
+
+  @Test
+  public void testPerRequestOverheadNotChargedToDocs() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 1, 1000, 1000, Long.MAX_VALUE);
+    for (int i = 0; i < 40; i++) {
+      int size = sizer.getBatchSize();
+      // 200ms per request plus 1ms per doc, so 800 docs fits the target latency
+      sizer.recordSend(size, size * 100L, (200 + size) * MS);
+      // a small partial batch sent by the timer
+      sizer.recordSend(5, 500L, 205 * MS);
+    }
+    assertTrue(Math.abs(sizer.getBatchSize() - 800) <= 8);
+  }
+
+  @Test
+  public void testFailureHalvesWithinBounds() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 30, 1000, 1000, Long.MAX_VALUE);
+    sizer.recordFailure();
+    assertEquals(50, sizer.getBatchSize());
+    sizer.recordFailure();
+    assertEquals(30, sizer.getBatchSize());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadBounds() {
+    new AdaptiveBatchSizer(100, 50, 10, 1000, 1000);
+  }
+}
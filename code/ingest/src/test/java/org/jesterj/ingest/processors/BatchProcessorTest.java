@@ -0,0 +1,255 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jesterj.ingest.processors;
+
+import org.jesterj.ingest.model.Document;
+import org.jesterj.ingest.utils.SynchronizedLinkedBimap;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.niceMock;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.*;
+
+/**
+ * Exercises batching and sending with a processor that records what it sends, see {@link RecordingProcessor}.
+ */
+public class BatchProcessorTest {
+
+  private final ExecutorService stepThread = Executors.newSingleThreadExecutor();
+
+  @After
+  public void tearDown() {
+    stepThread.shutdownNow();
+  }
+
+  @Test
+  public void testBatchesSentConcurrentlyWithBackPressure() throws Exception {
+    RecordingProcessor.Builder builder = new RecordingProcessor.Builder().named("inFlightTest");
+    builder.sendingBatchesOf(1).sendingPartialBatchesAfterMs(60000).withMaxInFlightBatches(2);
+    RecordingProcessor proc = builder.build();
+    proc.hold = new CountDownLatch(1);
+
+    proc.processDocument(doc("d1"));
+    proc.processDocument(doc("d2")); // sends [d1]
+    proc.processDocument(doc("d3")); // sends [d2]
+    assertTrue("both batches should be sending at once", proc.entered.tryAcquire(2, 5, TimeUnit.SECONDS));
+    assertEquals(2, proc.getBatchesInFlight());
+
+    // the third batch must wait for a free permit, blocking the step
+    Future<?> blocked = stepThread.submit(() -> proc.processDocument(doc("d4")));
+    Thread.sleep(300);
+    assertFalse("step should be blocked while 2 batches are in flight", blocked.isDone());
+
+    proc.hold.countDown();
+    blocked.get(5, TimeUnit.SECONDS);
+    proc.awaitBatches(3);
+    assertEquals(2, proc.maxConcurrent.get());
+    assertEquals(List.of(List.of("d1"), List.of("d2"), List.of("d3")), proc.sortedSent());
+    assertEquals(3, proc.getDocsSucceeded());
+    assertTrue(proc.failed.isEmpty());
+  }
+
+  @Test
+  public void testTimerSendsPartialBatchAfterConcurrentSends() throws Exception {
+    RecordingProcessor.Builder builder = new RecordingProcessor.Builder().named("timerTest");
+    builder.sendingBatchesOf(1).sendingPartialBatchesAfterMs(300).withMaxInFlightBatches(3);
+    RecordingProcessor proc = builder.build();
+    proc.hold = new CountDownLatch(1);
+
+    proc.processDocument(doc("d1"));
+    proc.processDocument(doc("d2"));
+    proc.processDocument(doc("d3"));
+    proc.processDocument(doc("d4")); // [d1] [d2] [d3] in flight, d4 pending
+    assertTrue(proc.entered.tryAcquire(3, 5, TimeUnit.SECONDS));
+
+    // all three senders finish and reschedule the timer at once
+    proc.hold.countDown();
+    proc.awaitBatches(4);
+    Thread.sleep(1000); // several timer periods, the pending document must be sent exactly once
+    assertEquals(List.of(List.of("d1"), List.of("d2"), List.of("d3"), List.of("d4")), proc.sortedSent());
+    assertEquals(0, proc.getBatchesInFlight());
+    assertTrue(proc.failed.isEmpty());
+  }
+
+  @Test
+  public void testOnlyWholeBatchFailuresShrinkAdaptiveBatch() {
+    RecordingProcessor.Builder builder = new RecordingProcessor.Builder().named("adaptiveFailureTest");
+    builder.sendingBatchesOf(8).sendingPartialBatchesAfterMs(60000).adaptingBatchSize(1, 100, 1000, 1_000_000);
+    RecordingProcessor proc = builder.build();
+    proc.failure = new Exception("bad document");
+
+    proc.documentIssue = true;
+    for (int i = 0; i < 9; i++) {
+      proc.processDocument(doc("a" + i)); // the ninth sends the first eight, which are retried individually
+    }
+    assertEquals(8, proc.fallbacks.get());
+    assertEquals(8, proc.getBatchSize());
+
+    proc.documentIssue = false;
+    for (int i = 0; i < 8; i++) {
+      proc.processDocument(doc("b" + i)); // the eighth sends a8 and b0-b6, which all fail
+    }
+    assertEquals(8, proc.failed.size());
+    assertEquals(4, proc.getBatchSize());
+  }
+
+  @Test
+  public void testByteLimitFlushesBatch() {
+    RecordingProcessor.Builder builder = new RecordingProcessor.Builder().named("byteLimitTest");
+    builder.sendingBatchesOf(100).sendingPartialBatchesAfterMs(60000).limitingBatchesToBytes(10);
+    RecordingProcessor proc = builder.build();
+    proc.sizes.put("a", 4L);
+    proc.sizes.put("b", 4L);
+    proc.sizes.put("c", 4L);
+    proc.sizes.put("big", 25L);
+    proc.sizes.put("d", 1L);
+
+    proc.processDocument(doc("a"));
+    proc.processDocument(doc("b"));
+    proc.processDocument(doc("c")); // 12 bytes would exceed the limit, sends [a, b]
+    proc.processDocument(doc("big")); // sends [c], big starts a batch of its own
+    proc.processDocument(doc("d")); // sends [big] even though it exceeds the limit alone
+    assertEquals(List.of(List.of("a", "b"), List.of("c"), List.of("big")), proc.sent);
+  }
+
+  static Document doc(String id) {
+    Document doc = niceMock(Document.class);
+    expect(doc.getId()).andStubReturn(id);
+    expect(doc.entries()).andStubReturn(Collections.emptyList());
+    replay(doc);
+    return doc;
+  }
+
+  /**
+   * Converts documents to their ids, and records the ids in each batch it sends. Sends can be held up with
+   * {@link #hold}, or made to fail with {@link #failure}.
+   */
+  static class RecordingProcessor extends BatchProcessor<String> {
+    final List<List<String>> sent = Collections.synchronizedList(new ArrayList<>());
+    final Semaphore entered = new Semaphore(0);
+    final AtomicInteger concurrent = new AtomicInteger();
+    final AtomicInteger maxConcurrent = new AtomicInteger();
+    volatile CountDownLatch hold = new CountDownLatch(0);
+    final List<String> failed = Collections.synchronizedList(new ArrayList<>());
+    final AtomicInteger fallbacks = new AtomicInteger();
+    volatile Exception failure;
+    volatile boolean documentIssue;
+    final Map<String, Long> sizes = new ConcurrentHashMap<>();
+    private String name;
+
+    @Override
+    protected void batchOperation(SynchronizedLinkedBimap<Document, String> batch) throws Exception {
+      maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+      entered.release();
+      try {
+        if (failure != null) {
+          throw failure;
+        }
+        assertTrue(hold.await(10, TimeUnit.SECONDS));
+        sent.add(new ArrayList<>(batch.values()));
+      } finally {
+        concurrent.decrementAndGet();
+      }
+    }
+
+    @Override
+    void awaitStatusDurability(Collection<Document> docs) {
+      // no FTI here
+    }
+
+    void awaitBatches(int count) throws InterruptedException {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (sent.size() < count && System.nanoTime() < deadline) {
+        Thread.sleep(20);
+      }
+      assertEquals(count, sent.size());
+    }
+
+    List<List<String>> sortedSent() {
+      List<List<String>> result = new ArrayList<>(sent);
+      result.sort((a, b) -> String.join(",", a).compareTo(String.join(",", b)));
+      return result;
+    }
+
+    @Override
+    protected long estimateSize(Document document, String converted) {
+      return sizes.getOrDefault(converted, 1L);
+    }
+
+    @Override
+    protected String convertDoc(Document document) {
+      return document.getId();
+    }
+
+    @Override
+    protected void perDocFailLogging(Exception e, Document doc) {
+      failed.add(doc.getId());
+    }
+
+    @Override
+    protected int individualFallbackOperation(SynchronizedLinkedBimap<Document, String> oldBatch, Exception e) {
+      fallbacks.addAndGet(oldBatch.size());
+      return 0;
+    }
+
+    @Override
+    protected boolean exceptionIndicatesDocumentIssue(Exception e) {
+      return documentIssue;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    static class Builder extends BatchProcessor.Builder<String> {
+      private final RecordingProcessor obj = new RecordingProcessor();
+
+      @Override
+      public Builder named(String name) {
+        getObj().name = name;
+        return this;
+      }
+
+      @Override
+      protected RecordingProcessor getObj() {
+        return obj;
+      }
+
+      @Override
+      public RecordingProcessor build() {
+        return obj;
+      }
+    }
+  }
+}
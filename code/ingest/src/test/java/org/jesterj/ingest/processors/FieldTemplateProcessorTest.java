@@ -35,6 +35,7 @@ import static com.copyright.easiertest.EasierMocks.replay;
 import static com.copyright.easiertest.EasierMocks.reset;
 import static com.copyright.easiertest.EasierMocks.verify;
 import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
 
 /*
  * Created with IntelliJ IDEA.
@@ -66,7 +67,7 @@ public class FieldTemplateProcessorTest {
     expect(docMock.removeAll("templ")).andReturn(strings);
     Map<String, Collection<String>> map = new HashMap<>();
     map.put("foobar", Collections.singletonList("good"));
-    expect(docMock.getId()).andReturn("bar");
+    expect(docMock.getId()).andReturn("bar").anyTimes();
     expect(docMock.asMap()).andReturn(map);
     expect(docMock.put("templ", "This is all good")).andReturn(true);
     replay();
@@ -90,4 +91,48 @@ public class FieldTemplateProcessorTest {
     FieldTemplateProcessor proc = new FieldTemplateProcessor.Builder().named("foo").withTemplatesIn("templ").build();
     proc.processDocument(docMock);
   }
+
+  @Test
+  public void testCachedTemplateUsesEachDocument() {
+    List<String> first = new ArrayList<>();
+    first.add("#set($x = $foobar[0])Hello $x");
+    List<String> second = new ArrayList<>();
+    second.add("#set($x = $foobar[0])Hello $x");
+    Map<String, Collection<String>> map1 = new HashMap<>();
+    map1.put("foobar", Collections.singletonList("world"));
+    Map<String, Collection<String>> map2 = new HashMap<>();
+    map2.put("foobar", Collections.singletonList("again"));
+    expect(docMock.getId()).andReturn("bar").anyTimes();
+    expect(docMock.asMap()).andReturn(map1);
+    expect(docMock.removeAll("templ")).andReturn(first);
+    expect(docMock.put("templ", "Hello world")).andReturn(true);
+    expect(docMock.asMap()).andReturn(map2);
+    expect(docMock.removeAll("templ")).andReturn(second);
+    expect(docMock.put("templ", "Hello again")).andReturn(true);
+    replay();
+    FieldTemplateProcessor proc = new FieldTemplateProcessor.Builder().named("foo").withTemplatesIn("templ")
+        .cachingTemplates(1).build();
+    proc.processDocument(docMock);
+    proc.processDocument(docMock);
+    // #set must not leak into the document
+    assertEquals(1, map1.size());
+    assertEquals(1, map2.size());
+  }
+
+  @Test
+  public void testForeachOverMultiValuedField() {
+    List<String> strings = new ArrayList<>();
+    strings.add("#foreach($value in $foobar)[$value]#end");
+    expect(docMock.removeAll("templ")).andReturn(strings);
+    Map<String, Collection<String>> map = new HashMap<>();
+    map.put("foobar", Arrays.asList("good", "pie"));
+    expect(docMock.getId()).andReturn("bar").anyTimes();
+    expect(docMock.asMap()).andReturn(map);
+    // #foreach removes its loop variable from the context when it finishes
+    expect(docMock.put("templ", "[good][pie]")).andReturn(true);
+    replay();
+    FieldTemplateProcessor proc = new FieldTemplateProcessor.Builder().named("foo").withTemplatesIn("templ").build();
+    proc.processDocument(docMock);
+    assertEquals(Arrays.asList("good", "pie"), map.get("foobar"));
+  }
 }
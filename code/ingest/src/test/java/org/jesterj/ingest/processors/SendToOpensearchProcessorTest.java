@@ -2,8 +2,6 @@ package org.jesterj.ingest.processors;
 
 import com.copyright.easiertest.Mock;
 import com.copyright.easiertest.ObjectUnderTest;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.jesterj.ingest.model.DocStatusChange;
 import org.jesterj.ingest.model.Document;
@@ -13,10 +11,14 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -146,9 +148,9 @@ public class SendToOpensearchProcessorTest {
   @Mock
   DocStatusChange statusChangeMock;
   @Mock
-  private CompletableFuture<HttpResponse<String>> futureMock;
+  private CompletableFuture<HttpResponse<InputStream>> futureMock;
   @Mock
-  private HttpResponse<String> httpResponseMock;
+  private HttpResponse<InputStream> httpResponseMock;
 
 
   public SendToOpensearchProcessorTest() {
@@ -166,30 +168,30 @@ public class SendToOpensearchProcessorTest {
   }
 
   @Test
-  public void testResponseAsMapValidJson() {
+  public void testReadBulkResponseNoErrors() throws IOException {
     expect(processor.getMapper()).andReturn(new ObjectMapper());
-    expect(httpResponseMock.body()).andReturn("{\"foo\":\"bar\"}");
     replay();
-    Map<String, Object> stringObjectMap = processor.responseAsMap(httpResponseMock);
-    assertEquals("bar", stringObjectMap.get("foo"));
+    InputStream body = stream(RESPONSE2);
+    SendToOpenSearchProcessor.BulkResponse bulk = processor.readBulkResponse(body);
+    assertNotNull(bulk);
+    assertFalse(bulk.errors);
+    // no need to parse the items when nothing failed, but the body is still read to the end
+    assertTrue(bulk.items.isEmpty());
+    assertEquals(0, body.available());
   }
 
   @Test
-  public void testResponseAsMapGotArray() {
+  public void testReadBulkResponseGotArray() {
     expect(processor.getMapper()).andReturn(new ObjectMapper());
-    expect(httpResponseMock.body()).andReturn("[\"foo\",\"bar\"]");
     replay();
-    Map<String, Object> stringObjectMap = processor.responseAsMap(httpResponseMock);
-    assertNull(stringObjectMap);
+    assertNull(processor.readBulkResponse(stream("[\"foo\",\"bar\"]")));
   }
 
   @Test
-  public void testResponseAsMapGotGarbage() {
+  public void testReadBulkResponseGotGarbage() {
     expect(processor.getMapper()).andReturn(new ObjectMapper());
-    expect(httpResponseMock.body()).andReturn("[abcdefg;':");
     replay();
-    Map<String, Object> stringObjectMap = processor.responseAsMap(httpResponseMock);
-    assertNull(stringObjectMap);
+    assertNull(processor.readBulkResponse(stream("[abcdefg;':")));
   }
 
   @Test
@@ -214,8 +216,20 @@ public class SendToOpensearchProcessorTest {
     processor.handleMissingResponseBody(batch);
   }
 
+  @Test(expected = IllegalArgumentException.class)
+  public void testMaxInFlightBatchesMustBePositive() {
+    replay();
+    new SendToOpenSearchProcessor.Builder().withMaxInFlightBatches(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMaxBatchBytesMustBePositive() {
+    replay();
+    new SendToOpenSearchProcessor.Builder().limitingBatchesToBytes(0);
+  }
+
   @Test
-  public void testExtractCreates() throws JsonProcessingException {
+  public void testExtractCreates() {
     String createResponses = "{\n" +
         "  \"took\": 11,\n" +
         "  \"errors\": true,\n" +
@@ -239,19 +253,19 @@ public class SendToOpensearchProcessorTest {
         "    }\n" +
         "  ]\n" +
         "}";
-    ObjectMapper mapper = new ObjectMapper();
-    Map<String, Object> stringObjectMap = mapper.readValue(createResponses, new TypeReference<>() {
-    });
+    expect(processor.getMapper()).andReturn(new ObjectMapper());
     replay();
-    List<Map<String, Object>> list = processor.extractItemList(stringObjectMap);
-    assertNotNull(list);
+    SendToOpenSearchProcessor.BulkResponse bulk = processor.readBulkResponse(stream(createResponses));
+    assertNotNull(bulk);
+    assertTrue(bulk.errors);
+    List<Map<String, Object>> list = bulk.items;
     assertEquals(2,list.size());
     assertEquals("tt1979320",list.get(0).get("_id"));
     assertEquals("tt1979321",list.get(1).get("_id"));
   }
 
   @Test
-  public void testExtractUpdates() throws JsonProcessingException {
+  public void testExtractUpdates() {
     String createResponses = "{\n" +
         "  \"took\": 11,\n" +
         "  \"errors\": true,\n" +
@@ -275,19 +289,19 @@ public class SendToOpensearchProcessorTest {
         "    }\n" +
         "  ]\n" +
         "}";
-    ObjectMapper mapper = new ObjectMapper();
-    Map<String, Object> stringObjectMap = mapper.readValue(createResponses, new TypeReference<>() {
-    });
+    expect(processor.getMapper()).andReturn(new ObjectMapper());
     replay();
-    List<Map<String, Object>> list = processor.extractItemList(stringObjectMap);
-    assertNotNull(list);
+    SendToOpenSearchProcessor.BulkResponse bulk = processor.readBulkResponse(stream(createResponses));
+    assertNotNull(bulk);
+    assertTrue(bulk.errors);
+    List<Map<String, Object>> list = bulk.items;
     assertEquals(2,list.size());
     assertEquals("tt1979320",list.get(0).get("_id"));
     assertEquals("tt1979321",list.get(1).get("_id"));
   }
 
   @Test (expected = IllegalArgumentException.class)
-  public void testUnknownsIgnored() throws JsonProcessingException {
+  public void testUnknownsIgnored() {
     String createResponses = "{\n" +
         "  \"took\": 11,\n" +
         "  \"errors\": true,\n" +
@@ -311,17 +325,13 @@ public class SendToOpensearchProcessorTest {
         "    }\n" +
         "  ]\n" +
         "}";
-    ObjectMapper mapper = new ObjectMapper();
-    Map<String, Object> stringObjectMap = mapper.readValue(createResponses, new TypeReference<>() {
-    });
+    expect(processor.getMapper()).andReturn(new ObjectMapper());
     replay();
-    processor.extractItemList(stringObjectMap);
+    processor.readBulkResponse(stream(createResponses));
   }
 
   @Test
-  public void testIndividualFallbackOperation() throws JsonProcessingException {
-    OpenSearchBatchFailureException testEx =
-        new OpenSearchBatchFailureException("testIndividualFallbackOperation Exception", httpResponseMock);
+  public void testIndividualFallbackOperation() {
     SynchronizedLinkedBimap<Document,String> batch = new SynchronizedLinkedBimap<>();
     batch.put(docMock1,"tt1979320");
     batch.put(docMock2,"tt1979321");
@@ -349,39 +359,14 @@ public class SendToOpensearchProcessorTest {
         "  ]\n" +
         "}";
 
-    String response1 =
-        "      {\n" +
-            "        \"_index\": \"movies\",\n" +
-            "        \"_id\": \"tt1979320\",\n" +
-            "        \"_version\": 1,\n" +
-            // <snip: irrelevant stuff>
-            "        \"status\": 200\n" +
-            "      }";
-
-    String response2 =
-        "      {\n" +
-            "        \"_index\": \"movies\",\n" +
-            "        \"_id\": \"tt1979321\",\n" +
-            // <snip: irrelevant stuff>
-            "        \"status\": 404\n" +
-            "      }";
-    ObjectMapper mapper = new ObjectMapper();
-    Map<String, Object> responsesMap = mapper.readValue(responses, new TypeReference<>() {
-    });
-    Map<String, Object> response1Map = mapper.readValue(response1, new TypeReference<>() {
-    });
-    Map<String, Object> response2Map = mapper.readValue(response2, new TypeReference<>() {
-    });
-    ArrayList<Map<String,Object>> responselist = new ArrayList<>();
-    responselist.add(response1Map);
-    responselist.add(response2Map);
-
+    // a real processor, the mocked one would expect getMapper()
+    SendToOpenSearchProcessor.BulkResponse bulk = new SendToOpenSearchProcessor().readBulkResponse(stream(responses));
+    OpenSearchBatchFailureException testEx =
+        new OpenSearchBatchFailureException("testIndividualFallbackOperation Exception", httpResponseMock, bulk);
 
     expect(httpResponseMock.statusCode()).andReturn(200);
-    expect(processor.responseAsMap(httpResponseMock)).andReturn(responsesMap);
     expect(docMock1.getId()).andReturn("tt1979320");
     expect(docMock2.getId()).andReturn("tt1979321");
-    expect(processor.extractItemList(responsesMap)).andReturn(responselist);
     docMock1.setStatus(INDEXED,"{_index=movies, _id=tt1979320, _version=1, status=200}");
     docMock1.reportDocStatus();
     docMock2.setStatus(ERROR,"{_index=movies, _id=tt1979321, status=404}");
@@ -400,7 +385,6 @@ public class SendToOpensearchProcessorTest {
     batch.put(docMock2,"tt1979321");
 
     expect(httpResponseMock.statusCode()).andReturn(200);
-    expect(processor.responseAsMap(httpResponseMock)).andReturn(null);
     processor.handleMissingResponseBody(batch);
 
     replay();
@@ -436,7 +420,7 @@ public class SendToOpensearchProcessorTest {
   }
 
   @Test
-  public void testExtractDeletes() throws JsonProcessingException {
+  public void testExtractDeletes() {
     String createResponses = "{\n" +
         "  \"took\": 11,\n" +
         "  \"errors\": true,\n" +
@@ -460,16 +444,90 @@ public class SendToOpensearchProcessorTest {
         "    }\n" +
         "  ]\n" +
         "}";
-    ObjectMapper mapper = new ObjectMapper();
-    Map<String, Object> stringObjectMap = mapper.readValue(createResponses, new TypeReference<>() {
-    });
+    expect(processor.getMapper()).andReturn(new ObjectMapper());
     replay();
-    List<Map<String, Object>> list = processor.extractItemList(stringObjectMap);
-    assertNotNull(list);
+    SendToOpenSearchProcessor.BulkResponse bulk = processor.readBulkResponse(stream(createResponses));
+    assertNotNull(bulk);
+    assertTrue(bulk.errors);
+    List<Map<String, Object>> list = bulk.items;
     assertEquals(2,list.size());
     assertEquals("tt1979320",list.get(0).get("_id"));
     assertEquals("tt1979321",list.get(1).get("_id"));
   }
+
+  @Test
+  public void testConvertDocTyped() {
+    SendToOpenSearchProcessor proc = new SendToOpenSearchProcessor.Builder()
+        .named("typed")
+        .typingField("count", SendToOpenSearchProcessor.FieldType.NUMBER)
+        .typingField("flags", SendToOpenSearchProcessor.FieldType.BOOLEAN)
+        .typingField("modified", SendToOpenSearchProcessor.FieldType.DATE)
+        .build();
+    expect(docMock1.getId()).andReturn("idTest1").anyTimes();
+    expect(docMock1.keySet()).andReturn(new LinkedHashSet<>(List.of("title", "tags", "count", "flags", "modified")));
+    expect(docMock1.get("title")).andReturn(List.of("Hitchhiker"));
+    expect(docMock1.get("tags")).andReturn(List.of("towel", "42"));
+    expect(docMock1.get("count")).andReturn(List.of("42", "4.2", "forty-two"));
+    expect(docMock1.get("flags")).andReturn(List.of("TRUE", "false"));
+    expect(docMock1.get("modified")).andReturn(List.of("1979-10-12"));
+    replay();
+    assertEquals("{\"title\":\"Hitchhiker\",\"tags\":[\"towel\",\"42\"],\"count\":[42,4.2,\"forty-two\"]," +
+        "\"flags\":[true,false],\"modified\":\"1979-10-12\"}", proc.convertDoc(docMock1));
+  }
+
+  @Test
+  public void testTypesFromMapping() throws Exception {
+    String mapping = "{\"movies\": {\"mappings\": {\"properties\": {" +
+        "\"title\": {\"type\": \"text\"}," +
+        "\"year\": {\"type\": \"integer\"}," +
+        "\"rating\": {\"type\": \"scaled_float\", \"scaling_factor\": 10}," +
+        "\"director\": {\"properties\": {" +
+        "  \"born\": {\"type\": \"date\"}," +
+        "  \"living\": {\"type\": \"boolean\"}," +
+        "  \"name\": {\"type\": \"keyword\"}}}}}}}";
+    replay();
+    Map<String, SendToOpenSearchProcessor.FieldType> types =
+        SendToOpenSearchProcessor.typesFromMapping(new ObjectMapper().readTree(mapping));
+    assertEquals(Map.of(
+        "year", SendToOpenSearchProcessor.FieldType.NUMBER,
+        "rating", SendToOpenSearchProcessor.FieldType.NUMBER,
+        "director.born", SendToOpenSearchProcessor.FieldType.DATE,
+        "director.living", SendToOpenSearchProcessor.FieldType.BOOLEAN), types);
+  }
+
+  @Test
+  public void testMappingReadAgainAfterFailure() throws Exception {
+    SendToOpenSearchProcessor proc = new SendToOpenSearchProcessor.Builder()
+        .named("typedFromMapping")
+        .indexNamed("movies")
+        .openSearchAt("https://example.com:9600/")
+        .typingFieldsFromMapping()
+        .build();
+    proc.setClient(mockHttpClient);
+    proc.mappingRetryNanos = 0;
+    String mapping = "{\"movies\": {\"mappings\": {\"properties\": {\"year\": {\"type\": \"integer\"}}}}}";
+
+    // the index does not exist yet
+    //noinspection unchecked
+    expect(mockHttpClient.send(isA(HttpRequest.class), isA(HttpResponse.BodyHandler.class))).andReturn(httpResponseMock);
+    expect(httpResponseMock.statusCode()).andReturn(404).times(2);
+    expect(httpResponseMock.body()).andReturn(stream("{}"));
+    // it does by the time the next document is converted
+    //noinspection unchecked
+    expect(mockHttpClient.send(isA(HttpRequest.class), isA(HttpResponse.BodyHandler.class))).andReturn(httpResponseMock);
+    expect(httpResponseMock.statusCode()).andReturn(200);
+    expect(httpResponseMock.body()).andReturn(stream(mapping));
+
+    expect(docMock1.getId()).andReturn("idTest1").anyTimes();
+    expect(docMock1.keySet()).andReturn(Set.of("year")).times(3);
+    expect(docMock1.get("year")).andReturn(List.of("1979")).times(3);
+    replay();
+    assertEquals("{\"year\":\"1979\"}", proc.convertDoc(docMock1));
+    assertEquals("{\"year\":1979}", proc.convertDoc(docMock1));
+    // read only once it succeeds
+    assertEquals("{\"year\":1979}", proc.convertDoc(docMock1));
+  }
+
   @Test
   public void testBuilderHappyPath() throws Exception {
     SendToOpenSearchProcessor.Builder builder = new SendToOpenSearchProcessor.Builder();
@@ -511,16 +569,15 @@ public class SendToOpensearchProcessorTest {
 
     // expectations for handling of first batch
     expect(httpResponseMock.statusCode()).andReturn(200);
-    expect(httpResponseMock.body()).andReturn(RESPONSE); // in batchOperation
-    expect(httpResponseMock.statusCode()).andReturn(200);
-    expect(httpResponseMock.body()).andReturn(RESPONSE); // in individualFallback due to error in 4
+    expect(httpResponseMock.body()).andReturn(stream(RESPONSE)); // in batchOperation
+    expect(httpResponseMock.statusCode()).andReturn(200); // in individualFallback due to error in 4
 
     // after 2nd batch times out:
     //noinspection unchecked
     expect(mockHttpClient.sendAsync(isA(HttpRequest.class), isA(HttpResponse.BodyHandler.class))).andReturn(futureMock);
     expect(futureMock.get()).andReturn(httpResponseMock);
     expect(httpResponseMock.statusCode()).andReturn(200);
-    expect(httpResponseMock.body()).andReturn(RESPONSE2); // in batchOperation (should not fall back)
+    expect(httpResponseMock.body()).andReturn(stream(RESPONSE2)); // in batchOperation (should not fall back)
 
     replay();
     // note, proc must not be an @ObjectUnderTest mock here!
@@ -535,6 +592,10 @@ public class SendToOpensearchProcessorTest {
 
   }
 
+  private static InputStream stream(String json) {
+    return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+  }
+
   private void setupDocsForBuilder(Document documentMock, int i) {
     String id = "idTest" + i;
     expect(documentMock.getOperation()).andReturn(Document.Operation.NEW).anyTimes();
@@ -23,12 +23,18 @@ import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.impl.ClusterStateProvider;
 import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.client.solrj.response.UpdateResponse;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.DocRouter;
+import org.apache.solr.common.cloud.Slice;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.util.NamedList;
 import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.jesterj.ingest.model.DocStatusChange;
 import org.jesterj.ingest.model.Document;
 import org.jesterj.ingest.model.Status;
@@ -39,6 +45,8 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.LongSupplier;
 
 import static com.copyright.easiertest.EasierMocks.replay;
 import static com.copyright.easiertest.EasierMocks.reset;
@@ -49,6 +57,7 @@ import static org.easymock.EasyMock.*;
 import static org.jesterj.ingest.model.Status.*;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 
 /*
  * Created with IntelliJ IDEA.
@@ -57,6 +66,7 @@ import static org.junit.Assert.assertFalse;
  */
 public class SendToSolrCloudZkProcessorTest {
   public static final int BATCH_TIMEOUT = 1000;
+  public static final int LANE_BATCH_TIMEOUT = 200;
   @ObjectUnderTest
   SendToSolrCloudZkProcessor proc;
   @Mock
@@ -99,6 +109,18 @@ public class SendToSolrCloudZkProcessorTest {
   private DocumentLoggingContext docContextMock;
   @Mock
   private DocStatusChange statusChangeMock;
+  @Mock
+  private ClusterStateProvider clusterStateProviderMock;
+  @Mock
+  private ClusterState.CollectionRef collectionRefMock;
+  @Mock
+  private DocCollection docCollectionMock;
+  @Mock
+  private DocRouter routerMock;
+  @Mock
+  private Slice sliceMock;
+  @Mock
+  private Slice sliceMock2;
 
   public SendToSolrCloudZkProcessorTest() {
     prepareMocks(this);
@@ -189,6 +211,44 @@ public class SendToSolrCloudZkProcessorTest {
     assertTrue(addCap.getValue().contains(inputDocMock3));
   }
 
+  @Test
+  public void testStreamingBatchOperation() throws IOException, SolrServerException {
+    proc.streamingUpdates = true;
+    SynchronizedLinkedBimap<Document, SolrInputDocument> biMap = new SynchronizedLinkedBimap<>();
+    biMap.put(docMock, new SendToSolrProcessor.Deferred());
+    expect(docMock.getOperation()).andReturn(Document.Operation.NEW).anyTimes();
+    expect(docMock.getId()).andReturn("41").anyTimes();
+    expect(proc.getParams()).andReturn(null).anyTimes();
+    expect(proc.getSolrClient()).andReturn(solrClientMock).anyTimes();
+    expect(proc.getName()).andReturn("test_streaming").anyTimes();
+    Capture<UpdateRequest> addCap = newCapture();
+    //noinspection ConstantConditions
+    expect(solrClientMock.request(capture(addCap), eq(null))).andReturn(namedListMock);
+    docMock.setStatus(INDEXING, "Indexing started for a batch of 1 documents");
+    docMock.reportDocStatus();
+    docMock.setStatus(INDEXED, "{} sent by {} successfully", "41", "test_streaming");
+    docMock.reportDocStatus();
+
+    // converted only when the request is written, and again if it is written twice
+    for (int i = 0; i < 2; i++) {
+      expect(proc.getFieldsField()).andReturn(null);
+      expect(docMock.keySet()).andReturn(Set.of("id"));
+      expect(docMock.get("id")).andReturn(List.of("41"));
+      expect(docMock.getRawData()).andReturn(null);
+      expect(proc.getIdTransformer()).andReturn(null);
+    }
+
+    replay();
+    proc.batchOperation(biMap);
+    UpdateRequest req = addCap.getValue();
+    assertNull(req.getDocuments());
+    for (int i = 0; i < 2; i++) {
+      Iterator<SolrInputDocument> docs = req.getDocIterator();
+      assertEquals("41", docs.next().getFieldValue("id"));
+      assertFalse(docs.hasNext());
+    }
+  }
+
   @Test
   public void testPerBatchOperationWithChain() throws IOException, SolrServerException {
     SynchronizedLinkedBimap<Document, SolrInputDocument> biMap = expect3Docs();
@@ -267,9 +327,10 @@ public class SendToSolrCloudZkProcessorTest {
     // initial batch failure
     expect(solrClientMock.request(isA(UpdateRequest.class), isNull())).andThrow(new SolrServerException("fail"));
 
-    // individual fallbacks
-    indexMock(docMock, 4, "idTest1", false, true);
-    indexMock(docMock2, 4, "idTest2", false, true);
+    // bisection, the first half succeeds, so the second is split into individual sends
+    expect(solrClientMock.request(isA(UpdateRequest.class), isNull())).andReturn(namedListMock);
+    bisectedIndexMock(docMock, "idTest1");
+    bisectedIndexMock(docMock2, "idTest2");
     indexMock(docMock3, 4, "idTest3", false, true);
     indexMock(docMock4, 4, "idTest4", true, true);
     indexMock(docMock5, 1, "idTest1", false, false);
@@ -291,7 +352,9 @@ public class SendToSolrCloudZkProcessorTest {
 
     assertEquals(5, proc.getDocsReceived());
     assertEquals(4, proc.getDocsAttempted());
-    assertEquals(3, proc.getDocsSucceeded()); // should fail and fallback to individual sends
+    assertEquals(3, proc.getDocsSucceeded()); // should fail and fallback to bisected sends
+    assertEquals(1, proc.getFallbackBatches());
+    assertEquals(3, proc.getFallbackRequests());
 
     assertTrue(transfomred[0]);
 
@@ -303,6 +366,195 @@ public class SendToSolrCloudZkProcessorTest {
 
   }
 
+  @Test
+  public void testShardForUsesRouteField() {
+    SendToSolrCloudZkProcessor proc = routingProcessor("test_shard_for", 4);
+    expectCollectionState();
+    expect(docMock.getIdField()).andReturn("id").anyTimes();
+    expect(docMock.getFirstValue("id")).andReturn("idTest1").anyTimes();
+    expect(docMock.getFirstValue("region")).andReturn("east").anyTimes();
+    Capture<SolrInputDocument> routedCap = newCapture();
+    expect(routerMock.getTargetSlice(eq("idTest1"), capture(routedCap), isNull(), isNull(), same(docCollectionMock)))
+        .andReturn(sliceMock).times(2);
+    expect(sliceMock.getName()).andReturn("shard2").times(2);
+
+    replay();
+    assertEquals("shard2", proc.shardFor(docMock));
+    assertEquals("idTest1", routedCap.getValue().getFieldValue("id"));
+    assertEquals("east", routedCap.getValue().getFieldValue("region"));
+    // cluster state is only read once (see expectCollectionState), until it is older than the ttl
+    assertEquals("shard2", proc.shardFor(docMock));
+  }
+
+  @Test
+  public void testShardForMissingRouteValue() {
+    SendToSolrCloudZkProcessor proc = routingProcessor("test_no_route", 4);
+    expectCollectionState();
+    expect(docMock.getIdField()).andReturn("id").anyTimes();
+    expect(docMock.getFirstValue("id")).andReturn("idTest1").anyTimes();
+    expect(docMock.getFirstValue("region")).andReturn(null).anyTimes();
+
+    replay();
+    assertEquals("unrouted", proc.shardFor(docMock));
+  }
+
+  @Test
+  public void testShardForUnknownCollection() {
+    SendToSolrCloudZkProcessor proc = routingProcessor("test_unknown_collection", 4);
+    expect(solrClientMock.getClusterStateProvider()).andReturn(clusterStateProviderMock);
+    expect(clusterStateProviderMock.getState("fooCollection")).andReturn(null);
+
+    replay();
+    assertEquals("unrouted", proc.shardFor(docMock));
+  }
+
+  @Test
+  public void testShardLanes() throws SolrServerException, IOException, InterruptedException {
+    SendToSolrCloudZkProcessor proc = routingProcessor("test_lanes", 4);
+    expectCollectionState();
+    expect(routerMock.getTargetSlice(eq("idTest1"), isA(SolrInputDocument.class), isNull(), isNull(),
+        same(docCollectionMock))).andReturn(sliceMock);
+    expect(routerMock.getTargetSlice(eq("idTest2"), isA(SolrInputDocument.class), isNull(), isNull(),
+        same(docCollectionMock))).andReturn(sliceMock);
+    expect(sliceMock.getName()).andReturn("shard1").anyTimes();
+    routedDocMock(docMock, "idTest1", "east", "test_lanes_shard1", 0, 2);
+    routedDocMock(docMock2, "idTest2", "east", "test_lanes_shard1", 1, 2);
+    routedDocMock(docMock3, "idTest3", null, "test_lanes_unrouted", 0, 1);
+    Capture<UpdateRequest> requests = newCapture(CaptureType.ALL);
+    expect(solrClientMock.request(capture(requests), isNull())).andReturn(namedListMock).times(2);
+
+    replay();
+    proc.processDocument(docMock);
+    proc.processDocument(docMock2);
+    proc.processDocument(docMock3);
+
+    // counted by the lanes as they take documents from their queues, reported by the router
+    awaitCount(proc::getDocsReceived, 3);
+    assertEquals(3, proc.getDocsReceived());
+    assertEquals(0, proc.getDocsAttempted());
+
+    Thread.sleep(1000); // partial batch sends, one per lane
+
+    assertEquals(3, proc.getDocsAttempted());
+    assertEquals(3, proc.getDocsSucceeded());
+    assertEquals(2, requests.getValues().size());
+    for (UpdateRequest request : requests.getValues()) {
+      // the lanes send with the router's request parameters
+      assertEquals("bar", request.getParams().get("foo"));
+    }
+  }
+
+  @Test
+  public void testStalledLaneDoesNotBlockOtherShards() throws Exception {
+    SendToSolrCloudZkProcessor proc = routingProcessor("test_stalled", 1);
+    expectCollectionState();
+    for (String id : List.of("idTest1", "idTest2", "idTest3")) {
+      expect(routerMock.getTargetSlice(eq(id), isA(SolrInputDocument.class), isNull(), isNull(),
+          same(docCollectionMock))).andReturn(sliceMock);
+    }
+    expect(routerMock.getTargetSlice(eq("idTest4"), isA(SolrInputDocument.class), isNull(), isNull(),
+        same(docCollectionMock))).andReturn(sliceMock2);
+    expect(sliceMock.getName()).andReturn("shard1").anyTimes();
+    expect(sliceMock2.getName()).andReturn("shard2").anyTimes();
+    routedDocMock(docMock, "idTest1", "east", "test_stalled_shard1", 0, 1);
+    routedDocMock(docMock2, "idTest2", "east", "test_stalled_shard1", 0, 1);
+    routedDocMock(docMock3, "idTest3", "east", "test_stalled_shard1", 0, 1);
+    routedDocMock(docMock4, "idTest4", "west", "test_stalled_shard2", 0, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    expect(solrClientMock.request(isA(UpdateRequest.class), isNull())).andAnswer(() -> {
+      UpdateRequest request = (UpdateRequest) getCurrentArguments()[0];
+      if ("idTest1".equals(request.getDocuments().get(0).getFieldValue("id"))) {
+        // shard1 stalls with the only batch it may have in flight
+        release.await();
+      }
+      return namedListMock;
+    }).times(4);
+
+    replay();
+    try {
+      Thread step = new Thread(() -> {
+        proc.processDocument(docMock);
+        proc.processDocument(docMock2);
+        proc.processDocument(docMock3);
+        proc.processDocument(docMock4);
+      });
+      step.start();
+      step.join(5000);
+      assertFalse("the step thread waited for a stalled shard", step.isAlive());
+
+      // shard2 is sent while shard1 is still stalled
+      awaitCount(proc::getDocsSucceeded, 1);
+      assertEquals(1, proc.getDocsSucceeded());
+    } finally {
+      release.countDown();
+    }
+    awaitCount(proc::getDocsSucceeded, 4);
+    assertEquals(4, proc.getDocsSucceeded());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testStreamingNotAllowedWhenRouting() {
+    replay();
+    new SendToSolrCloudZkProcessor.Builder()
+        .withZookeeper("localhost:2181")
+        .named("test_streaming_routed")
+        .usingCollection("fooCollection")
+        .routingToShards(true)
+        .streamingUpdates(true)
+        .build();
+  }
+
+  private void awaitCount(LongSupplier count, long expected) throws InterruptedException {
+    long end = System.currentTimeMillis() + 5000;
+    while (count.getAsLong() < expected && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+  }
+
+  private SendToSolrCloudZkProcessor routingProcessor(String name, int batchSize) {
+    SendToSolrCloudZkProcessor proc = new SendToSolrCloudZkProcessor.Builder()
+        .withZookeeper("localhost:2181")
+        .named(name)
+        .usingCollection("fooCollection")
+        .withRequestParameters(Map.of("foo", "bar"))
+        .routingToShards(true)
+        .sendingBatchesOf(batchSize)
+        .sendingPartialBatchesAfterMs(LANE_BATCH_TIMEOUT)
+        .build();
+    proc.setSolrClient(solrClientMock);
+    return proc;
+  }
+
+  private void expectCollectionState() {
+    expect(solrClientMock.getClusterStateProvider()).andReturn(clusterStateProviderMock);
+    expect(clusterStateProviderMock.getState("fooCollection")).andReturn(collectionRefMock);
+    expect(collectionRefMock.get()).andReturn(docCollectionMock);
+    expect(docCollectionMock.getRouter()).andReturn(routerMock).anyTimes();
+    expect(routerMock.getRouteField(docCollectionMock)).andReturn("region").anyTimes();
+  }
+
+  private void routedDocMock(Document documentMock, String id, String region, String lane, int position,
+                             int batchSize) {
+    expect(documentMock.getOperation()).andReturn(Document.Operation.NEW).anyTimes();
+    expect(documentMock.keySet()).andReturn(Set.of("id")).anyTimes();
+    expect(documentMock.get("id")).andReturn(List.of(id)).anyTimes();
+    expect(documentMock.getRawData()).andReturn(null).anyTimes();
+    expect(documentMock.getIdField()).andReturn("id").anyTimes();
+    expect(documentMock.getFirstValue("id")).andReturn(id).anyTimes();
+    expect(documentMock.getFirstValue("region")).andReturn(region).anyTimes();
+    expect(documentMock.getId()).andReturn(id).anyTimes();
+    expect(documentMock.addNonce("jjNonce")).andReturn("42");
+
+    // the lane is named for the router and shard, and batches like the router
+    documentMock.setStatus(Status.BATCHED, "{} queued in position {} by {}. Will send within {} milliseconds.",
+        id, position, lane, LANE_BATCH_TIMEOUT);
+    documentMock.reportDocStatus();
+    documentMock.setStatus(INDEXING, "Indexing started for a batch of " + batchSize + " documents");
+    documentMock.reportDocStatus();
+    documentMock.setStatus(INDEXED, "{} sent by {} successfully", id, lane);
+    documentMock.reportDocStatus();
+  }
+
   private void indexMock(Document documentMock, int batchSize, String id, boolean fail, boolean fallbackExpected) throws SolrServerException, IOException {
     // when batch is attempted
     expect(documentMock.addNonce("jjNonce")).andReturn("42");
@@ -330,6 +582,16 @@ public class SendToSolrCloudZkProcessorTest {
 
   }
 
+  private void bisectedIndexMock(Document documentMock, String id) {
+    expect(documentMock.addNonce("jjNonce")).andReturn("42");
+    documentMock.setStatus(INDEXING, "Indexing started for a batch of 4 documents");
+    documentMock.reportDocStatus();
+    documentMock.setStatus(INDEXING, "Indexing started for a batch of 2 documents");
+    documentMock.reportDocStatus();
+    documentMock.setStatus(INDEXED, "{} sent by {} successfully", id, "test_zk_builder");
+    documentMock.reportDocStatus();
+  }
+
   private void setupDocsForBuilder(Document documentMock, int i) {
     expect(documentMock.getOperation()).andReturn(Document.Operation.NEW).anyTimes();
     expect(documentMock.keySet()).andReturn(Set.of("field1", "field2")).anyTimes();
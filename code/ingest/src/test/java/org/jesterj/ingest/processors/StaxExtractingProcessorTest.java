@@ -4,6 +4,11 @@ import com.copyright.easiertest.Mock;
 import org.apache.commons.io.IOUtils;
 import org.codehaus.stax2.XMLStreamReader2;
 import org.jesterj.ingest.model.Document;
+import org.jesterj.ingest.model.Plan;
+import org.jesterj.ingest.model.Scanner;
+import org.jesterj.ingest.model.Status;
+import org.jesterj.ingest.model.impl.ByteArrayContentSource;
+import org.jesterj.ingest.model.impl.DocumentImpl;
 import org.jesterj.ingest.processors.StaxExtractingProcessor.ElementSpec;
 import org.junit.After;
 import org.junit.Before;
@@ -13,6 +18,7 @@ import org.junit.Test;
 import javax.xml.stream.XMLResolver;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import java.util.regex.Pattern;
 
 import static com.copyright.easiertest.EasierMocks.prepareMocks;
@@ -20,7 +26,10 @@ import static com.copyright.easiertest.EasierMocks.replay;
 import static com.copyright.easiertest.EasierMocks.reset;
 import static com.copyright.easiertest.EasierMocks.verify;
 import static org.easymock.EasyMock.expect;
+import static org.jesterj.ingest.model.impl.ScannerImpl.SCAN_ORIGIN;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings("ALL")
 public class StaxExtractingProcessorTest {
@@ -29,6 +38,8 @@ public class StaxExtractingProcessorTest {
 
   @Mock private Document mockDocument;
   @Mock private XMLResolver mockResolver;
+  @Mock private Plan mockPlan;
+  @Mock private Scanner mockScanner;
 
   public StaxExtractingProcessorTest() {
     prepareMocks(this);
@@ -62,7 +73,7 @@ public class StaxExtractingProcessorTest {
         .extracting("/article/front/article-meta/title-group/article-title",
             new ElementSpec("title_s"))
         .build();
-    expect(mockDocument.getRawData()).andReturn(xmlBytes).times(StaxExtractingProcessor.log.isTraceEnabled() ? 2 : 1);
+    expect(mockDocument.getRawContent()).andReturn(new ByteArrayContentSource(xmlBytes));
     // note that the default element spec ignores internal tags such as <italic>
     // also note that whitespace is not collapsed, this is not html.
     expect(mockDocument.put("title_s", "Determinants of Pair-Living in Red-Tailed Sportive Lemurs " +
@@ -83,7 +94,7 @@ public class StaxExtractingProcessorTest {
         .extracting("/article/front/journal-meta/journal-id",
             new ElementSpec("journal_id_s"))
         .build();
-    expect(mockDocument.getRawData()).andReturn(xmlBytes).times(StaxExtractingProcessor.log.isTraceEnabled() ? 2 : 1);
+    expect(mockDocument.getRawContent()).andReturn(new ByteArrayContentSource(xmlBytes));
     // note that the default element spec ignores internal tags such as <italic>
     expect(mockDocument.put("journal_id_s", "Ethology")).andReturn(true);
     expect(mockDocument.put("journal_id_s", "Ethology")).andReturn(true);
@@ -104,7 +115,7 @@ public class StaxExtractingProcessorTest {
         .withPathBuffer(2048)
         .extracting("/article/front/journal-meta/journal-id", journal_id_s)
         .build();
-    expect(mockDocument.getRawData()).andReturn(xmlBytes).times(StaxExtractingProcessor.log.isTraceEnabled() ? 2 : 1);
+    expect(mockDocument.getRawContent()).andReturn(new ByteArrayContentSource(xmlBytes));
     // note that the default element spec ignores internal tags such as <italic>
     expect(mockDocument.put("journal_id_s", "Ethology")).andReturn(true);
 
@@ -126,7 +137,7 @@ public class StaxExtractingProcessorTest {
         .withPathBuffer(2048)
         .extracting("/article/front/journal-meta/journal-id", journal_id_s)
         .build();
-    expect(mockDocument.getRawData()).andReturn(xmlBytes).times(StaxExtractingProcessor.log.isTraceEnabled() ? 2 : 1);
+    expect(mockDocument.getRawContent()).andReturn(new ByteArrayContentSource(xmlBytes));
     // note that the default element spec ignores internal tags such as <italic>
     expect(mockDocument.put("journal_id_s", "nlm-ta Ethology")).andReturn(true);
 
@@ -155,7 +166,7 @@ public class StaxExtractingProcessorTest {
         .extracting("/article/front/journal-meta/journal-id", journal_iso)
         .extracting("/article/front/journal-meta/journal-id", journal_pub)
         .build();
-    expect(mockDocument.getRawData()).andReturn(xmlBytes).times(StaxExtractingProcessor.log.isTraceEnabled() ? 2 : 1);
+    expect(mockDocument.getRawContent()).andReturn(new ByteArrayContentSource(xmlBytes));
     // note that the default element spec ignores internal tags such as <italic>
     expect(mockDocument.put("journal_nlm_ta", "Ethology")).andReturn(true);
     expect(mockDocument.put("journal_iso", "Ethology")).andReturn(true);
@@ -220,7 +231,7 @@ public class StaxExtractingProcessorTest {
         .withPathBuffer(2048)
         .extracting("/article/front/article-meta/contrib-group/contrib", author)
         .build();
-    expect(mockDocument.getRawData()).andReturn(xmlBytes).times(StaxExtractingProcessor.log.isTraceEnabled() ? 2 : 1);
+    expect(mockDocument.getRawContent()).andReturn(new ByteArrayContentSource(xmlBytes));
     // note that the default element spec ignores internal tags such as <italic>
     expect(mockDocument.put("author_s", "Roland Hilgartner")).andReturn(true);
     expect(mockDocument.put("author_s", "Claudia Fichtel")).andReturn(true);
@@ -243,7 +254,7 @@ public class StaxExtractingProcessorTest {
         .extracting("/article/front/article-meta/title-group/article-title",
             new ElementSpec("title_s"))
         .build();
-    expect(mockDocument.getRawData()).andReturn(xmlBytes).times(StaxExtractingProcessor.log.isTraceEnabled() ? 2 : 1);
+    expect(mockDocument.getRawContent()).andReturn(new ByteArrayContentSource(xmlBytes));
     // note that the default element spec ignores internal tags such as <italic>
     // also note that whitespace is not collapsed, this is not html.
     expect(mockDocument.put("title_s", "Determinants of Pair-Living in Red-Tailed Sportive Lemurs " +
@@ -254,4 +265,39 @@ public class StaxExtractingProcessorTest {
     assertEquals(1, documents.length);
     assertEquals(mockDocument, documents[0]);
   }
+
+  @Test
+  public void testSplittingEmitsChildPerElement() {
+    StaxExtractingProcessor proc = new StaxExtractingProcessor.Builder()
+        .named("testSplittingEmitsChildPerElement")
+        .failOnLongPath(true)
+        .withPathBuffer(2048)
+        .splittingOn("/article/front/article-meta/contrib-group/contrib")
+        .extracting("/article/front/article-meta/contrib-group/contrib/name/surname",
+            new ElementSpec("surname_s"))
+        .extracting("/article/front/article-meta/title-group/article-title",
+            new ElementSpec("title_s"))
+        .build();
+    expect(mockPlan.getDocIdField()).andReturn("id");
+    expect(mockScanner.getName()).andReturn("scanner");
+
+    replay();
+    byte[] padded = new byte[xmlBytes.length + 3];
+    padded[0] = ' ';
+    padded[1] = '\n';
+    padded[2] = '\t';
+    System.arraycopy(xmlBytes, 0, padded, 3, xmlBytes.length);
+    DocumentImpl parent = new DocumentImpl(padded, "pubmed", mockPlan, Document.Operation.NEW, mockScanner, SCAN_ORIGIN);
+    Document[] documents = proc.processDocument(parent);
+    assertEquals(5, documents.length);
+    String[] surnames = {"Hilgartner", "Fichtel", "Kappeler", "Zinner"};
+    for (int i = 0; i < surnames.length; i++) {
+      assertEquals("pubmed" + DocumentImpl.CHILD_SEP + i, documents[i].getId());
+      assertEquals("pubmed", documents[i].getParentId());
+      assertEquals(List.of(surnames[i]), documents[i].get("surname_s"));
+      assertTrue(documents[i].get("title_s").isEmpty());
+    }
+    assertSame(parent, documents[4]);
+    assertEquals(Status.DROPPED, parent.getStatusChange().getStatus());
+  }
 }
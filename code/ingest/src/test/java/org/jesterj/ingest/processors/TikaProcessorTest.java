@@ -2,7 +2,9 @@ package org.jesterj.ingest.processors;
 
 import com.copyright.easiertest.Mock;
 import org.apache.tika.exception.TikaException;
+import org.jesterj.ingest.model.ContentSource;
 import org.jesterj.ingest.model.Document;
+import org.jesterj.ingest.model.impl.ByteArrayContentSource;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -13,11 +15,18 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.security.AccessControlException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static com.copyright.easiertest.EasierMocks.*;
 import static org.easymock.EasyMock.aryEq;
 import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @SuppressWarnings("ALL")
 public class TikaProcessorTest {
@@ -59,6 +68,8 @@ public class TikaProcessorTest {
           "</properties>";
   @Mock
   private Document mockDocument;
+  @Mock
+  private Document mockOtherDocument;
 
   public TikaProcessorTest() {
     prepareMocks(this);
@@ -77,7 +88,7 @@ public class TikaProcessorTest {
   @Test
   public void testHtml() {
     TikaProcessor proc = new TikaProcessor.Builder().named("foo").appendingSuffix("_tk").truncatingTextTo(-1).build();
-    expect(mockDocument.getRawData()).andReturn(HTML.getBytes()).anyTimes();
+    expect(mockDocument.getRawContent()).andReturn(new ByteArrayContentSource(HTML.getBytes())).anyTimes();
     mockDocument.setRawData(aryEq("heading\nThis is some body text\n".getBytes()));
     expect(mockDocument.put("X_TIKA_Parsed_By_tk", "org.apache.tika.parser.DefaultParser")).andReturn(true);
     expect(mockDocument.put("X_TIKA_Parsed_By_Full_Set_tk", "org.apache.tika.parser.DefaultParser")).andReturn(true);
@@ -89,6 +100,106 @@ public class TikaProcessorTest {
 
     replay();
     proc.processDocument(mockDocument);
+    assertEquals(1, proc.getParseStats().get("text/html").getParsed());
+  }
+
+  @Test
+  public void testParseTimeout() {
+    TikaProcessor proc = new TikaProcessor.Builder().named("foo").parsingWithTimeout(100, 1).build();
+    InputStream stalled = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        try {
+          Thread.sleep(60000);
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+        return -1;
+      }
+    };
+    expect(mockDocument.getRawContent()).andReturn(new ContentSource() {
+      @Override
+      public InputStream open() {
+        return stalled;
+      }
+
+      @Override
+      public long length() {
+        return 1;
+      }
+    });
+    expect(mockDocument.getId()).andReturn("stalled");
+
+    replay();
+    try {
+      proc.processDocument(mockDocument);
+      fail("stalled parse should time out");
+    } catch (RuntimeException e) {
+      assertTrue(e.getMessage().contains("stalled"));
+    }
+    long timeouts = proc.getParseStats().values().stream().mapToLong(TikaProcessor.ParseStats::getTimeouts).sum();
+    assertEquals(1, timeouts);
+  }
+
+  @Test
+  public void testParseMemoryTimeout() throws Exception {
+    TikaProcessor proc = new TikaProcessor.Builder().named("foo")
+        .parsingWithTimeout(100, 2)
+        .limitingParseMemoryTo(10)
+        .build();
+    CountDownLatch reading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    // a parser that ignores interruption, and so holds on to its memory after its parse has timed out
+    InputStream stuck = new InputStream() {
+      @Override
+      public int read() {
+        reading.countDown();
+        while (true) {
+          try {
+            release.await();
+            return -1;
+          } catch (InterruptedException ignored) {
+            // keep waiting
+          }
+        }
+      }
+    };
+    expect(mockDocument.getRawContent()).andReturn(new ContentSource() {
+      @Override
+      public InputStream open() {
+        return stuck;
+      }
+
+      @Override
+      public long length() {
+        return 10;
+      }
+    });
+    expect(mockDocument.getId()).andReturn("stuck").anyTimes();
+    expect(mockOtherDocument.getRawContent()).andReturn(new ByteArrayContentSource(HTML.getBytes()));
+    expect(mockOtherDocument.getId()).andReturn("waiting");
+
+    replay();
+    Thread holder = new Thread(() -> {
+      try {
+        proc.processDocument(mockDocument);
+      } catch (RuntimeException e) {
+        // times out, expected
+      }
+    });
+    holder.start();
+    try {
+      assertTrue(reading.await(10, TimeUnit.SECONDS));
+      try {
+        proc.processDocument(mockOtherDocument);
+        fail("waiting for parse memory should time out");
+      } catch (RuntimeException e) {
+        assertTrue(e.getMessage().contains("waiting"));
+      }
+    } finally {
+      release.countDown();
+      holder.join(10000);
+    }
   }
 
   @Test
@@ -101,7 +212,7 @@ public class TikaProcessorTest {
         .configuredWith(doc)
         .build();
     //System.out.println(new String(new byte[] {32, 32, 32, 84, 104, 101, 32, 116, 105, 116, 108, 101, 32, 84, 104, 105, 115, 32, 105, 115}));
-    expect(mockDocument.getRawData()).andReturn(XML.getBytes()).anyTimes();
+    expect(mockDocument.getRawContent()).andReturn(new ByteArrayContentSource(XML.getBytes())).anyTimes();
     mockDocument.setRawData(aryEq("   The title This is".getBytes()));
     expect(mockDocument.put("X_TIKA_Parsed_By", "org.apache.tika.parser.CompositeParser")).andReturn(true);
     expect(mockDocument.put("X_TIKA_Parsed_By_Full_Set", "org.apache.tika.parser.CompositeParser")).andReturn(true);
@@ -120,7 +231,7 @@ public class TikaProcessorTest {
     TikaProcessor proc = new TikaProcessor.Builder().named("foo").truncatingTextTo(20).replacingRawData(false).intoField("extracted")
         .configuredWith(doc)
         .build();
-    expect(mockDocument.getRawData()).andReturn(XML.getBytes()).anyTimes();
+    expect(mockDocument.getRawContent()).andReturn(new ByteArrayContentSource(XML.getBytes())).anyTimes();
     expect(mockDocument.put("extracted","   The title This is")).andReturn(true);
     expect(mockDocument.put("X_TIKA_Parsed_By", "org.apache.tika.parser.CompositeParser")).andReturn(true);
     expect(mockDocument.put("X_TIKA_Parsed_By_Full_Set", "org.apache.tika.parser.CompositeParser")).andReturn(true);
@@ -150,7 +261,7 @@ public class TikaProcessorTest {
     TikaProcessor proc = new TikaProcessor.Builder().named("foo").appendingSuffix("_tk").truncatingTextTo(20)
         .configuredWith(doc)
         .build();
-    expect(mockDocument.getRawData()).andReturn(XML_BROKEN.getBytes()).anyTimes();
+    expect(mockDocument.getRawContent()).andReturn(new ByteArrayContentSource(XML_BROKEN.getBytes())).anyTimes();
     replay();
     proc.processDocument(mockDocument);
   }
@@ -164,7 +275,7 @@ public class TikaProcessorTest {
     TikaProcessor proc = new TikaProcessor.Builder().named("foo").appendingSuffix("_tk").truncatingTextTo(20)
         .configuredWith(doc)
         .build();
-    expect(mockDocument.getRawData()).andReturn(null).anyTimes();
+    expect(mockDocument.getRawContent()).andReturn(null).anyTimes();
 
     replay();
     proc.processDocument(mockDocument);
@@ -187,7 +298,7 @@ public class TikaProcessorTest {
     TikaProcessor proc = new TikaProcessor.Builder().named("foo").appendingSuffix("_tk").truncatingTextTo(20)
         .configuredWith(doc)
         .build();
-    expect(mockDocument.getRawData()).andThrow(new RuntimeException());
+    expect(mockDocument.getRawContent()).andThrow(new RuntimeException());
 
     replay();
     proc.processDocument(mockDocument);
@@ -202,7 +313,7 @@ public class TikaProcessorTest {
     TikaProcessor proc = new TikaProcessor.Builder().named("foo").appendingSuffix("_tk").truncatingTextTo(20)
         .configuredWith(doc)
         .build();
-    expect(mockDocument.getRawData()).andThrow(new AccessControlException("Oh no you don't!"));
+    expect(mockDocument.getRawContent()).andThrow(new AccessControlException("Oh no you don't!"));
 
     replay();
     proc.processDocument(mockDocument);
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jesterj.ingest.scanners;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DirectoryWatcherTest {
+
+  private static final long WAIT_MS = TimeUnit.SECONDS.toMillis(10);
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private DirectoryWatcher watcher;
+  private final Set<Path> changed = new HashSet<>();
+  private final Set<Path> deleted = new HashSet<>();
+
+  @After
+  public void tearDown() throws IOException {
+    if (watcher != null) {
+      watcher.close();
+    }
+  }
+
+  @Test
+  public void testReportsChangesInExistingAndNewDirectories() throws Exception {
+    Path root = tmp.getRoot().toPath();
+    Path sub = Files.createDirectory(root.resolve("sub"));
+    Path existing = Files.writeString(sub.resolve("existing.txt"), "old");
+    startWatcher(root);
+
+    Path created = Files.writeString(sub.resolve("created.txt"), "new");
+    Path newDir = Files.createDirectory(root.resolve("newDir"));
+    Path inNewDir = Files.writeString(newDir.resolve("inNewDir.txt"), "new");
+    Files.delete(existing);
+
+    assertTrue(awaitChanges(created, inNewDir));
+    assertTrue(awaitDeleted(existing));
+    assertTrue(watcher.isRunning());
+  }
+
+  @Test
+  public void testModifiedDirectoryIsNotRescanned() throws Exception {
+    Path root = tmp.getRoot().toPath();
+    Path sub = Files.createDirectory(root.resolve("sub"));
+    Path untouched = Files.writeString(sub.resolve("untouched.txt"), "old");
+    startWatcher(root);
+
+    // adding a file modifies the directory that holds it
+    Path created = Files.writeString(sub.resolve("created.txt"), "new");
+
+    assertTrue(awaitChanges(created));
+    synchronized (this) {
+      assertFalse(changed.contains(untouched));
+    }
+  }
+
+  private void startWatcher(Path root) throws Exception {
+    watcher = new DirectoryWatcher(root, new DirectoryWatcher.Listener() {
+      @Override
+      public void changes(Collection<Path> changedFiles, Collection<Path> deletedFiles) {
+        synchronized (DirectoryWatcherTest.this) {
+          changed.addAll(changedFiles);
+          deleted.addAll(deletedFiles);
+          DirectoryWatcherTest.this.notifyAll();
+        }
+      }
+
+      @Override
+      public void overflowed() {
+      }
+    });
+    watcher.start("test-watcher", Map.of());
+    // give the watcher time to register the tree
+    Thread.sleep(1000);
+  }
+
+  private synchronized boolean awaitChanges(Path... paths) throws InterruptedException {
+    long end = System.currentTimeMillis() + WAIT_MS;
+    while (!changed.containsAll(Set.of(paths)) && System.currentTimeMillis() < end) {
+      wait(100);
+    }
+    return changed.containsAll(Set.of(paths));
+  }
+
+  private synchronized boolean awaitDeleted(Path path) throws InterruptedException {
+    long end = System.currentTimeMillis() + WAIT_MS;
+    while (!deleted.contains(path) && System.currentTimeMillis() < end) {
+      wait(100);
+    }
+    return deleted.contains(path);
+  }
+}
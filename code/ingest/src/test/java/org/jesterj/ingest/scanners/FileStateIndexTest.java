@@ -0,0 +1,166 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jesterj.ingest.scanners;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileStateIndexTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testChangedSizeOrTimeIsNotUnchanged() throws IOException {
+    Path file = tmp.newFile("a.txt").toPath();
+    Files.writeString(file, "one");
+    FileStateIndex index = new FileStateIndex(null);
+    index.startWalk();
+    assertFalse(index.isUnchanged(file.toString(), attrs(file)));
+    index.record(file.toString(), attrs(file));
+    assertTrue(index.isUnchanged(file.toString(), attrs(file)));
+    Files.writeString(file, "three");
+    assertFalse(index.isUnchanged(file.toString(), attrs(file)));
+    index.record(file.toString(), attrs(file));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(attrs(file).lastModifiedTime().toMillis() - 60000));
+    assertFalse(index.isUnchanged(file.toString(), attrs(file)));
+  }
+
+  @Test
+  public void testCompleteWalkDropsUnseenFiles() throws IOException {
+    Path a = tmp.newFile("a.txt").toPath();
+    Path b = tmp.newFile("b.txt").toPath();
+    FileStateIndex index = new FileStateIndex(null);
+    index.startWalk();
+    index.record(a.toString(), attrs(a));
+    index.record(b.toString(), attrs(b));
+    index.finishWalk(true);
+    assertEquals(2, index.size());
+
+    index.startWalk();
+    assertTrue(index.isUnchanged(a.toString(), attrs(a)));
+    index.finishWalk(true);
+    assertEquals(1, index.size());
+    assertFalse(index.isUnchanged(b.toString(), attrs(b)));
+  }
+
+  @Test
+  public void testIncompleteWalkForgetsWhatItRecorded() throws IOException {
+    Path a = tmp.newFile("a.txt").toPath();
+    Path b = tmp.newFile("b.txt").toPath();
+    FileStateIndex index = new FileStateIndex(null);
+    index.startWalk();
+    index.record(a.toString(), attrs(a));
+    index.finishWalk(true);
+
+    index.startWalk();
+    index.record(b.toString(), attrs(b));
+    index.finishWalk(false);
+    assertTrue(index.isUnchanged(a.toString(), attrs(a)));
+    assertFalse(index.isUnchanged(b.toString(), attrs(b)));
+  }
+
+  @Test
+  public void testSnapshotRoundTrip() throws IOException {
+    Path a = tmp.newFile("a.txt").toPath();
+    Path snapshot = tmp.getRoot().toPath().resolve("state.bin");
+    FileStateIndex index = new FileStateIndex(snapshot);
+    index.startWalk();
+    index.record(a.toString(), attrs(a));
+    index.finishWalk(true);
+
+    FileStateIndex loaded = new FileStateIndex(snapshot);
+    loaded.load();
+    loaded.startWalk();
+    assertEquals(1, loaded.size());
+    assertTrue(loaded.isUnchanged(a.toString(), attrs(a)));
+  }
+
+  @Test
+  public void testSnapshotKeepsLines() throws IOException {
+    Path a = tmp.newFile("a.txt").toPath();
+    Path snapshot = tmp.getRoot().toPath().resolve("state.bin");
+    FileStateIndex index = new FileStateIndex(snapshot);
+    index.startWalk();
+    index.record(a.toString(), attrs(a));
+    index.recordLines(a.toString(), 7);
+    index.finishWalk(true);
+
+    FileStateIndex loaded = new FileStateIndex(snapshot);
+    loaded.load();
+    assertEquals(Map.of(a.toString(), 7L), loaded.forgetTree(a.toString(), File.separator));
+  }
+
+  @Test
+  public void testForgetTree() throws IOException {
+    Path dir = tmp.newFolder("dir").toPath();
+    Path a = Files.writeString(dir.resolve("a.txt"), "a");
+    Path b = Files.writeString(Files.createDirectory(dir.resolve("sub")).resolve("b.txt"), "b");
+    Path c = Files.writeString(tmp.getRoot().toPath().resolve("dir2.txt"), "c");
+    FileStateIndex index = new FileStateIndex(null);
+    index.startWalk();
+    index.record(a.toString(), attrs(a));
+    index.record(b.toString(), attrs(b));
+    index.recordLines(b.toString(), 3);
+    index.record(c.toString(), attrs(c));
+
+    Map<String, Long> forgotten = index.forgetTree(dir.toString(), File.separator);
+    assertEquals(Map.of(a.toString(), -1L, b.toString(), 3L), forgotten);
+    assertEquals(1, index.size());
+    assertEquals(Map.of(c.toString(), -1L), index.forgetTree(c.toString(), File.separator));
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  public void testInvalidatedFileIsChangedButKept() throws IOException {
+    Path a = tmp.newFile("a.txt").toPath();
+    FileStateIndex index = new FileStateIndex(null);
+    index.startWalk();
+    index.record(a.toString(), attrs(a));
+    index.recordLines(a.toString(), 2);
+    index.invalidate(a.toString());
+    assertFalse(index.isUnchanged(a.toString(), attrs(a)));
+    assertEquals(Map.of(a.toString(), 2L), index.forgetTree(a.toString(), File.separator));
+  }
+
+  @Test
+  public void testCorruptSnapshotIsIgnored() throws IOException {
+    Path snapshot = tmp.getRoot().toPath().resolve("state.bin");
+    Files.write(snapshot, new byte[]{0x4A, 0x4A, 0x46, 0x49, 0, 0, 0, 1, 1, 0, 0});
+    FileStateIndex loaded = new FileStateIndex(snapshot);
+    loaded.load();
+    assertEquals(0, loaded.size());
+  }
+
+  private static BasicFileAttributes attrs(Path file) throws IOException {
+    return Files.readAttributes(file, BasicFileAttributes.class);
+  }
+}
@@ -16,6 +16,7 @@
 
 package org.jesterj.ingest.scanners;
 
+import org.jesterj.ingest.model.ContentSource;
 import org.jesterj.ingest.model.Document;
 import org.jesterj.ingest.model.DocumentProcessor;
 import org.jesterj.ingest.model.Plan;
@@ -25,14 +26,31 @@ import org.jesterj.ingest.model.impl.StepImpl;
 import org.jesterj.ingest.persistence.Cassandra;
 import org.junit.Test;
 
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
 import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.copyright.easiertest.EasierMocks.prepareMocks;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -43,6 +61,8 @@ import static org.junit.Assert.assertTrue;
 public class JdbcScannerImplTest extends ScannerImplTest {
 
   private static final String SQL_1 = "SELECT * FROM employee";
+  private static final String UTF8_TEXT = "h\u00e9llo w\u00f6rld";
+  private static final AtomicInteger DATABASES = new AtomicInteger();
 
   public JdbcScannerImplTest() {
     prepareMocks(this);
@@ -66,6 +86,248 @@ public class JdbcScannerImplTest extends ScannerImplTest {
     assertEquals(SQL_1, built.getSqlStatement());
   }
 
+  @Test
+  public void testBuildPartitioned() {
+    JdbcScanner built = (JdbcScanner) createBuilder(true).partitioningBy("MOD(ID, 4)", 4, 2).build();
+    assertEquals(4, built.getPartitions());
+    assertEquals("MOD(ID, 4)", built.getPartitionExpression());
+
+    built = (JdbcScanner) createBuilder(true).build();
+    assertEquals(1, built.getPartitions());
+    assertNull(built.getPartitionExpression());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBuildPartitionedNoThreads() {
+    createBuilder(true).partitioningByKeyRange(4, 0);
+  }
+
+  @Test
+  public void testContentIsUtf8() throws SQLException {
+    JdbcScanner built = (JdbcScanner) createBuilder(true).build();
+    assertArrayEquals(UTF8_TEXT.getBytes(StandardCharsets.UTF_8),
+        built.getContentBytes(new SerialClob(UTF8_TEXT.toCharArray())));
+    assertArrayEquals(UTF8_TEXT.getBytes(StandardCharsets.UTF_8), built.getContentBytes(UTF8_TEXT));
+  }
+
+  @Test
+  public void testLimitingContentLength() throws SQLException {
+    JdbcScanner built = (JdbcScanner) createBuilder(true).limitingContentLength(3).build();
+    assertArrayEquals("h\u00e9l".getBytes(StandardCharsets.UTF_8),
+        built.getContentBytes(new SerialClob(UTF8_TEXT.toCharArray())));
+    assertArrayEquals(new byte[]{1, 2, 3}, built.getContentBytes(new SerialBlob(new byte[]{1, 2, 3, 4, 5})));
+
+    // limits too large for an array must not overflow
+    built = (JdbcScanner) createBuilder(true).limitingContentLength(Long.MAX_VALUE).build();
+    assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, built.getContentBytes(new SerialBlob(new byte[]{1, 2, 3, 4, 5})));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLimitingContentLengthInvalid() {
+    createBuilder(true).limitingContentLength(-2);
+  }
+
+  @Test
+  public void testLimitingFieldLength() throws SQLException {
+    JdbcScanner built = (JdbcScanner) createBuilder(true).limitingFieldLength(3).build();
+    assertEquals("h\u00e9l", built.fieldValue("NOTES", new SerialClob(UTF8_TEXT.toCharArray()), "1"));
+    assertEquals("abc", built.fieldValue("NAME", "abcdef", "1"));
+    assertEquals("ab", built.fieldValue("NAME", "ab", "1"));
+  }
+
+  @Test
+  public void testSpoolingLobs() throws Exception {
+    File spoolDir = getUniqueTempDir();
+    assertTrue(spoolDir.mkdirs() || spoolDir.isDirectory());
+    JdbcScanner built = (JdbcScanner) createBuilder(true)
+        .spoolingLobsAbove(4)
+        .spoolingLobsTo(spoolDir.toPath())
+        .limitingContentLength(7)
+        .build();
+    assertNull(built.spoolContent(new SerialClob("abc".toCharArray())));
+    assertNull(built.spoolContent(UTF8_TEXT));
+
+    ContentSource clob = built.spoolContent(new SerialClob(UTF8_TEXT.toCharArray()));
+    assertNotNull(clob);
+    byte[] expected = "h\u00e9llo w".getBytes(StandardCharsets.UTF_8);
+    assertEquals(expected.length, clob.length());
+    try (InputStream in = clob.open()) {
+      assertArrayEquals(expected, in.readAllBytes());
+    }
+
+    ContentSource blob = built.spoolContent(new SerialBlob(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9}));
+    assertNotNull(blob);
+    try (InputStream in = blob.open()) {
+      assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7}, in.readAllBytes());
+    }
+  }
+
+  @Test
+  public void testPartitionSql() {
+    PartitionedScanner scanner = partitionedScanner("jdbc:hsqldb:mem:unused", null, 4);
+    assertEquals("SELECT * FROM (SELECT * FROM item) jj_partition WHERE ID BETWEEN ? AND ?", scanner.partitionSql());
+
+    scanner = partitionedScanner("jdbc:hsqldb:mem:unused", "MOD(ID, 4)", 4);
+    assertEquals("SELECT * FROM (SELECT * FROM item) jj_partition WHERE MOD(ID, 4) = ?", scanner.partitionSql());
+  }
+
+  @Test
+  public void testPartitionParamsByExpression() throws Exception {
+    PartitionedScanner scanner = partitionedScanner("jdbc:hsqldb:mem:unused", "MOD(ID, 4)", 4);
+    List<Object[]> params = scanner.partitionParams(false);
+    assertEquals(4, params.size());
+    for (int i = 0; i < 4; i++) {
+      assertArrayEquals(new Object[]{i}, params.get(i));
+    }
+  }
+
+  @Test
+  public void testPartitionParamsSplitsKeyRange() throws Exception {
+    String url = createItems(10);
+    PartitionedScanner scanner = partitionedScanner(url, null, 3);
+    List<Object[]> params = scanner.partitionParams(false);
+    assertEquals(3, params.size());
+    assertArrayEquals(new Object[]{1L, 4L}, params.get(0));
+    assertArrayEquals(new Object[]{5L, 8L}, params.get(1));
+    // the last range stops at the highest key
+    assertArrayEquals(new Object[]{9L, 10L}, params.get(2));
+    assertEquals("1:10", scanner.state.get(JdbcScanner.PASS_BOUNDS));
+  }
+
+  @Test
+  public void testPartitionParamsResumeWithSavedBounds() throws Exception {
+    // no database, the bounds of the pass being resumed are used rather than queried again
+    PartitionedScanner scanner = partitionedScanner("jdbc:hsqldb:mem:unused", null, 4);
+    scanner.state.put(JdbcScanner.PASS_BOUNDS, "1:100");
+    List<Object[]> params = scanner.partitionParams(true);
+    assertEquals(4, params.size());
+    assertArrayEquals(new Object[]{1L, 25L}, params.get(0));
+    assertArrayEquals(new Object[]{26L, 50L}, params.get(1));
+    assertArrayEquals(new Object[]{51L, 75L}, params.get(2));
+    assertArrayEquals(new Object[]{76L, 100L}, params.get(3));
+  }
+
+  @Test
+  public void testScanPartitionsResumesPass() throws Exception {
+    String url = createItems(10);
+    PartitionedScanner scanner = partitionedScanner(url, null, 3);
+    scanner.state.put(JdbcScanner.PASS_DONE, "0,2");
+    scanner.state.put(JdbcScanner.PASS_BOUNDS, "1:10");
+
+    AtomicInteger count = new AtomicInteger();
+    AtomicInteger sent = new AtomicInteger();
+    scanner.scanPartitions(count, sent);
+
+    // only the partition that had not completed is read
+    assertEquals(itemIds(url, 5, 8), scanner.found);
+    assertEquals(4, count.get());
+    assertEquals(4, sent.get());
+    // and the pass is complete
+    assertEquals("", scanner.state.get(JdbcScanner.PASS_DONE));
+    assertEquals("", scanner.state.get(JdbcScanner.PASS_BOUNDS));
+  }
+
+  @Test
+  public void testFailedPartitionReadByNextScan() throws Exception {
+    String url = createItems(10);
+    PartitionedScanner scanner = partitionedScanner(url, null, 3);
+    scanner.failOnce = url + "/item/6";
+
+    scanner.scanPartitions(new AtomicInteger(), new AtomicInteger());
+    assertEquals("0,2", scanner.state.get(JdbcScanner.PASS_DONE));
+    assertEquals("1:10", scanner.state.get(JdbcScanner.PASS_BOUNDS));
+    assertTrue(scanner.found.containsAll(itemIds(url, 1, 4)));
+    assertTrue(scanner.found.containsAll(itemIds(url, 9, 10)));
+    assertFalse(scanner.found.contains(url + "/item/6"));
+
+    scanner.found.clear();
+    scanner.scanPartitions(new AtomicInteger(), new AtomicInteger());
+    assertEquals(itemIds(url, 5, 8), scanner.found);
+    assertEquals("", scanner.state.get(JdbcScanner.PASS_DONE));
+  }
+
+  /**
+   * Create a database holding one table with the given number of rows, keyed from 1.
+   *
+   * @return the url for the database
+   */
+  @SuppressWarnings("SqlResolve")
+  private String createItems(int rows) throws SQLException {
+    String url = "jdbc:hsqldb:mem:partitions" + DATABASES.incrementAndGet();
+    Connection c = DriverManager.getConnection(url, "SA", "");
+    c.prepareStatement("CREATE TABLE item (id integer, name varchar(16))").execute();
+    PreparedStatement insert = c.prepareStatement("insert into item values (?, ?)");
+    for (int i = 1; i <= rows; i++) {
+      insert.setInt(1, i);
+      insert.setString(2, "item " + i);
+      insert.execute();
+    }
+    return url;
+  }
+
+  private Set<String> itemIds(String url, int first, int last) {
+    return IntStream.rangeClosed(first, last).mapToObj(i -> url + "/item/" + i).collect(Collectors.toSet());
+  }
+
+  private PartitionedScanner partitionedScanner(String url, String expression, int partitions) {
+    PartitionedScanner scanner = new PartitionedScanner();
+    new JdbcScanner.Builder() {
+      @Override
+      protected JdbcScanner getObj() {
+        return scanner;
+      }
+    }
+        .named("partitioned")
+        .withJdbcDriver("org.hsqldb.jdbc.JDBCDriver")
+        .withJdbcUrl(url)
+        .withJdbcUser("SA")
+        .withJdbcPassword("")
+        .withPKColumn("ID")
+        .representingTable("item")
+        .withSqlStatement("SELECT * FROM item")
+        .partitioningBy(expression, partitions, 2);
+    return scanner;
+  }
+
+  /**
+   * Keeps scanner state in memory and records the ids of the rows read rather than making documents.
+   */
+  private static class PartitionedScanner extends JdbcScanner {
+    final Map<String, String> state = new ConcurrentHashMap<>();
+    final Set<String> found = ConcurrentHashMap.newKeySet();
+    volatile String failOnce;
+
+    @Override
+    protected Optional<String> loadScannerState(String name) {
+      return Optional.ofNullable(state.get(name));
+    }
+
+    @Override
+    protected void saveScannerState(String name, String value) {
+      state.put(name, value);
+    }
+
+    @Override
+    public boolean isActive() {
+      return true;
+    }
+
+    @Override
+    Document makeDoc(ResultSet rs, String[] columnNames, String docId) throws SQLException {
+      if (docId.equals(failOnce)) {
+        failOnce = null;
+        throw new SQLException("failing " + docId);
+      }
+      found.add(docId);
+      return null;
+    }
+
+    @Override
+    public boolean docFound(Document doc) {
+      return true;
+    }
+  }
+
   private JdbcScanner.Builder createBuilder(boolean contentCol) {
     JdbcScanner.Builder builder = new JdbcScanner.Builder();
 
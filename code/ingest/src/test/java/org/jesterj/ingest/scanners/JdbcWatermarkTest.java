@@ -0,0 +1,63 @@
+/*
+ * Copyright 2026 Needham Software LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jesterj.ingest.scanners;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JdbcWatermarkTest {
+
+  @Test
+  public void testRoundTrip() {
+    Timestamp ts = Timestamp.valueOf("2024-02-29 13:45:01.123456789");
+    assertEquals(ts, JdbcWatermark.decode(JdbcWatermark.encode(ts)));
+    assertEquals(42L, JdbcWatermark.decode(JdbcWatermark.encode(JdbcWatermark.normalize(42))));
+    BigDecimal big = new BigDecimal(new BigInteger("123456789012345678901234567890"));
+    assertEquals(big, JdbcWatermark.decode(JdbcWatermark.encode(JdbcWatermark.normalize(big.toBigInteger()))));
+    LocalDateTime ldt = LocalDateTime.of(2024, 1, 2, 3, 4, 5);
+    assertEquals(ldt, JdbcWatermark.decode(JdbcWatermark.encode(ldt)));
+    assertEquals("a:b", JdbcWatermark.decode(JdbcWatermark.encode("a:b")));
+    byte[] rowVersion = {0, 0, 0, 0, 0, 0, 0x07, (byte) 0xD1};
+    assertArrayEquals(rowVersion, (byte[]) JdbcWatermark.decode(JdbcWatermark.encode(rowVersion)));
+  }
+
+  @Test
+  public void testMax() {
+    assertNull(JdbcWatermark.max(null, null));
+    assertEquals(3L, JdbcWatermark.max(null, 3L));
+    assertEquals(3L, JdbcWatermark.max(3L, 2L));
+    // restored marks are compared with widened values from the result set
+    assertEquals(5L, JdbcWatermark.max(JdbcWatermark.decode("L:3"), JdbcWatermark.normalize(5)));
+    byte[] low = {0x01, 0x7F};
+    byte[] high = {0x01, (byte) 0x80};
+    assertArrayEquals(high, (byte[]) JdbcWatermark.max(low, high));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedType() {
+    JdbcWatermark.encode(new Object());
+  }
+}
@@ -16,6 +16,7 @@
 
 package org.jesterj.ingest.scanners;
 
+import org.jesterj.ingest.model.Document;
 import org.jesterj.ingest.model.Plan;
 import org.jesterj.ingest.model.impl.PlanImpl;
 import org.jesterj.ingest.model.impl.ScannerImpl;
@@ -24,17 +25,30 @@ import org.jesterj.ingest.persistence.Cassandra;
 import org.jesterj.ingest.processors.DocumentCounter;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
+import java.util.List;
 
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 public class SimpleFileScannerImplTest extends ScannerImplTest {
 
   private static final String SHAKESPEARE = "Shakespeare_scanner";
 
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
 
   @Before
   public void setUp() {
@@ -185,6 +199,51 @@ public class SimpleFileScannerImplTest extends ScannerImplTest {
     }
   }
 
+  @Test
+  public void testErroredFileIsReadAgain() throws Exception {
+    Path root = tmp.newFolder("root").toPath();
+    Path file = Files.writeString(root.resolve("lines.txt"), "a\nb\n");
+    SimpleFileScanner scanner = (SimpleFileScanner) new SimpleFileScanner.Builder()
+        .withRoot(root.toFile())
+        .skippingUnchangedFiles(true)
+        .build();
+    FileStateIndex states = scanner.fileStateIndex();
+    states.record(file.toString(), Files.readAttributes(file, BasicFileAttributes.class));
+
+    Document doc = createMock(Document.class);
+    expect(doc.getOrignalParentId()).andReturn(file.toRealPath().toUri().toASCIIString() + "#L2");
+    replay(doc);
+    scanner.docErrored(doc);
+    verify(doc);
+    assertFalse(states.isUnchanged(file.toString(), Files.readAttributes(file, BasicFileAttributes.class)));
+    assertEquals(1, states.size());
+  }
+
+  @Test
+  public void testDeletedDirectoryDeletesFilesAndLines() throws Exception {
+    Path root = tmp.newFolder("root").toPath();
+    Path sub = Files.createDirectory(root.resolve("sub"));
+    Path kept = Files.writeString(root.resolve("sub.txt"), "kept");
+    Path file = Files.writeString(sub.resolve("b.txt"), "b");
+    Path lines = Files.writeString(sub.resolve("c.lines"), "one\ntwo\n");
+    SimpleFileScanner scanner = (SimpleFileScanner) new SimpleFileScanner.Builder()
+        .withRoot(root.toFile())
+        .docPerLineIfMatches(pathname -> pathname.getName().endsWith(".lines"))
+        .watchingForChanges(true)
+        .build();
+    FileStateIndex states = scanner.fileStateIndex();
+    for (Path p : List.of(kept, file, lines)) {
+      states.record(p.toString(), Files.readAttributes(p, BasicFileAttributes.class));
+    }
+    states.recordLines(lines.toString(), 2);
+
+    Path realRoot = root.toRealPath();
+    String subUri = realRoot.resolve("sub").toUri().toASCIIString();
+    List<String> ids = scanner.deletedIds(List.of(sub), root, realRoot);
+    assertEquals(List.of(subUri + "b.txt", subUri + "c.lines#L1", subUri + "c.lines#L2"), ids);
+    assertEquals(1, states.size());
+  }
+
   @SuppressWarnings("SameParameterValue")
   private void clearCounter(Plan plan, String counterStep) {
     DocumentCounter counter = findCounter(plan, counterStep);